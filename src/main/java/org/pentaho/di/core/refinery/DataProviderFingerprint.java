@@ -0,0 +1,109 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery;
+
+import org.pentaho.agilebi.modeler.models.annotations.data.ColumnMapping;
+import org.pentaho.agilebi.modeler.models.annotations.data.DataProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Content hash of what a {@link DataProvider} contributes to a shared dimension: connection reference, schema, table
+ * and column mappings. Two providers with the same fingerprint need no metastore write, {@link #sameContent} tells
+ * it by comparing the fields directly.
+ */
+public class DataProviderFingerprint {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private DataProviderFingerprint() {
+  }
+
+  public static String of( DataProvider provider ) {
+    MessageDigest digest = newDigest();
+    update( digest, provider.getDatabaseMetaNameRef() );
+    update( digest, provider.getSchemaName() );
+    update( digest, provider.getTableName() );
+    if ( provider.getColumnMappings() != null ) {
+      for ( ColumnMapping columnMapping : provider.getColumnMappings() ) {
+        update( digest, columnMapping.getName() );
+        update( digest, columnMapping.getColumnName() );
+        update( digest, columnMapping.getColumnDataType() == null ? null : columnMapping.getColumnDataType().name() );
+      }
+    }
+    return toHex( digest.digest() );
+  }
+
+  /**
+   * Compares the fields the fingerprint is made of, without hashing them.
+   */
+  public static boolean sameContent( DataProvider one, DataProvider other ) {
+    if ( !Objects.equals( one.getDatabaseMetaNameRef(), other.getDatabaseMetaNameRef() )
+        || !Objects.equals( one.getSchemaName(), other.getSchemaName() )
+        || !Objects.equals( one.getTableName(), other.getTableName() ) ) {
+      return false;
+    }
+    List<ColumnMapping> mappings = one.getColumnMappings() == null
+        ? Collections.<ColumnMapping>emptyList() : one.getColumnMappings();
+    List<ColumnMapping> otherMappings = other.getColumnMappings() == null
+        ? Collections.<ColumnMapping>emptyList() : other.getColumnMappings();
+    if ( mappings.size() != otherMappings.size() ) {
+      return false;
+    }
+    for ( int i = 0; i < mappings.size(); i++ ) {
+      ColumnMapping mapping = mappings.get( i );
+      ColumnMapping otherMapping = otherMappings.get( i );
+      if ( !Objects.equals( mapping.getName(), otherMapping.getName() )
+          || !Objects.equals( mapping.getColumnName(), otherMapping.getColumnName() )
+          || mapping.getColumnDataType() != otherMapping.getColumnDataType() ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void update( MessageDigest digest, String value ) {
+    if ( value == null ) {
+      digest.update( (byte) 0 );
+    } else {
+      digest.update( (byte) 1 );
+      digest.update( value.getBytes( StandardCharsets.UTF_8 ) );
+      // separator so that "ab","c" and "a","bc" differ
+      digest.update( (byte) 0 );
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance( "SHA-256" );
+    } catch ( NoSuchAlgorithmException e ) {
+      // every JVM ships SHA-256
+      throw new IllegalStateException( e );
+    }
+  }
+
+  private static String toHex( byte[] bytes ) {
+    char[] chars = new char[ bytes.length * 2 ];
+    for ( int i = 0; i < bytes.length; i++ ) {
+      chars[ i * 2 ] = HEX[ ( bytes[ i ] >> 4 ) & 0xf ];
+      chars[ i * 2 + 1 ] = HEX[ bytes[ i ] & 0xf ];
+    }
+    return new String( chars );
+  }
+}
@@ -13,7 +13,6 @@
 
 package org.pentaho.di.core.refinery;
 
-import org.apache.commons.lang.StringUtils;
 import org.pentaho.agilebi.modeler.ModelerException;
 import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroup;
 import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationManager;
@@ -35,15 +34,30 @@ import org.pentaho.metastore.api.exceptions.MetaStoreException;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
+/**
+ * Registers output steps as data providers of shared dimensions.
+ * <p>
+ * Providers can be {@link #addDataProvider(ModelAnnotationGroup, StepMetaDataCombi) staged} and written together with
+ * {@link #flush()}: every group is then updated once and identical connections are stored once. Staging reads the
+ * output step, flushing only talks to the metastore so it can run after the transformation is gone.
+ */
 public class DataProviderHelper {
 
   private final IMetaStore mstore;
   private final ModelAnnotationManager annotationManager = new ModelAnnotationManager( true );
   private static Class<?> PKG = JobEntryBuildModel.class; // for i18n purposes, needed by Translator2!!
 
+  private final List<PendingProvider> pending = new ArrayList<>();
+  // connection xml -> stored connection, per metastore, for connections this JVM stored
+  private static final Map<IMetaStore, Map<String, StoredDatabaseMeta>> storedDatabaseMetas = new WeakHashMap<>();
+
   public DataProviderHelper( IMetaStore mstore ) {
     this.mstore = mstore;
   }
@@ -65,17 +79,95 @@ public class DataProviderHelper {
    */
   public void updateDataProvider( ModelAnnotationGroup annotations, StepMetaDataCombi outputCombi )
     throws KettleException, MetaStoreException {
-    DataProvider provider = createDataProvider( outputCombi, mstore );
-    updateOrAdd( annotations.getDataProviders(), provider );
-    getModelAnnotationManager().updateGroup( annotations, mstore );
+    addDataProvider( annotations, outputCombi );
+    flush();
   }
 
   /**
-   * Creates DataProvider and stores DatabaseMeta
+   * Stages the output step as a provider of the shared dimension, nothing is written until {@link #flush()}.
    */
-  private DataProvider createDataProvider( StepMetaDataCombi outputCombi, IMetaStore mstore )
-    throws KettleException, MetaStoreException {
+  public synchronized void addDataProvider( ModelAnnotationGroup annotations, StepMetaDataCombi outputCombi )
+    throws KettleException {
     DataProvider provider = new DataProvider();
+    DatabaseMeta dbMeta = createDataProvider( provider, outputCombi );
+    pending.add( new PendingProvider( annotations, provider, dbMeta ) );
+  }
+
+  public synchronized boolean hasPendingUpdates() {
+    return !pending.isEmpty();
+  }
+
+  /**
+   * Stores the connections and updates each staged group once. Steps annotating the same group have their providers
+   * merged into a single update; groups whose providers didn't change are not written.
+   */
+  public synchronized void flush() throws KettleException, MetaStoreException {
+    Map<String, ModelAnnotationGroup> groups = new LinkedHashMap<>();
+    Map<String, DataProviderIndex> indexes = new HashMap<>();
+    Set<String> changedGroups = new HashSet<>();
+    try {
+      for ( PendingProvider entry : pending ) {
+        entry.provider.setDatabaseMetaNameRef( storeDatabaseMeta( entry.dbMeta ) );
+        String name = entry.annotations.getName();
+        ModelAnnotationGroup group = groups.get( name );
+        if ( group == null ) {
+          group = entry.annotations;
+          groups.put( name, group );
+          indexes.put( name, new DataProviderIndex( group.getDataProviders() ) );
+        }
+        if ( indexes.get( name ).upsert( entry.provider ) ) {
+          changedGroups.add( name );
+        }
+      }
+    } finally {
+      pending.clear();
+    }
+    for ( ModelAnnotationGroup group : groups.values() ) {
+      if ( !changedGroups.contains( group.getName() ) ) {
+        continue;
+      }
+      getModelAnnotationManager().updateGroup( group, mstore );
+      ModelAnnotationGroupCache.getInstance().invalidate( true, group.getName(), mstore );
+    }
+  }
+
+  /**
+   * Stores the connection unless the same connection XML was stored in the metastore by any flush less than the
+   * {@link ModelAnnotationGroupCache#TTL_PROPERTY annotation group cache TTL} ago. Past that it is stored again, it may
+   * have been deleted or edited outside of this JVM.
+   */
+  private String storeDatabaseMeta( DatabaseMeta dbMeta ) throws KettleException, MetaStoreException {
+    String key = dbMeta.getXML();
+    long ttl = ModelAnnotationGroupCache.getInstance().getTtl();
+    long now = System.currentTimeMillis();
+    synchronized ( storedDatabaseMetas ) {
+      Map<String, StoredDatabaseMeta> stored = storedDatabaseMetas.get( mstore );
+      StoredDatabaseMeta storedDbMeta = stored == null ? null : stored.get( key );
+      if ( storedDbMeta != null && now - storedDbMeta.storedAt < ttl ) {
+        return storedDbMeta.ref;
+      }
+    }
+    String ref = getModelAnnotationManager().storeDatabaseMeta( dbMeta, mstore );
+    synchronized ( storedDatabaseMetas ) {
+      Map<String, StoredDatabaseMeta> stored = storedDatabaseMetas.get( mstore );
+      if ( stored == null ) {
+        stored = new HashMap<>();
+        storedDatabaseMetas.put( mstore, stored );
+      }
+      // a connection of the same name stored with other settings is overwritten, it is no longer there
+      stored.values().removeIf( storedDbMeta -> ref.equals( storedDbMeta.ref ) || now - storedDbMeta.storedAt >= ttl );
+      stored.put( key, new StoredDatabaseMeta( ref, now ) );
+    }
+    return ref;
+  }
+
+  /**
+   * Fills the DataProvider from the output step
+   *
+   * @return the connection to store for the provider
+   */
+  private DatabaseMeta createDataProvider( DataProvider provider, StepMetaDataCombi outputCombi )
+    throws KettleException {
     provider.setName( outputCombi.stepname );
     ProvidesDatabaseConnectionInformation connInfo = (ProvidesDatabaseConnectionInformation) outputCombi.meta;
     DatabaseMeta dbMeta = fillConnectionInfo( provider, connInfo, outputCombi.step );
@@ -84,8 +176,7 @@ public class DataProviderHelper {
         PKG, "BuildModelJob.Error.ConnectionName.InvalidCharacter", dbMeta.getName() ) );
     }
     provider.setColumnMappings( getColumnMappings( outputCombi ) );
-    provider.setDatabaseMetaNameRef( getModelAnnotationManager().storeDatabaseMeta( dbMeta, mstore ) );
-    return provider;
+    return dbMeta;
   }
 
   private static DatabaseMeta fillConnectionInfo(
@@ -130,24 +221,26 @@ public class DataProviderHelper {
     }
   }
 
-  private static boolean equalsNoColumnMappings( DataProvider one, DataProvider other ) {
-    return StringUtils.equals( one.getDatabaseMetaNameRef(), other.getDatabaseMetaNameRef() )
-        && StringUtils.equals( one.getSchemaName(), other.getSchemaName() )
-        && StringUtils.equals( one.getTableName(), other.getTableName() );
+  private static class PendingProvider {
+    private final ModelAnnotationGroup annotations;
+    private final DataProvider provider;
+    private final DatabaseMeta dbMeta;
+
+    private PendingProvider( ModelAnnotationGroup annotations, DataProvider provider, DatabaseMeta dbMeta ) {
+      this.annotations = annotations;
+      this.provider = provider;
+      this.dbMeta = dbMeta;
+    }
   }
 
-  /**
-   * updates column mappings or adds new provider
-   */
-  private DataProvider updateOrAdd( List<DataProvider> annotationProviders, DataProvider newProvider ) {
-    for ( DataProvider dataProvider : annotationProviders ) {
-      if ( equalsNoColumnMappings( dataProvider, newProvider ) ) {
-        dataProvider.setColumnMappings( newProvider.getColumnMappings() );
-        return dataProvider;
-      }
+  private static class StoredDatabaseMeta {
+    private final String ref;
+    private final long storedAt;
+
+    private StoredDatabaseMeta( String ref, long storedAt ) {
+      this.ref = ref;
+      this.storedAt = storedAt;
     }
-    annotationProviders.add( newProvider );
-    return newProvider;
   }
 
   public static DataType getDataType( ValueMetaInterface valueMeta ) {
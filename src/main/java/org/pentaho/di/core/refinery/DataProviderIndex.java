@@ -0,0 +1,105 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery;
+
+import org.pentaho.agilebi.modeler.models.annotations.data.DataProvider;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hash index over the data providers of a shared dimension, by connection reference, schema and table. Changes are
+ * made to the indexed list itself so the group stays the single source of truth.
+ */
+public class DataProviderIndex {
+
+  private final List<DataProvider> providers;
+  private final Map<Key, DataProvider> index;
+
+  public DataProviderIndex( List<DataProvider> providers ) {
+    this.providers = providers;
+    this.index = new HashMap<>( Math.max( 16, providers.size() * 2 ) );
+    for ( DataProvider provider : providers ) {
+      // keep the first one, like a linear search would
+      index.putIfAbsent( Key.of( provider ), provider );
+    }
+  }
+
+  public DataProvider get( String databaseMetaNameRef, String schemaName, String tableName ) {
+    return index.get( new Key( databaseMetaNameRef, schemaName, tableName ) );
+  }
+
+  /**
+   * Adds the provider, or replaces the column mappings of the one registered for the same table.
+   *
+   * @return false if an identical provider was already there
+   */
+  public boolean upsert( DataProvider provider ) {
+    Key key = Key.of( provider );
+    DataProvider existing = index.get( key );
+    if ( existing == null ) {
+      providers.add( provider );
+      index.put( key, provider );
+      return true;
+    }
+    if ( DataProviderFingerprint.sameContent( existing, provider ) ) {
+      return false;
+    }
+    existing.setColumnMappings( provider.getColumnMappings() );
+    return true;
+  }
+
+  public int size() {
+    return providers.size();
+  }
+
+  private static final class Key {
+    private final String databaseMetaNameRef;
+    private final String schemaName;
+    private final String tableName;
+    private final int hash;
+
+    private Key( String databaseMetaNameRef, String schemaName, String tableName ) {
+      this.databaseMetaNameRef = databaseMetaNameRef;
+      this.schemaName = schemaName;
+      this.tableName = tableName;
+      this.hash = Objects.hash( databaseMetaNameRef, schemaName, tableName );
+    }
+
+    static Key of( DataProvider provider ) {
+      return new Key( provider.getDatabaseMetaNameRef(), provider.getSchemaName(), provider.getTableName() );
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+      if ( this == o ) {
+        return true;
+      }
+      if ( !( o instanceof Key ) ) {
+        return false;
+      }
+      Key other = (Key) o;
+      return Objects.equals( databaseMetaNameRef, other.databaseMetaNameRef )
+          && Objects.equals( schemaName, other.schemaName )
+          && Objects.equals( tableName, other.tableName );
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
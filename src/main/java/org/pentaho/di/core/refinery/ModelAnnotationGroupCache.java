@@ -0,0 +1,236 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery;
+
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroup;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationManager;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.refinery.publish.util.ObjectUtils;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.metastore.api.IMetaStore;
+import org.pentaho.metastore.api.exceptions.MetaStoreException;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide cache of annotation groups read from a metastore, keyed by (metastore, namespace, group name).
+ * <p>
+ * Callers always get their own copy of a cached group, so mutating it (e.g. adding data providers) never leaks into
+ * other step copies. Every write through {@link #invalidate(boolean, String, IMetaStore)} bumps the cache version;
+ * a read that started before the bump will not populate the cache with what may be a stale group.
+ * <p>
+ * Groups missing from the metastore are cached as well, so that checking for a group costs no metastore call either.
+ * Writes by other processes sharing a repository metastore are not seen by the invalidation, so groups are only
+ * served from the cache for a limited time. Entries of metastores that were garbage collected are purged on access.
+ */
+public class ModelAnnotationGroupCache {
+
+  public static final int DEFAULT_MAX_SIZE = 500;
+
+  /**
+   * How long a group is served from the cache, in milliseconds; 0 disables the cache
+   */
+  public static final String TTL_PROPERTY = "KETTLE_DATA_REFINERY_ANNOTATION_GROUP_CACHE_TTL";
+  static final long DEFAULT_TTL = TimeUnit.SECONDS.toMillis( 30 );
+
+  private static final ModelAnnotationGroupCache INSTANCE =
+    new ModelAnnotationGroupCache( DEFAULT_MAX_SIZE, System::currentTimeMillis );
+
+  private final Map<Key, CachedGroup> entries;
+  private final ReferenceQueue<IMetaStore> collected = new ReferenceQueue<>();
+  private final LongSupplier clock;
+  private final AtomicLong version = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public static ModelAnnotationGroupCache getInstance() {
+    return INSTANCE;
+  }
+
+  ModelAnnotationGroupCache( final int maxSize ) {
+    this( maxSize, System::currentTimeMillis );
+  }
+
+  ModelAnnotationGroupCache( final int maxSize, final LongSupplier clock ) {
+    this.clock = clock;
+    entries = new LinkedHashMap<Key, CachedGroup>( 16, 0.75f, true ) {
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<Key, CachedGroup> eldest ) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Reads a group through the cache.
+   *
+   * @return a private copy of the group, or null if the metastore doesn't contain it
+   */
+  public ModelAnnotationGroup readGroup( ModelAnnotationManager manager, boolean sharedDimension, String groupName,
+                                         IMetaStore metaStore ) throws MetaStoreException {
+    long ttl = getTtl();
+    if ( ttl <= 0 ) {
+      return manager.readGroup( groupName, metaStore );
+    }
+    Key key = new Key( metaStore, sharedDimension, groupName, null );
+    long now = clock.getAsLong();
+    CachedGroup cached;
+    synchronized ( entries ) {
+      purgeCollected();
+      cached = entries.get( key );
+      if ( cached != null && now - cached.read >= ttl ) {
+        entries.remove( key );
+        cached = null;
+      }
+    }
+    if ( cached != null ) {
+      hits.incrementAndGet();
+      return cached.group == null ? null : ObjectUtils.deepClone( cached.group );
+    }
+
+    misses.incrementAndGet();
+    long readVersion = version.get();
+    ModelAnnotationGroup group = manager.readGroup( groupName, metaStore );
+    ModelAnnotationGroup copy = group == null ? null : copyOf( group );
+    if ( group == null || copy != null ) {
+      synchronized ( entries ) {
+        if ( readVersion == version.get() ) {
+          entries.put( new Key( metaStore, sharedDimension, groupName, collected ), new CachedGroup( copy, now ) );
+        }
+      }
+    }
+    return group;
+  }
+
+  /**
+   * Drops the entries of metastores that were garbage collected, the caller holds the lock.
+   */
+  private void purgeCollected() {
+    for ( Reference<? extends IMetaStore> reference = collected.poll(); reference != null;
+          reference = collected.poll() ) {
+      entries.remove( ( (MetaStoreReference) reference ).key );
+    }
+  }
+
+  long getTtl() {
+    return Const.toLong( EnvUtil.getSystemProperty( TTL_PROPERTY ), DEFAULT_TTL );
+  }
+
+  private static ModelAnnotationGroup copyOf( ModelAnnotationGroup group ) {
+    try {
+      return ObjectUtils.deepClone( group );
+    } catch ( RuntimeException e ) {
+      // not cacheable, the caller still gets the group it asked for
+      return null;
+    }
+  }
+
+  /**
+   * Must be called after a group is created, updated or deleted in the metastore.
+   */
+  public void invalidate( boolean sharedDimension, String groupName, IMetaStore metaStore ) {
+    synchronized ( entries ) {
+      version.incrementAndGet();
+      entries.remove( new Key( metaStore, sharedDimension, groupName, null ) );
+    }
+  }
+
+  public void clear() {
+    synchronized ( entries ) {
+      version.incrementAndGet();
+      entries.clear();
+    }
+  }
+
+  public int size() {
+    synchronized ( entries ) {
+      purgeCollected();
+      return entries.size();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private static final class CachedGroup {
+    // null if the metastore has no such group
+    private final ModelAnnotationGroup group;
+    private final long read;
+
+    private CachedGroup( ModelAnnotationGroup group, long read ) {
+      this.group = group;
+      this.read = read;
+    }
+  }
+
+  private static final class MetaStoreReference extends WeakReference<IMetaStore> {
+    private final Key key;
+
+    private MetaStoreReference( IMetaStore metaStore, Key key, ReferenceQueue<IMetaStore> queue ) {
+      super( metaStore, queue );
+      this.key = key;
+    }
+  }
+
+  private static final class Key {
+    private final WeakReference<IMetaStore> metaStore;
+    private final int metaStoreHash;
+    private final boolean sharedDimension;
+    private final String groupName;
+
+    /**
+     * @param queue where the key is enqueued once the metastore is collected, null for lookups
+     */
+    Key( IMetaStore metaStore, boolean sharedDimension, String groupName, ReferenceQueue<IMetaStore> queue ) {
+      this.metaStore = new MetaStoreReference( metaStore, this, queue );
+      this.metaStoreHash = System.identityHashCode( metaStore );
+      this.sharedDimension = sharedDimension;
+      this.groupName = groupName;
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+      // a key whose metastore was collected only equals itself, which is how it gets purged
+      if ( this == o ) {
+        return true;
+      }
+      if ( !( o instanceof Key ) ) {
+        return false;
+      }
+      Key other = (Key) o;
+      IMetaStore ms = metaStore.get();
+      return ms != null && ms == other.metaStore.get()
+        && sharedDimension == other.sharedDimension
+        && Objects.equals( groupName, other.groupName );
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash( metaStoreHash, sharedDimension, groupName );
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.extension;
+
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.refinery.DataProviderHelper;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.job.Job;
+import org.pentaho.di.job.JobAdapter;
+import org.pentaho.di.trans.steps.annotation.ModelAnnotationMeta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Data provider updates of the transformations of a job, written to the metastore in the background.
+ * <p>
+ * Updates run one at a time in submission order on a shared bounded queue; a full queue blocks the finishing
+ * transformation. The job waits for its pending updates before building a model and when it finishes.
+ */
+public class DataProviderUpdateQueue {
+
+  private static final Class<?> PKG = ModelAnnotationMeta.class;
+
+  /**
+   * Y to write data provider updates in the background, when the transformation runs in a job
+   */
+  public static final String ASYNC_UPDATES_VARIABLE = "KETTLE_DATA_REFINERY_ASYNC_PROVIDER_UPDATES";
+
+  static final String KEY = "DataRefinery.DataProviderUpdates";
+  static final int QUEUE_CAPACITY = 64;
+
+  private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+  private final List<Future<?>> pending = new ArrayList<>();
+
+  /**
+   * Returns the queue of <code>job</code>, creating it and hooking it to the end of the job if needed.
+   */
+  public static DataProviderUpdateQueue getOrCreate( Job job ) {
+    Map<String, Object> extensionDataMap = job.getExtensionDataMap();
+    synchronized ( extensionDataMap ) {
+      Object existing = extensionDataMap.get( KEY );
+      if ( existing instanceof DataProviderUpdateQueue ) {
+        return (DataProviderUpdateQueue) existing;
+      }
+      final DataProviderUpdateQueue queue = new DataProviderUpdateQueue();
+      extensionDataMap.put( KEY, queue );
+      job.addJobListener( new JobAdapter() {
+        @Override
+        public void jobFinished( Job finished ) {
+          queue.await( finished.getLogChannel() );
+        }
+      } );
+      return queue;
+    }
+  }
+
+  /**
+   * Waits for the updates of <code>job</code>, if any were queued.
+   */
+  public static void await( Job job, LogChannelInterface log ) {
+    if ( job == null || job.getExtensionDataMap() == null ) {
+      return;
+    }
+    Object queue;
+    synchronized ( job.getExtensionDataMap() ) {
+      queue = job.getExtensionDataMap().get( KEY );
+    }
+    if ( queue instanceof DataProviderUpdateQueue ) {
+      ( (DataProviderUpdateQueue) queue ).await( log );
+    }
+  }
+
+  /**
+   * Flushes the staged providers of <code>helper</code> in the background.
+   */
+  public void submit( final DataProviderHelper helper, final LogChannelInterface log ) {
+    Future<?> future = EXECUTOR.submit( () -> {
+      try {
+        helper.flush();
+      } catch ( Exception e ) {
+        log.logError( BaseMessages.getString( PKG, "ModelAnnotation.Runtime.DataProviderUpdateFailed" ), e );
+      }
+    } );
+    synchronized ( pending ) {
+      pending.add( future );
+    }
+  }
+
+  /**
+   * Blocks until every submitted update is written.
+   */
+  public void await( LogChannelInterface log ) {
+    List<Future<?>> futures;
+    synchronized ( pending ) {
+      futures = new ArrayList<>( pending );
+      pending.clear();
+    }
+    for ( Future<?> future : futures ) {
+      try {
+        future.get();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        log.logError( BaseMessages.getString( PKG, "ModelAnnotation.Runtime.DataProviderUpdateFailed" ), e );
+        return;
+      } catch ( ExecutionException e ) {
+        log.logError( BaseMessages.getString( PKG, "ModelAnnotation.Runtime.DataProviderUpdateFailed" ),
+            e.getCause() );
+      }
+    }
+  }
+
+  int getPendingCount() {
+    synchronized ( pending ) {
+      return pending.size();
+    }
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    // a single writer keeps updates of the same group in the order the transformations finished
+    ThreadPoolExecutor executor = new ThreadPoolExecutor( 1, 1, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>( QUEUE_CAPACITY ),
+        runnable -> {
+          Thread thread = new Thread( runnable, "DataRefinery data provider updates" );
+          thread.setDaemon( true );
+          return thread;
+        },
+        ( runnable, exec ) -> {
+          // block instead of running out of order in the caller
+          try {
+            BlockingQueue<Runnable> queue = exec.getQueue();
+            queue.put( runnable );
+          } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException( e );
+          }
+        } );
+    executor.allowCoreThreadTimeOut( true );
+    return executor;
+  }
+}
@@ -93,12 +93,14 @@ public class DataRefineryTransFinishListener implements ExtensionPointInterface
   }
 
   /**
-   * Updates shared annotation groups with data providers
+   * Updates shared annotation groups with data providers. All the providers of the transformation are written in a
+   * single batch, in the background if {@link DataProviderUpdateQueue#ASYNC_UPDATES_VARIABLE} is set.
    */
   public void updateDataProviders( LogChannelInterface log, Trans trans, IMetaStore metaStore )
     throws KettleException, MetaStoreException {
     log.logDebug( "searching for annotations" );
     boolean hasAnnotations = false;
+    DataProviderHelper dataProviderHelper = null;
 
     for ( StepMetaDataCombi combi : trans.getSteps() ) {
       if ( combi.meta instanceof BaseAnnotationMeta ) {
@@ -115,8 +117,10 @@ public class DataRefineryTransFinishListener implements ExtensionPointInterface
           // TransformationFinish is called before last step is marked as not running,
           // so that step will never report STATUS_FINISHED; using status of data instead
           if ( outCombi.data.getStatus() == StepExecutionStatus.STATUS_DISPOSED ) {
-            DataProviderHelper dataProviderHelper = getDataProviderHelper( metaStore );
-            dataProviderHelper.updateDataProvider( maData.annotations, outCombi );
+            if ( dataProviderHelper == null ) {
+              dataProviderHelper = getDataProviderHelper( metaStore );
+            }
+            dataProviderHelper.addDataProvider( maData.annotations, outCombi );
           } else {
             log.logError( BaseMessages.getString( PKG, "ModelAnnotation.Runtime.OutputStepFail",
                 outCombi.stepname,
@@ -128,6 +132,18 @@ public class DataRefineryTransFinishListener implements ExtensionPointInterface
     if ( !hasAnnotations ) {
       log.logDebug( "no annotations found" );
     }
+    if ( dataProviderHelper != null && dataProviderHelper.hasPendingUpdates() ) {
+      if ( isAsyncUpdates( trans ) ) {
+        DataProviderUpdateQueue.getOrCreate( trans.getParentJob() ).submit( dataProviderHelper, log );
+      } else {
+        dataProviderHelper.flush();
+      }
+    }
+  }
+
+  private boolean isAsyncUpdates( Trans trans ) {
+    return trans.getParentJob() != null
+        && "Y".equalsIgnoreCase( trans.getVariable( DataProviderUpdateQueue.ASYNC_UPDATES_VARIABLE ) );
   }
 
   protected DataProviderHelper getDataProviderHelper( IMetaStore mstore ) {
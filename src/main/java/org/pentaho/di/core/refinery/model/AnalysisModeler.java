@@ -15,29 +15,18 @@ package org.pentaho.di.core.refinery.model;
 
 import org.pentaho.di.core.ProvidesDatabaseConnectionInformation;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.refinery.model.MondrianSchemaRewriter.ColumnReference;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.job.entries.build.JobEntryBuildModel;
 import org.pentaho.di.job.entry.JobEntryBase;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-
-import javax.xml.XMLConstants;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathException;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
@@ -71,93 +60,78 @@ public class AnalysisModeler {
     this.connectionInfo = connectionInfo;
   }
 
+  /**
+   * Renames the schema in a single pass, like the stream version.
+   */
   public String replaceTableAndSchemaNames( final String schema, final String modelName ) throws KettleException {
+    StringWriter writer = new StringWriter( schema.length() + 64 );
     try {
-      validateSDRSchema( schema );
-      return transformSchema( schema, modelName, getTablename() );
-    } catch ( TransformerConfigurationException e ) {
-      throw new KettleException( e );
-    } catch ( TransformerException e ) {
+      validateSDRSchema(
+        new MondrianSchemaRewriter( modelName, getTablename() ).rewrite( new StringReader( schema ), writer ) );
+    } catch ( XMLStreamException e ) {
       throw new KettleException( e );
     }
+    return writer.toString();
   }
 
-  private String transformSchema( final String schema, final String modelName, final String tableName )
-    throws TransformerException {
-    TransformerFactory factory = TransformerFactory.newInstance();
-    factory.setFeature( XMLConstants.FEATURE_SECURE_PROCESSING, true );
-    factory.setAttribute( XMLConstants.ACCESS_EXTERNAL_DTD, "" );
-    factory.setAttribute( XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "" );
-    Source xslt = new StreamSource( new StringReader( constructXsltForSwap( modelName, tableName ) ) );
-    Transformer transformer = factory.newTransformer( xslt );
-    Source text = new StreamSource( new StringReader( schema ) );
-    StringWriter writer = new StringWriter();
-    transformer.transform( text, new StreamResult( writer ) );
-    return writer.toString();
+  /**
+   * Streams the renamed schema to <code>out</code> in a single pass. The schema is validated once it has been read,
+   * so whatever was written must be discarded if this throws.
+   */
+  public void replaceTableAndSchemaNames( final InputStream schema, final OutputStream out, final String modelName )
+    throws KettleException {
+    try {
+      validateSDRSchema( new MondrianSchemaRewriter( modelName, getTablename() ).rewrite( schema, out ) );
+    } catch ( XMLStreamException e ) {
+      throw new KettleException( e );
+    }
   }
 
-  private String constructXsltForSwap( final String modelName, final String tableName ) {
-    return "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" "
-      + "xmlns:fn=\"http://www.w3.org/2005/xpath-functions\">"
-      + "<xsl:template match=\"@*|node()\">\n"
-      + "<xsl:copy>\n"
-      + "    <xsl:apply-templates select=\"@*|node()\"/>\n"
-      + "  </xsl:copy>"
-      + "</xsl:template>"
-      + "<xsl:template match=\"Table/@name\">"
-      + "    <xsl:attribute name=\"name\">" + tableName + "</xsl:attribute>"
-      + "</xsl:template>"
-      + "<xsl:template match=\"Schema/@name\">"
-      + "    <xsl:attribute name=\"name\">" + modelName + "</xsl:attribute>"
-      + "</xsl:template>"
-      + "<xsl:template match=\"Cube/@name\">"
-      + "    <xsl:attribute name=\"name\">" + modelName + "</xsl:attribute>"
-      + "</xsl:template>"
-      + "</xsl:stylesheet>";
+  private void validateSDRSchema( final MondrianSchemaRewriter.Summary schema ) throws KettleException {
+    validateSingleTable( schema.getTableNames() );
+    validateSingleCube( schema.getCubeCount() );
+    validateColumns( schema.getColumns() );
   }
 
-  private void validateSDRSchema( final String schema ) throws KettleException {
-    try {
-      validateSingleTable( schema );
-      validateSingleCube( schema );
-      validateColumns( schema );
-    } catch ( XPathException e ) {
-      throw new KettleException( e );
+  private void validateColumns( final List<ColumnReference> columns ) throws KettleException {
+    KettleException error = findColumnErrors( columns, getFieldsInDatabase() );
+    // the table may have changed since its fields were cached
+    if ( error != null && invalidateFieldsInDatabase() ) {
+      error = findColumnErrors( columns, getFieldsInDatabase() );
+    }
+    if ( error != null ) {
+      throw error;
     }
   }
 
-  private void validateColumns( final String schema ) throws XPathExpressionException, KettleException {
+  private KettleException findColumnErrors( final List<ColumnReference> columns,
+                                            final List<ValueMetaInterface> fieldsInDatabase ) {
+    Map<String, ValueMetaInterface> fieldsByName =
+      new HashMap<String, ValueMetaInterface>( fieldsInDatabase.size() * 2 );
+    for ( ValueMetaInterface valueMetaInterface : fieldsInDatabase ) {
+      fieldsByName.putIfAbsent( valueMetaInterface.getName(), valueMetaInterface );
+    }
     ArrayList<String> notFound = new ArrayList<String>();
     ArrayList<String> incompatibleTypes = new ArrayList<String>();
-    List<ValueMetaInterface> fieldsInDatabase = getFieldsInDatabase();
-    NodeList levelColumnAttributes = getNodeList( schema, "//Level | //Measure" );
-    for ( int i = 0; i < levelColumnAttributes.getLength(); i++ ) {
-      Node node = levelColumnAttributes.item( i );
-      Node schemaColumnNode = node.getAttributes().getNamedItem( "column" );
-      String schemaColumn = schemaColumnNode.getTextContent();
-      boolean foundColumn = false;
-      for ( ValueMetaInterface valueMetaInterface : fieldsInDatabase ) {
-        if (  valueMetaInterface.getName().equals( schemaColumn ) ) {
-          foundColumn = true;
-          Node type = node.getAttributes().getNamedItem( "type" );
-          if ( type != null ) {
-            List<Integer> validTypes = analysisTypeMapping.get( type.getTextContent() );
-            if ( !validTypes.contains( valueMetaInterface.getType() ) ) {
-              incompatibleTypes.add( schemaColumnNode.getTextContent() );
-            }
-          }
+    for ( ColumnReference column : columns ) {
+      String schemaColumn = column.getColumn();
+      ValueMetaInterface valueMetaInterface = fieldsByName.get( schemaColumn );
+      if ( valueMetaInterface == null ) {
+        notFound.add( schemaColumn );
+      } else if ( column.getType() != null ) {
+        List<Integer> validTypes = analysisTypeMapping.get( column.getType() );
+        if ( !validTypes.contains( valueMetaInterface.getType() ) ) {
+          incompatibleTypes.add( schemaColumn );
         }
       }
-      if ( !foundColumn ) {
-        notFound.add( schemaColumnNode.getTextContent() );
-      }
     }
-    if ( !notFound.isEmpty()  || !incompatibleTypes.isEmpty() ) {
-      throw new KettleException(
-        getString( PKG, "AnalysisModeler.ColumnValidation",
-          msgIfNotEmpty( notFound, "AnalysisModeler.SelectModelColumnNotFound" ),
-          msgIfNotEmpty( incompatibleTypes, "AnalysisModeler.SelectModelColumnTypeMismatch" ) ) );
+    if ( notFound.isEmpty() && incompatibleTypes.isEmpty() ) {
+      return null;
     }
+    return new KettleException(
+      getString( PKG, "AnalysisModeler.ColumnValidation",
+        msgIfNotEmpty( notFound, "AnalysisModeler.SelectModelColumnNotFound" ),
+        msgIfNotEmpty( incompatibleTypes, "AnalysisModeler.SelectModelColumnTypeMismatch" ) ) );
   }
 
   private String msgIfNotEmpty( final ArrayList<String> notFound, final String msgKey ) {
@@ -167,52 +141,62 @@ public class AnalysisModeler {
     return getString( PKG, msgKey, notFound.toString() );
   }
 
-  private void validateSingleTable( final String schema ) throws XPathExpressionException, KettleException {
-    NodeList tableNameAttributes = getNodeList( schema, "//Table/@name" );
-    if ( !modelTablesAreSupported( tableNameAttributes ) ) {
+  private void validateSingleTable( final List<String> tableNames ) throws KettleException {
+    if ( !modelTablesAreSupported( tableNames ) ) {
       throw new KettleException( getString( PKG, "AnalysisModeler.SelectModelErrorMultipleTables" ) );
     }
   }
 
-  private void validateSingleCube( final String schema ) throws XPathExpressionException, KettleException {
-    NodeList tableNameAttributes = getNodeList( schema, "//Cube" );
-    if ( tableNameAttributes.getLength() != 1 ) {
+  private void validateSingleCube( final int cubeCount ) throws KettleException {
+    if ( cubeCount != 1 ) {
       throw new KettleException( getString( PKG, "AnalysisModeler.SelectModelErrorMultipleCubes" ) );
     }
   }
 
   List<ValueMetaInterface> getFieldsInDatabase() throws KettleDatabaseException {
-    Database database = new Database( jobEntry, connectionInfo.getDatabaseMeta() );
+    final DatabaseMeta databaseMeta = connectionInfo.getDatabaseMeta();
+    final String tableName = getTablename();
+    if ( databaseMeta == null ) {
+      return loadTableFields( databaseMeta, tableName ).getValueMetaList();
+    }
+    return TableFieldsCache.getInstance().getTableFields(
+      TableFieldsCache.key( jobEntry, databaseMeta, tableName ),
+      () -> loadTableFields( databaseMeta, tableName ) ).getValueMetaList();
+  }
+
+  /**
+   * @return true if cached fields were dropped, so that reading them again goes to the database
+   */
+  boolean invalidateFieldsInDatabase() throws KettleDatabaseException {
+    DatabaseMeta databaseMeta = connectionInfo.getDatabaseMeta();
+    return databaseMeta != null
+      && TableFieldsCache.getInstance().invalidate( TableFieldsCache.key( jobEntry, databaseMeta, getTablename() ) );
+  }
+
+  private RowMetaInterface loadTableFields( DatabaseMeta databaseMeta, String tableName )
+    throws KettleDatabaseException {
+    // a pooled DatabaseMeta hands out a pooled connection here
+    Database database = new Database( jobEntry, databaseMeta );
     try {
       database.connect();
-      RowMetaInterface tableFields = database.getTableFields( getTablename() );
-      return tableFields.getValueMetaList();
+      return database.getTableFields( tableName );
     } finally {
       database.disconnect();
     }
   }
 
+
   private String getTablename() {
     return jobEntry.environmentSubstitute( connectionInfo.getTableName() );
   }
 
-  private NodeList getNodeList( final String schema, final String xPathExpression ) throws XPathExpressionException {
-    XPathFactory factory = XPathFactory.newInstance();
-    XPath xpath = factory.newXPath();
-    return (NodeList) xpath.compile( xPathExpression )
-        .evaluate( new InputSource( new StringReader( schema ) ), XPathConstants.NODESET );
-  }
-
-  private boolean modelTablesAreSupported( final NodeList tableNameAttributes ) {
-    int length = tableNameAttributes.getLength();
-    String uniqueTableName;
-    if ( length > 0 ) {
-      uniqueTableName = tableNameAttributes.item( 0 ).getTextContent();
-    } else {
+  private boolean modelTablesAreSupported( final List<String> tableNames ) {
+    if ( tableNames.isEmpty() ) {
       return false;
     }
-    for ( int i = 1; i < length; i++ ) {
-      if ( !tableNameAttributes.item( i ).getTextContent().equals( uniqueTableName ) ) {
+    String uniqueTableName = tableNames.get( 0 );
+    for ( String tableName : tableNames ) {
+      if ( !tableName.equals( uniqueTableName ) ) {
         return false;
       }
     }
@@ -30,9 +30,12 @@ import org.pentaho.agilebi.modeler.nodes.DimensionMetaData;
 import org.pentaho.agilebi.modeler.nodes.DimensionMetaDataCollection;
 import org.pentaho.agilebi.modeler.nodes.HierarchyMetaData;
 import org.pentaho.agilebi.modeler.nodes.LevelMetaData;
+import org.pentaho.agilebi.modeler.nodes.MeasureMetaData;
 import org.pentaho.agilebi.modeler.util.TableModelerSource;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.refinery.profile.FieldProfile;
+import org.pentaho.di.core.refinery.profile.FieldProfiles;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.job.entries.build.JobEntryBuildModel;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
@@ -51,6 +54,7 @@ import org.pentaho.metadata.model.SqlPhysicalColumn;
 import org.pentaho.metadata.model.SqlPhysicalModel;
 import org.pentaho.metadata.model.SqlPhysicalTable;
 import org.pentaho.metadata.model.concept.Concept;
+import org.pentaho.metadata.model.concept.types.AggregationType;
 import org.pentaho.metadata.model.concept.types.DataType;
 import org.pentaho.metadata.model.concept.types.LocalizedString;
 import org.pentaho.metadata.model.olap.OlapCube;
@@ -58,6 +62,7 @@ import org.pentaho.metastore.api.IMetaStore;
 import org.pentaho.pms.core.exception.PentahoMetadataException;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -113,6 +118,18 @@ public class DswModeler {
                              final PhysicalTableImporter.ImportStrategy importStrategy, final ModelAnnotationGroup modelAnnotations,
                              final IMetaStore metaStore )
     throws ModelerException {
+    return createModel( modelName, source, dbMeta, importStrategy, modelAnnotations, metaStore, null );
+  }
+
+  /**
+   * Creates a new DSW-enabled XMI model, using field statistics gathered by profiling steps to refine the auto model
+   * before annotations are applied.
+   * @param fieldProfiles may be null
+   */
+  public Domain createModel( final String modelName, TableModelerSource source, DatabaseMeta dbMeta,
+                             final PhysicalTableImporter.ImportStrategy importStrategy, final ModelAnnotationGroup modelAnnotations,
+                             final IMetaStore metaStore, final FieldProfiles fieldProfiles )
+    throws ModelerException {
     // Create PME with physical metadata and then set into modeler
     Domain domain = source.generateDomain( importStrategy );
 
@@ -135,6 +152,10 @@ public class DswModeler {
       removeAutoGeo( model );
     }
 
+    if ( fieldProfiles != null && !fieldProfiles.isEmpty() ) {
+      applyFieldProfiles( model, fieldProfiles );
+    }
+
     // Now save update PME with OLAP metadata
     model.getWorkspaceHelper().populateDomain( model );
 
@@ -194,10 +215,76 @@ public class DswModeler {
     }
   }
 
-  private GeoContext initGeoContext() {
+  /**
+   * Identifier-like measures are counted instead of summed, and dimensions are ordered from lowest to highest
+   * cardinality. Fields that weren't profiled are left alone.
+   */
+  void applyFieldProfiles( final ModelerWorkspace workspace, final FieldProfiles fieldProfiles ) {
+    for ( MeasureMetaData measure : workspace.getModel().getMeasures() ) {
+      FieldProfile profile = fieldProfiles.get( measure.getName() );
+      if ( profile != null && profile.isIdentifier() ) {
+        log.logDetailed( BaseMessages.getString( PKG, "BuildModelJob.Info.IdentifierMeasure", measure.getName() ) );
+        measure.setDefaultAggregation( AggregationType.COUNT_DISTINCT );
+      }
+    }
+
+    DimensionMetaDataCollection dimensions = workspace.getModel().getDimensions();
+    List<DimensionMetaData> ordered = new ArrayList<DimensionMetaData>( dimensions );
+    // stable sort, unprofiled dimensions keep their order at the end
+    ordered.sort( Comparator.comparingLong( ( DimensionMetaData dimension ) -> {
+      FieldProfile profile = fieldProfiles.get( dimension.getName() );
+      return profile == null ? Long.MAX_VALUE : profile.getCardinality();
+    } ) );
+    dimensions.clear();
+    dimensions.addAll( ordered );
+  }
+
+  /**
+   * Adds what {@link #createModel} depends on besides its arguments: the geo configuration, whether JNDI is used, and
+   * what the field profiles decide, which is the identifier fields and the order of fields by cardinality.
+   */
+  public void addToFingerprint( final ModelBuildCache.Fingerprint fingerprint, final FieldProfiles fieldProfiles ) {
+    fingerprint.add( useJndi );
     try {
       GeoContextConfigProvider config = getGeoContextConfigProvider();
+      String roles = config.getRoles();
+      fingerprint.add( config.getDimensionName(), roles );
+      if ( roles != null ) {
+        for ( String role : roles.split( "," ) ) {
+          role = role.trim();
+          fingerprint.add( role, config.getRoleAliases( role ), config.getRoleRequirements( role ) );
+        }
+      }
+    } catch ( Throwable e ) {
+      // no geo context is built either
+      fingerprint.add( "no geo context" );
+    }
+
+    if ( fieldProfiles != null && !fieldProfiles.isEmpty() ) {
+      List<FieldProfile> profiles = new ArrayList<FieldProfile>( fieldProfiles.getAll() );
+      profiles.sort( Comparator.comparingLong( FieldProfile::getCardinality ).thenComparing( FieldProfile::getName ) );
+      int rank = 0;
+      for ( int i = 0; i < profiles.size(); i++ ) {
+        FieldProfile profile = profiles.get( i );
+        if ( i > 0 && profile.getCardinality() != profiles.get( i - 1 ).getCardinality() ) {
+          rank++;
+        }
+        fingerprint.add( profile.getName(), profile.isIdentifier(), rank );
+      }
+    }
+  }
 
+  private GeoContext initGeoContext() {
+    GeoContextConfigProvider config = getGeoContextConfigProvider();
+    if ( config instanceof GeoContextBlueprintConfigProvider ) {
+      try {
+        return ( (GeoContextBlueprintConfigProvider) config ).getGeoContext();
+      } catch ( Throwable e ) {
+        log.logError( BaseMessages.getString( PKG, "BuildModelJob.Error.GeoContext", e.getMessage() ) );
+        return null;
+      }
+    }
+    try {
       return GeoContextFactory.create( config );
     } catch ( Throwable e ) {
       log.logDebug( "unable to locate geoRoles properties" );
@@ -16,20 +16,31 @@ package org.pentaho.di.core.refinery.model;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 import org.pentaho.agilebi.modeler.ModelerException;
+import org.pentaho.agilebi.modeler.geo.GeoContext;
 import org.pentaho.agilebi.modeler.geo.GeoContextConfigProvider;
+import org.pentaho.agilebi.modeler.geo.GeoContextFactory;
 import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ManagedService;
 
 import java.util.Dictionary;
 import java.util.Hashtable;
 
 /**
  * Created by rfellows on 11/23/15.
+ * <p>
+ * Also builds the {@link GeoContext} of the configuration once, for all the models built until ConfigurationAdmin
+ * pushes an update of pentaho.geo.roles.
  */
-public class GeoContextBlueprintConfigProvider implements GeoContextConfigProvider {
+public class GeoContextBlueprintConfigProvider implements GeoContextConfigProvider, ManagedService {
 
   private BundleContext bundleContext;
-  protected Dictionary<String, Object> props = new Hashtable<>();
+  protected volatile Dictionary<String, Object> props = new Hashtable<>();
+
+  private long version;
+  private long geoContextVersion = -1;
+  private GeoContext geoContext;
+  private ModelerException geoContextFailure;
 
   public BundleContext getBundleContext() {
     return bundleContext;
@@ -49,11 +60,49 @@ public class GeoContextBlueprintConfigProvider implements GeoContextConfigProvid
       try {
         final ConfigurationAdmin admin = (ConfigurationAdmin) getBundleContext().getService( serviceReference );
         final Configuration configuration = admin.getConfiguration( "pentaho.geo.roles" );
-        props = configuration.getProperties();
+        setProps( configuration.getProperties() );
       } catch ( Exception e ) {
-        props = new Hashtable<>();
+        setProps( null );
+      }
+    }
+  }
+
+  /**
+   * Called by ConfigurationAdmin with the new pentaho.geo.roles configuration, null once it is deleted.
+   */
+  @Override
+  @SuppressWarnings( "unchecked" )
+  public void updated( Dictionary<String, ?> properties ) {
+    setProps( (Dictionary<String, Object>) properties );
+  }
+
+  private synchronized void setProps( Dictionary<String, Object> properties ) {
+    props = properties == null ? new Hashtable<String, Object>() : properties;
+    version++;
+  }
+
+  /**
+   * The geo context of the current configuration, built once per version of it and shared by the models built
+   * meanwhile, which only read it. A configuration that can't be built fails the same way until it is updated.
+   *
+   * @return null if no geo roles are configured
+   */
+  public synchronized GeoContext getGeoContext() throws ModelerException {
+    if ( geoContextVersion != version ) {
+      geoContext = null;
+      geoContextFailure = null;
+      try {
+        String roles = getRoles();
+        geoContext = roles == null || roles.trim().isEmpty() ? null : GeoContextFactory.create( this );
+      } catch ( ModelerException e ) {
+        geoContextFailure = e;
       }
+      geoContextVersion = version;
+    }
+    if ( geoContextFailure != null ) {
+      throw geoContextFailure;
     }
+    return geoContext;
   }
 
   @Override
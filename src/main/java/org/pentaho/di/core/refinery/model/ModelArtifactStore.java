@@ -0,0 +1,319 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.model;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CharSequenceInputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.job.entries.build.JobEntryBuildModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Model artifacts (XMI, Mondrian schemas) too large to be copied around in job variables. The content is written to a
+ * temporary file and the variable only holds a handle, which sub-jobs inherit like any other value. Artifacts are
+ * reference counted: the root job of the one that stored it releases it when it finishes, readers hold a reference
+ * while they stream it, and the file is deleted with the last reference.
+ * <p>
+ * Handles are local to the JVM and to the run of the root job. They can't be resolved on another Carte server, nor
+ * once the root job finished.
+ * <p>
+ * Each JVM spools to its own directory in the {@value #SPOOL_DIRECTORY} subdirectory of {@link #DIRECTORY_PROPERTY}
+ * and holds a lock on it while it runs. The first time the store is used, the directories of JVMs that ended without
+ * cleaning up are deleted. Only directories named like the ones the store creates are looked at, and only once they
+ * are older than a minute, so that a directory another JVM is still setting up is left alone.
+ */
+public class ModelArtifactStore {
+
+  /**
+   * Length in characters above which an artifact is spooled to disk instead of being set in the variable
+   */
+  public static final String THRESHOLD_PROPERTY = "KETTLE_DATA_REFINERY_ARTIFACT_SPOOL_THRESHOLD";
+  static final long DEFAULT_THRESHOLD = 1024L * 1024;
+
+  /**
+   * Directory the artifacts are spooled under, defaults to the temporary directory
+   */
+  public static final String DIRECTORY_PROPERTY = "KETTLE_DATA_REFINERY_ARTIFACT_DIR";
+
+  static final String HANDLE_PREFIX = "data-refinery-artifact:";
+  static final String SPOOL_DIRECTORY = "data-refinery-artifacts";
+  static final String JVM_DIRECTORY_PREFIX = "jvm-";
+  static final String LOCK_FILE = ".lock";
+  // time a JVM has to lock the directory it just created
+  static final long SWEEP_GRACE_MS = 60000L;
+
+  private static final Class<?> PKG = JobEntryBuildModel.class;
+
+  private static final ModelArtifactStore INSTANCE = new ModelArtifactStore();
+
+  private final Map<String, Artifact> artifacts = new HashMap<>();
+  private File directory;
+  // held as long as the JVM runs, tells other JVMs that the directory is in use
+  private FileLock lock;
+
+  ModelArtifactStore() {
+  }
+
+  public static ModelArtifactStore getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return true if the content is large enough to be stored instead of set in a variable
+   */
+  public boolean isLarge( String content ) {
+    return content != null && content.length() > getThreshold();
+  }
+
+  /**
+   * Writes the content to a temporary file, the caller owns the first reference.
+   *
+   * @return the handle to set in the variable
+   */
+  public String put( String content ) throws KettleException {
+    File file = null;
+    try {
+      file = File.createTempFile( "data-refinery-", ".artifact", getDirectory() );
+      try ( Writer writer = new BufferedWriter(
+        new OutputStreamWriter( new FileOutputStream( file ), StandardCharsets.UTF_8 ) ) ) {
+        writer.write( content );
+      }
+    } catch ( IOException e ) {
+      FileUtils.deleteQuietly( file );
+      throw new KettleException( e );
+    }
+    return add( file );
+  }
+
+  /**
+   * Writes content of unknown size. It is kept in memory up to the threshold (in bytes here) and goes to a temporary
+   * file past it, so a large artifact is never held in memory as a whole.
+   *
+   * @return the UTF-8 content if it stayed below the threshold, else its handle, the caller owning the first reference
+   */
+  public String write( Content content ) throws KettleException {
+    DeferredFileOutputStream out;
+    try {
+      out = new DeferredFileOutputStream( (int) Math.min( getThreshold(), Integer.MAX_VALUE ),
+        "data-refinery-", ".artifact", getDirectory() );
+    } catch ( IOException e ) {
+      throw new KettleException( e );
+    }
+    boolean written = false;
+    try {
+      content.writeTo( out );
+      out.close();
+      written = true;
+    } catch ( IOException e ) {
+      throw new KettleException( e );
+    } finally {
+      if ( !written ) {
+        IOUtils.closeQuietly( out );
+        FileUtils.deleteQuietly( out.getFile() );
+      }
+    }
+    if ( out.isInMemory() ) {
+      return new String( out.getData(), StandardCharsets.UTF_8 );
+    }
+    return add( out.getFile() );
+  }
+
+  private String add( File file ) {
+    String handle = HANDLE_PREFIX + UUID.randomUUID();
+    synchronized ( artifacts ) {
+      artifacts.put( handle, new Artifact( file ) );
+    }
+    return handle;
+  }
+
+  private static long getThreshold() {
+    return Const.toLong( EnvUtil.getSystemProperty( THRESHOLD_PROPERTY ), DEFAULT_THRESHOLD );
+  }
+
+  public static boolean isHandle( String value ) {
+    return value != null && value.startsWith( HANDLE_PREFIX );
+  }
+
+  /**
+   * Drops a reference, the file is deleted with the last one.
+   */
+  public void release( String handle ) {
+    File file = null;
+    synchronized ( artifacts ) {
+      Artifact artifact = artifacts.get( handle );
+      if ( artifact != null && --artifact.references == 0 ) {
+        artifacts.remove( handle );
+        file = artifact.file;
+      }
+    }
+    FileUtils.deleteQuietly( file );
+  }
+
+  /**
+   * Opens the UTF-8 content of a variable: the stored artifact if the value is a handle, else the value itself. A
+   * stored artifact stays on disk until the stream is closed.
+   */
+  public InputStream openStream( final String value ) throws KettleException {
+    if ( !isHandle( value ) ) {
+      return new CharSequenceInputStream( value, StandardCharsets.UTF_8 );
+    }
+    File file = acquire( value );
+    try {
+      return new FilterInputStream( new BufferedInputStream( new FileInputStream( file ) ) ) {
+        private boolean closed;
+
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            if ( !closed ) {
+              closed = true;
+              release( value );
+            }
+          }
+        }
+      };
+    } catch ( IOException e ) {
+      release( value );
+      throw new KettleException( e );
+    }
+  }
+
+  /**
+   * @return the content of a variable, read from disk if the value is a handle
+   */
+  public String resolve( String value ) throws KettleException {
+    if ( !isHandle( value ) ) {
+      return value;
+    }
+    File file = acquire( value );
+    try {
+      return FileUtils.readFileToString( file, StandardCharsets.UTF_8 );
+    } catch ( IOException e ) {
+      throw new KettleException( e );
+    } finally {
+      release( value );
+    }
+  }
+
+  int size() {
+    synchronized ( artifacts ) {
+      return artifacts.size();
+    }
+  }
+
+  /**
+   * @return the spool directory of this JVM, created on first use after the orphans of other JVMs are deleted
+   */
+  synchronized File getDirectory() throws IOException {
+    if ( directory == null ) {
+      File root = new File( Const.NVL( EnvUtil.getSystemProperty( DIRECTORY_PROPERTY ),
+        System.getProperty( "java.io.tmpdir" ) ), SPOOL_DIRECTORY );
+      sweep( root );
+      File own = new File( root, JVM_DIRECTORY_PREFIX + UUID.randomUUID() );
+      if ( !own.mkdirs() ) {
+        throw new IOException( "Unable to create " + own );
+      }
+      lock = FileChannel.open( new File( own, LOCK_FILE ).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE ).lock();
+      directory = own;
+    }
+    return directory;
+  }
+
+  /**
+   * Deletes the JVM directories no running JVM holds the lock of, anything else in the root is left alone
+   */
+  static void sweep( File root ) {
+    File[] children = root.listFiles();
+    if ( children == null ) {
+      return;
+    }
+    long settled = System.currentTimeMillis() - SWEEP_GRACE_MS;
+    for ( File child : children ) {
+      if ( child.isDirectory() && child.getName().startsWith( JVM_DIRECTORY_PREFIX )
+        && child.lastModified() < settled && !isLocked( new File( child, LOCK_FILE ) ) ) {
+        FileUtils.deleteQuietly( child );
+      }
+    }
+  }
+
+  private static boolean isLocked( File lockFile ) {
+    if ( !lockFile.isFile() ) {
+      return false;
+    }
+    try ( FileChannel channel = FileChannel.open( lockFile.toPath(), StandardOpenOption.WRITE ) ) {
+      FileLock other = channel.tryLock();
+      if ( other == null ) {
+        return true;
+      }
+      other.release();
+      return false;
+    } catch ( IOException | RuntimeException e ) {
+      // locked by this JVM, or not ours to tell
+      return true;
+    }
+  }
+
+  private File acquire( String handle ) throws KettleException {
+    synchronized ( artifacts ) {
+      Artifact artifact = artifacts.get( handle );
+      if ( artifact == null ) {
+        throw new KettleException( BaseMessages.getString( PKG, "BuildModelJob.Error.ArtifactNotAvailable", handle ) );
+      }
+      artifact.references++;
+      return artifact.file;
+    }
+  }
+
+  /**
+   * Artifact written as a stream
+   */
+  public interface Content {
+    void writeTo( OutputStream out ) throws KettleException, IOException;
+  }
+
+  private static class Artifact {
+    private final File file;
+    private int references = 1;
+
+    private Artifact( File file ) {
+      this.file = file;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.model;
+
+import org.apache.commons.io.FileUtils;
+import org.pentaho.agilebi.modeler.ModelerWorkspace;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.metadata.automodel.PhysicalTableImporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * XMI of models built by Build Model, kept on disk by fingerprint of everything the build depends on. A job that runs
+ * again on a table and annotations that did not change gets the model it built last time without modeling it again.
+ * The oldest models are dropped once the cache holds more than its size.
+ */
+public class ModelBuildCache {
+
+  /**
+   * Directory of the cache, defaults to data-refinery/model-cache in the Kettle home directory
+   */
+  public static final String DIRECTORY_PROPERTY = "KETTLE_DATA_REFINERY_MODEL_CACHE_DIR";
+
+  /**
+   * How many models are kept; 0 disables the cache
+   */
+  public static final String SIZE_PROPERTY = "KETTLE_DATA_REFINERY_MODEL_CACHE_SIZE";
+  static final int DEFAULT_SIZE = 100;
+
+  /**
+   * Changes whenever a new version of the plugin models differently from the same inputs
+   */
+  static final String FORMAT_VERSION = "1";
+
+  /**
+   * Versions of the plugin and of the modeler and metadata libraries, an upgrade of any of them can model differently
+   */
+  static final String LIBRARY_VERSIONS = version( ModelBuildCache.class ) + "/" + version( ModelerWorkspace.class )
+    + "/" + version( PhysicalTableImporter.class );
+
+  private static final String EXTENSION = ".xmi";
+
+  private static final ModelBuildCache INSTANCE = new ModelBuildCache();
+
+  ModelBuildCache() {
+  }
+
+  public static ModelBuildCache getInstance() {
+    return INSTANCE;
+  }
+
+  public boolean isEnabled() {
+    return getSize() > 0;
+  }
+
+  /**
+   * @return the XMI built for the fingerprint, null if there is none
+   */
+  public String get( String fingerprint ) {
+    File file = getFile( fingerprint );
+    try {
+      String xmi = FileUtils.readFileToString( file, StandardCharsets.UTF_8 );
+      // most recently used models are the last to go
+      file.setLastModified( System.currentTimeMillis() );
+      return xmi;
+    } catch ( IOException e ) {
+      return null;
+    }
+  }
+
+  public synchronized void put( String fingerprint, String xmi ) throws KettleException {
+    File directory = getDirectory();
+    File temp = null;
+    try {
+      FileUtils.forceMkdir( directory );
+      temp = File.createTempFile( fingerprint, ".tmp", directory );
+      FileUtils.writeStringToFile( temp, xmi, StandardCharsets.UTF_8 );
+      // readers see the whole model or none
+      Files.move( temp.toPath(), getFile( fingerprint ).toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE );
+    } catch ( IOException e ) {
+      FileUtils.deleteQuietly( temp );
+      throw new KettleException( e );
+    }
+    evict( directory );
+  }
+
+  public synchronized void clear() {
+    File[] files = listModels( getDirectory() );
+    for ( File file : files ) {
+      FileUtils.deleteQuietly( file );
+    }
+  }
+
+  int size() {
+    return listModels( getDirectory() ).length;
+  }
+
+  private void evict( File directory ) {
+    File[] files = listModels( directory );
+    int size = getSize();
+    if ( files.length <= size ) {
+      return;
+    }
+    Arrays.sort( files, Comparator.comparingLong( File::lastModified ) );
+    for ( int i = 0; i < files.length - size; i++ ) {
+      FileUtils.deleteQuietly( files[ i ] );
+    }
+  }
+
+  private File[] listModels( File directory ) {
+    File[] files = directory.listFiles( ( dir, name ) -> name.endsWith( EXTENSION ) );
+    return files == null ? new File[ 0 ] : files;
+  }
+
+  private File getFile( String fingerprint ) {
+    return new File( getDirectory(), fingerprint + EXTENSION );
+  }
+
+  File getDirectory() {
+    String directory = EnvUtil.getSystemProperty( DIRECTORY_PROPERTY );
+    if ( Const.isEmpty( directory ) ) {
+      directory = Const.getKettleDirectory() + Const.FILE_SEPARATOR + "data-refinery" + Const.FILE_SEPARATOR
+        + "model-cache";
+    }
+    return new File( directory );
+  }
+
+  int getSize() {
+    return Const.toInt( EnvUtil.getSystemProperty( SIZE_PROPERTY ), DEFAULT_SIZE );
+  }
+
+  /**
+   * @return the version of the jar or bundle the class comes from, with its location and the time the jar was written
+   * so that two snapshots of the same version tell apart
+   */
+  static String version( Class<?> type ) {
+    StringBuilder version = new StringBuilder( String.valueOf( type.getPackage() == null ? null
+      : type.getPackage().getImplementationVersion() ) );
+    try {
+      CodeSource source = type.getProtectionDomain().getCodeSource();
+      if ( source != null && source.getLocation() != null ) {
+        version.append( '@' ).append( source.getLocation() );
+        if ( "file".equals( source.getLocation().getProtocol() ) ) {
+          version.append( '@' ).append( new File( source.getLocation().toURI() ).lastModified() );
+        }
+      }
+    } catch ( Exception e ) {
+      // the implementation version has to do
+    }
+    return version.toString();
+  }
+
+  /**
+   * Hash of the inputs of a model build. Values are length prefixed, so that no two lists of values hash alike by
+   * accident of concatenation.
+   */
+  public static class Fingerprint {
+
+    private final MessageDigest digest;
+
+    public Fingerprint() {
+      try {
+        digest = MessageDigest.getInstance( "SHA-256" );
+      } catch ( NoSuchAlgorithmException e ) {
+        throw new IllegalStateException( e );
+      }
+      add( FORMAT_VERSION, LIBRARY_VERSIONS );
+    }
+
+    public Fingerprint add( Object... values ) {
+      for ( Object value : values ) {
+        if ( value == null ) {
+          digest.update( (byte) 0 );
+        } else {
+          byte[] bytes = value.toString().getBytes( StandardCharsets.UTF_8 );
+          digest.update( (byte) 1 );
+          digest.update( Integer.toString( bytes.length ).getBytes( StandardCharsets.UTF_8 ) );
+          digest.update( (byte) ':' );
+          digest.update( bytes );
+        }
+      }
+      return this;
+    }
+
+    /**
+     * @return the hash, in hexadecimal
+     */
+    @Override
+    public String toString() {
+      byte[] hash;
+      try {
+        hash = ( (MessageDigest) digest.clone() ).digest();
+      } catch ( CloneNotSupportedException e ) {
+        throw new IllegalStateException( e );
+      }
+      StringBuilder hex = new StringBuilder( hash.length * 2 );
+      for ( byte b : hash ) {
+        hex.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+      }
+      return hex.toString();
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.model;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.refinery.model.ModelServerFetcher.AuthorizationException;
+import org.pentaho.di.core.refinery.model.ModelServerFetcher.DatasourceIds;
+import org.pentaho.di.core.refinery.model.ModelServerFetcher.ServerException;
+import org.pentaho.di.core.refinery.publish.agilebi.BiServerConnection;
+import org.pentaho.di.core.util.EnvUtil;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Analysis and DSW data source IDs of the BA servers, by server and user, for a limited time. Once expired the lists
+ * are asked again only if the server says they changed, when it sends validators. Publishing or deleting a model
+ * through this plugin drops the catalog of the server.
+ */
+public class ModelCatalogCache {
+
+  /**
+   * How long the catalog of a server is used without asking the server, in milliseconds; 0 disables the cache
+   */
+  public static final String TTL_PROPERTY = "KETTLE_DATA_REFINERY_MODEL_CATALOG_TTL";
+  static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis( 1 );
+
+  private static final ModelCatalogCache INSTANCE = new ModelCatalogCache( System::currentTimeMillis );
+
+  private final Map<String, Catalog> catalogs = new HashMap<>();
+  private final LongSupplier clock;
+  private long invalidations;
+
+  ModelCatalogCache( LongSupplier clock ) {
+    this.clock = clock;
+  }
+
+  public static ModelCatalogCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return true if the server of the fetcher has an analysis or DSW data source with the ID
+   */
+  public boolean contains( ModelServerFetcher fetcher, String modelId ) throws AuthorizationException,
+    ServerException {
+    BiServerConnection connection = fetcher.getBiServerConnection();
+    long ttl = getTtl();
+    if ( connection == null || ttl <= 0 ) {
+      return new Catalog( new DatasourceIds( fetcher.fetchAnalysisList(), null, null ),
+        new DatasourceIds( fetcher.fetchDswList(), null, null ), 0 ).contains( modelId );
+    }
+
+    String key = key( connection );
+    long now = clock.getAsLong();
+    Catalog catalog;
+    long generation;
+    synchronized ( catalogs ) {
+      catalog = catalogs.get( key );
+      generation = invalidations;
+    }
+    if ( catalog != null && now - catalog.checked < ttl ) {
+      return catalog.contains( modelId );
+    }
+
+    // ask the server outside of the lock, a slow server must not block the others
+    DatasourceIds analysis = fetcher.fetchAnalysisIds( catalog == null ? null : catalog.analysis );
+    DatasourceIds dsw = fetcher.fetchDswIds( catalog == null ? null : catalog.dsw );
+    Catalog refreshed = catalog != null && analysis == catalog.analysis && dsw == catalog.dsw
+      ? catalog.checkedAt( now ) : new Catalog( analysis, dsw, now );
+    synchronized ( catalogs ) {
+      // a model published while the lists were fetched may be missing from them
+      if ( generation == invalidations ) {
+        evictExpired( now, ttl );
+        catalogs.put( key, refreshed );
+      }
+    }
+    return refreshed.contains( modelId );
+  }
+
+  /**
+   * Drops the catalogs of the server for all users, the next lookup asks for the full lists again.
+   */
+  public void invalidate( BiServerConnection connection ) {
+    if ( connection == null ) {
+      return;
+    }
+    String prefix = connection.getUrl() + "|";
+    synchronized ( catalogs ) {
+      invalidations++;
+      catalogs.keySet().removeIf( key -> key.startsWith( prefix ) );
+    }
+  }
+
+  public void clear() {
+    synchronized ( catalogs ) {
+      invalidations++;
+      catalogs.clear();
+    }
+  }
+
+  int size() {
+    synchronized ( catalogs ) {
+      return catalogs.size();
+    }
+  }
+
+  static String key( BiServerConnection connection ) {
+    return BiServerConnection.getCacheKey( connection );
+  }
+
+  private void evictExpired( long now, long ttl ) {
+    for ( Iterator<Catalog> it = catalogs.values().iterator(); it.hasNext(); ) {
+      // expired catalogs are kept a while for their validators
+      if ( now - it.next().checked >= 10 * ttl ) {
+        it.remove();
+      }
+    }
+  }
+
+  long getTtl() {
+    return Const.toLong( EnvUtil.getSystemProperty( TTL_PROPERTY ), DEFAULT_TTL );
+  }
+
+  private static class Catalog {
+    private final DatasourceIds analysis;
+    private final DatasourceIds dsw;
+    private final Set<String> ids;
+    private final long checked;
+
+    private Catalog( DatasourceIds analysis, DatasourceIds dsw, long checked ) {
+      this( analysis, dsw, new HashSet<>(), checked );
+      ids.addAll( analysis.getIds() );
+      ids.addAll( dsw.getIds() );
+    }
+
+    private Catalog( DatasourceIds analysis, DatasourceIds dsw, Set<String> ids, long checked ) {
+      this.analysis = analysis;
+      this.dsw = dsw;
+      this.ids = ids;
+      this.checked = checked;
+    }
+
+    private Catalog checkedAt( long now ) {
+      return new Catalog( analysis, dsw, ids, now );
+    }
+
+    private boolean contains( String modelId ) {
+      return ids.contains( modelId );
+    }
+  }
+}
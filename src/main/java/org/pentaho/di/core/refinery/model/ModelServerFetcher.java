@@ -23,7 +23,9 @@ import org.pentaho.metadata.util.XmiParser;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 
+import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.xml.xpath.XPath;
@@ -94,9 +96,44 @@ public class ModelServerFetcher extends ModelServerAction {
     return fetchDatasourceIds( DataSourceType.ANALYSIS.getListPath() );
   }
 
+  /**
+   * @param previous ids fetched before, sent back as they are if the server says they did not change; may be null
+   * @return accessible DSW IDs
+   */
+  public DatasourceIds fetchDswIds( DatasourceIds previous ) throws AuthorizationException, ServerException {
+    return fetchDatasourceIds( DataSourceType.DSW.getListPath(), previous );
+  }
+
+  /**
+   * @param previous ids fetched before, sent back as they are if the server says they did not change; may be null
+   * @return accessible analysis datasource IDs
+   */
+  public DatasourceIds fetchAnalysisIds( DatasourceIds previous ) throws AuthorizationException, ServerException {
+    return fetchDatasourceIds( DataSourceType.ANALYSIS.getListPath(), previous );
+  }
+
   protected List<String> fetchDatasourceIds( String path ) throws AuthorizationException, ServerException {
+    return fetchDatasourceIds( path, null ).getIds();
+  }
+
+  /**
+   * Asks for the list only if it changed when the previous response had an entity tag or a modification date.
+   */
+  protected DatasourceIds fetchDatasourceIds( String path, DatasourceIds previous )
+    throws AuthorizationException, ServerException {
     WebTarget listGet = getResource( path );
-    Response response = httpGet( listGet.request( MediaType.APPLICATION_XML ) );
+    Invocation.Builder request = listGet.request( MediaType.APPLICATION_XML );
+    if ( previous != null && previous.getEntityTag() != null ) {
+      request = request.header( HttpHeaders.IF_NONE_MATCH, previous.getEntityTag() );
+    }
+    if ( previous != null && previous.getLastModified() != null ) {
+      request = request.header( HttpHeaders.IF_MODIFIED_SINCE, previous.getLastModified() );
+    }
+    Response response = httpGet( request );
+    if ( previous != null && response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode() ) {
+      response.close();
+      return previous;
+    }
     if ( isSuccess( response ) ) {
       InputStream input = null;
       try {
@@ -116,7 +153,8 @@ public class ModelServerFetcher extends ModelServerAction {
         for ( int i = 0; i < items.getLength(); i++ ) {
           result.add( items.item( i ).getNodeValue() );
         }
-        return result;
+        return new DatasourceIds( result, response.getHeaderString( HttpHeaders.ETAG ),
+          response.getHeaderString( HttpHeaders.LAST_MODIFIED ) );
       } catch ( XPathExpressionException e ) {
         // shouldn't really happen
         throw new RuntimeException( e );
@@ -136,6 +174,19 @@ public class ModelServerFetcher extends ModelServerAction {
 
   public String downloadAnalysisFile( String analysisId )
           throws KettleException, AuthorizationException, ServerException, UnsupportedEncodingException {
+    try ( InputStream schema = openAnalysisFile( analysisId ) ) {
+      return IOUtils.toString( schema, "UTF-8" );
+    } catch ( IOException e ) {
+      throw new KettleException( e );
+    }
+  }
+
+  /**
+   * Opens the analysis schema for reading without loading it in memory, unzipping it if needed. The caller closes
+   * the stream.
+   */
+  public InputStream openAnalysisFile( String analysisId )
+          throws KettleException, AuthorizationException, ServerException {
     String encodedId;
     try {
       encodedId = new URI( null, null, analysisId, null ).getRawPath();
@@ -146,15 +197,12 @@ public class ModelServerFetcher extends ModelServerAction {
         getResource( DataSourceType.ANALYSIS.getDownloadPath( encodedId ) ).request().get();
     if ( isSuccess( response ) ) {
       if ( response.getMediaType().toString().equals( "application/zip" ) ) {
-        try ( ZipInputStream zipInputStream = extractFromZip( "schema.xml", response ) ) {
-          return IOUtils.toString( zipInputStream );
-        } catch ( IOException e ) {
-          throw new KettleException( e );
-        }
+        return extractFromZip( "schema.xml", response );
       } else {
-        return response.readEntity( String.class );
+        return response.readEntity( InputStream.class );
       }
     } else {
+      response.close();
       switch ( response.getStatus() ) {
         case 401:
           throw new AuthorizationException();
@@ -189,6 +237,7 @@ public class ModelServerFetcher extends ModelServerAction {
         throw new KettleException( e );
       }
     } else {
+      response.close();
       switch ( response.getStatus() ) {
         case 401:
           throw new AuthorizationException();
@@ -200,9 +249,10 @@ public class ModelServerFetcher extends ModelServerAction {
   }
 
   private ZipInputStream extractFromZip( final String fileName, final Response response ) throws KettleException {
+    ZipInputStream zipin = null;
     try {
       InputStream input = response.readEntity( InputStream.class );
-      ZipInputStream zipin = new ZipInputStream( input );
+      zipin = new ZipInputStream( input );
       // fileName=Model.xmi -> Model.zip[ Model.xmi, Model.mondrian.xml ]
       for ( ZipEntry entry = zipin.getNextEntry(); entry != null; entry = zipin.getNextEntry() ) {
         if ( entry.getName().equals( fileName ) ) {
@@ -211,11 +261,42 @@ public class ModelServerFetcher extends ModelServerAction {
       }
     } catch ( Exception e ) {
       // stream / model issues
+      IOUtils.closeQuietly( zipin );
+      response.close();
       throw new KettleException( e );
     }
+    IOUtils.closeQuietly( zipin );
+    response.close();
     throw new KettleException( "file not found" );
   }
 
+  /**
+   * Data source IDs of one kind, with the validators the server sent for them
+   */
+  public static class DatasourceIds {
+    private final List<String> ids;
+    private final String entityTag;
+    private final String lastModified;
+
+    public DatasourceIds( List<String> ids, String entityTag, String lastModified ) {
+      this.ids = ids;
+      this.entityTag = entityTag;
+      this.lastModified = lastModified;
+    }
+
+    public List<String> getIds() {
+      return ids;
+    }
+
+    public String getEntityTag() {
+      return entityTag;
+    }
+
+    public String getLastModified() {
+      return lastModified;
+    }
+  }
+
   /**
    * generic 500 or something else not covered
    */
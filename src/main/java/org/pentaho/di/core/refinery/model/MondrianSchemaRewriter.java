@@ -0,0 +1,275 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.model;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single pass StAX rewrite of a Mondrian schema: renames the schema and cube to the model name and every table to the
+ * target table, and collects what {@link AnalysisModeler} validates. Memory use depends on the element depth and the
+ * number of column references, not on the schema size.
+ */
+public class MondrianSchemaRewriter {
+
+  private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+  private final String modelName;
+  private final String tableName;
+
+  /**
+   * @param modelName new schema and cube name, null to keep them
+   * @param tableName new table name, null to keep it
+   */
+  public MondrianSchemaRewriter( String modelName, String tableName ) {
+    this.modelName = modelName;
+    this.tableName = tableName;
+  }
+
+  /**
+   * Reads the schema without writing anything.
+   */
+  public static Summary scan( Reader schema ) throws XMLStreamException {
+    MondrianSchemaRewriter scanner = new MondrianSchemaRewriter( null, null );
+    XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader( schema );
+    return scanner.copy( reader, null );
+  }
+
+  /**
+   * Writes the rewritten schema to <code>out</code> as UTF-8. Neither stream is closed.
+   *
+   * @return table, cube and column references of the original schema
+   */
+  public Summary rewrite( InputStream in, OutputStream out ) throws XMLStreamException {
+    XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader( in );
+    XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter( out, "UTF-8" );
+    try {
+      return copy( reader, writer );
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Writes the rewritten schema to <code>out</code>, with a UTF-8 declaration. Neither stream is closed.
+   *
+   * @return table, cube and column references of the original schema
+   */
+  public Summary rewrite( Reader in, Writer out ) throws XMLStreamException {
+    XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader( in );
+    XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter( out );
+    try {
+      return copy( reader, writer );
+    } finally {
+      writer.close();
+    }
+  }
+
+  private Summary copy( XMLStreamReader reader, XMLStreamWriter writer ) throws XMLStreamException {
+    Summary summary = new Summary();
+    try {
+      if ( writer != null ) {
+        writer.writeStartDocument( "UTF-8", "1.0" );
+      }
+      int depth = 0;
+      int event = reader.next();
+      while ( event != XMLStreamConstants.END_DOCUMENT ) {
+        if ( event == XMLStreamConstants.START_ELEMENT ) {
+          collect( reader, summary );
+          String[] attributeValues = rewriteAttributes( reader );
+          int namespaceCount = reader.getNamespaceCount();
+          String prefix = reader.getPrefix();
+          String localName = reader.getLocalName();
+          String namespace = reader.getNamespaceURI();
+          String[][] namespaces = new String[ namespaceCount ][];
+          for ( int i = 0; i < namespaceCount; i++ ) {
+            namespaces[ i ] = new String[] { reader.getNamespacePrefix( i ), reader.getNamespaceURI( i ) };
+          }
+          String[][] attributes = new String[ attributeValues.length ][];
+          for ( int i = 0; i < attributeValues.length; i++ ) {
+            attributes[ i ] = new String[] {
+              reader.getAttributePrefix( i ), reader.getAttributeNamespace( i ), reader.getAttributeLocalName( i ),
+              attributeValues[ i ] };
+          }
+          // look ahead so that empty elements stay empty
+          event = reader.next();
+          boolean empty = event == XMLStreamConstants.END_ELEMENT;
+          if ( writer != null ) {
+            if ( empty ) {
+              writer.writeEmptyElement( nonNull( prefix ), localName, nonNull( namespace ) );
+            } else {
+              writer.writeStartElement( nonNull( prefix ), localName, nonNull( namespace ) );
+            }
+            for ( String[] ns : namespaces ) {
+              writer.writeNamespace( nonNull( ns[ 0 ] ), nonNull( ns[ 1 ] ) );
+            }
+            for ( String[] attribute : attributes ) {
+              writer.writeAttribute( nonNull( attribute[ 0 ] ), nonNull( attribute[ 1 ] ), attribute[ 2 ],
+                attribute[ 3 ] );
+            }
+          }
+          if ( empty ) {
+            event = reader.next();
+          } else {
+            depth++;
+          }
+          continue;
+        }
+        if ( writer != null ) {
+          write( reader, writer, event, depth );
+        }
+        if ( event == XMLStreamConstants.END_ELEMENT ) {
+          depth--;
+        }
+        event = reader.next();
+      }
+      if ( writer != null ) {
+        writer.writeEndDocument();
+        writer.flush();
+      }
+      return summary;
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static void write( XMLStreamReader reader, XMLStreamWriter writer, int event, int depth )
+    throws XMLStreamException {
+    switch ( event ) {
+      case XMLStreamConstants.END_ELEMENT:
+        writer.writeEndElement();
+        break;
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.SPACE:
+        // whitespace around the root element is not part of the document
+        if ( depth > 0 ) {
+          writer.writeCharacters( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+        }
+        break;
+      case XMLStreamConstants.CDATA:
+        writer.writeCData( reader.getText() );
+        break;
+      case XMLStreamConstants.COMMENT:
+        writer.writeComment( reader.getText() );
+        break;
+      case XMLStreamConstants.PROCESSING_INSTRUCTION:
+        writer.writeProcessingInstruction( reader.getPITarget(), reader.getPIData() );
+        break;
+      default:
+        // document type and entity declarations are dropped
+        break;
+    }
+  }
+
+  private static void collect( XMLStreamReader reader, Summary summary ) {
+    String element = reader.getLocalName();
+    if ( "Table".equals( element ) ) {
+      String name = reader.getAttributeValue( null, "name" );
+      if ( name != null ) {
+        summary.tableNames.add( name );
+      }
+    } else if ( "Cube".equals( element ) ) {
+      summary.cubeCount++;
+    } else if ( "Level".equals( element ) || "Measure".equals( element ) ) {
+      summary.columns.add(
+        new ColumnReference( reader.getAttributeValue( null, "column" ), reader.getAttributeValue( null, "type" ) ) );
+    }
+  }
+
+  private String[] rewriteAttributes( XMLStreamReader reader ) {
+    String element = reader.getLocalName();
+    String replacement = null;
+    if ( "Table".equals( element ) ) {
+      replacement = tableName;
+    } else if ( "Schema".equals( element ) || "Cube".equals( element ) ) {
+      replacement = modelName;
+    }
+    String[] values = new String[ reader.getAttributeCount() ];
+    for ( int i = 0; i < values.length; i++ ) {
+      values[ i ] = reader.getAttributeValue( i );
+      if ( replacement != null && "name".equals( reader.getAttributeLocalName( i ) )
+        && nonNull( reader.getAttributeNamespace( i ) ).isEmpty() ) {
+        values[ i ] = replacement;
+      }
+    }
+    return values;
+  }
+
+  private static String nonNull( String value ) {
+    return value == null ? "" : value;
+  }
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty( XMLInputFactory.SUPPORT_DTD, false );
+    factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false );
+    return factory;
+  }
+
+  /**
+   * Level or Measure column, with its declared type if any
+   */
+  public static class ColumnReference {
+    private final String column;
+    private final String type;
+
+    public ColumnReference( String column, String type ) {
+      this.column = column;
+      this.type = type;
+    }
+
+    public String getColumn() {
+      return column;
+    }
+
+    public String getType() {
+      return type;
+    }
+  }
+
+  public static class Summary {
+    private final List<String> tableNames = new ArrayList<>();
+    private final List<ColumnReference> columns = new ArrayList<>();
+    private int cubeCount;
+
+    /**
+     * @return names of the Table elements, in document order
+     */
+    public List<String> getTableNames() {
+      return tableNames;
+    }
+
+    public int getCubeCount() {
+      return cubeCount;
+    }
+
+    /**
+     * @return Level and Measure columns, in document order
+     */
+    public List<ColumnReference> getColumns() {
+      return columns;
+    }
+  }
+}
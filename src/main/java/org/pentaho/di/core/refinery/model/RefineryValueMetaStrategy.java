@@ -45,4 +45,17 @@ public class RefineryValueMetaStrategy extends DataProviderHelper.OutputStepMapp
     }
     return valueMeta.getName();
   }
+
+  /**
+   * Adds the fields written by the output step and their mapping to table columns, which decide the columns of the
+   * model and their names.
+   */
+  public void addToFingerprint( final ModelBuildCache.Fingerprint fingerprint ) {
+    fingerprint.add( fieldDatabase, fieldStream );
+    if ( insertRowMeta != null ) {
+      for ( ValueMetaInterface valueMeta : insertRowMeta.getValueMetaList() ) {
+        fingerprint.add( valueMeta.getName(), valueMeta.getType(), valueMeta.getLength(), valueMeta.getPrecision() );
+      }
+    }
+  }
 }
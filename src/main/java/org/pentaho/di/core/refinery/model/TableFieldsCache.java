@@ -0,0 +1,138 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.model;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.core.variables.VariableSpace;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Table fields read from the database, by connection and table, for a limited time. Shared by all the job entries
+ * of the JVM so that building several models on the same table asks the catalog once.
+ */
+public class TableFieldsCache {
+
+  /**
+   * How long table fields are kept, in milliseconds; 0 disables the cache
+   */
+  public static final String TTL_PROPERTY = "KETTLE_DATA_REFINERY_TABLE_FIELDS_CACHE_TTL";
+  static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis( 5 );
+
+  private static final TableFieldsCache INSTANCE = new TableFieldsCache( System::currentTimeMillis );
+
+  /**
+   * Reads the fields of a table from the database
+   */
+  public interface Loader {
+    RowMetaInterface load() throws KettleDatabaseException;
+  }
+
+  private final Map<String, Entry> entries = new HashMap<>();
+  private final LongSupplier clock;
+
+  TableFieldsCache( LongSupplier clock ) {
+    this.clock = clock;
+  }
+
+  public static TableFieldsCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Connection and table, with variables resolved
+   */
+  public static String key( VariableSpace space, DatabaseMeta databaseMeta, String tableName )
+    throws KettleDatabaseException {
+    return space.environmentSubstitute( databaseMeta.getURL() )
+      + "|" + space.environmentSubstitute( databaseMeta.getUsername() )
+      + "|" + tableName;
+  }
+
+  /**
+   * @return a copy of the cached fields, loading them if missing or expired
+   */
+  public RowMetaInterface getTableFields( String key, Loader loader ) throws KettleDatabaseException {
+    long ttl = getTtl();
+    long now = clock.getAsLong();
+    if ( ttl > 0 ) {
+      synchronized ( entries ) {
+        Entry entry = entries.get( key );
+        if ( entry != null && now - entry.loaded < ttl ) {
+          return entry.fields.clone();
+        }
+      }
+    }
+    // load outside of the lock, a slow catalog must not block other tables
+    RowMetaInterface fields = loader.load();
+    if ( ttl > 0 && fields != null ) {
+      synchronized ( entries ) {
+        evictExpired( now, ttl );
+        entries.put( key, new Entry( fields.clone(), now ) );
+      }
+    }
+    return fields;
+  }
+
+  /**
+   * @return true if fields were cached for the key
+   */
+  public boolean invalidate( String key ) {
+    synchronized ( entries ) {
+      return entries.remove( key ) != null;
+    }
+  }
+
+  public void clear() {
+    synchronized ( entries ) {
+      entries.clear();
+    }
+  }
+
+  int size() {
+    synchronized ( entries ) {
+      return entries.size();
+    }
+  }
+
+  private void evictExpired( long now, long ttl ) {
+    for ( Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+      if ( now - it.next().loaded >= ttl ) {
+        it.remove();
+      }
+    }
+  }
+
+  long getTtl() {
+    return Const.toLong( EnvUtil.getSystemProperty( TTL_PROPERTY ), DEFAULT_TTL );
+  }
+
+  private static class Entry {
+    private final RowMetaInterface fields;
+    private final long loaded;
+
+    private Entry( RowMetaInterface fields, long loaded ) {
+      this.fields = fields;
+      this.loaded = loaded;
+    }
+  }
+}
@@ -0,0 +1,268 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.profile;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics of a single stream field: row and null counts, estimated cardinality, min/max/sum for numeric fields
+ * and the most frequent values.
+ * <p>
+ * Not thread safe; each step copy keeps its own profiles and they are {@link #merge(FieldProfile) merged} once the
+ * copy is done. Accumulating a value of a normal storage field doesn't allocate.
+ */
+public class FieldProfile {
+
+  public static final int DEFAULT_TOP_K = 10;
+
+  /** minimum number of values before a field can be considered an identifier */
+  static final long IDENTIFIER_MIN_VALUES = 1000;
+  /** share of distinct values of an identifier, leaves room for the estimator error */
+  static final double IDENTIFIER_DISTINCT_RATIO = 0.95;
+
+  private final String name;
+  private final boolean numeric;
+
+  private long count;
+  private long nullCount;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+  private double sum;
+  private boolean integral = true;
+
+  private final HyperLogLog cardinality = new HyperLogLog();
+
+  // space-saving top-K counters
+  private final Object[] topValues;
+  private final long[] topCounts;
+  private int topSize;
+
+  public FieldProfile( String name, boolean numeric ) {
+    this( name, numeric, DEFAULT_TOP_K );
+  }
+
+  public FieldProfile( String name, boolean numeric, int topK ) {
+    this.name = name;
+    this.numeric = numeric;
+    this.topValues = new Object[ topK ];
+    this.topCounts = new long[ topK ];
+  }
+
+  public static FieldProfile create( ValueMetaInterface valueMeta ) {
+    return new FieldProfile( valueMeta.getName(), valueMeta.isNumeric() );
+  }
+
+  /**
+   * Adds a row value, as found in the stream.
+   */
+  public void add( ValueMetaInterface valueMeta, Object value ) throws KettleValueException {
+    if ( value != null && valueMeta.isStorageBinaryString() ) {
+      value = valueMeta.convertToNormalStorageType( value );
+    }
+    add( value );
+  }
+
+  /**
+   * Adds a value in normal storage.
+   */
+  public void add( Object value ) {
+    count++;
+    if ( value == null ) {
+      nullCount++;
+      return;
+    }
+    cardinality.addHash( hash( value ) );
+    if ( numeric && value instanceof Number ) {
+      addNumber( (Number) value );
+    }
+    addTop( value );
+  }
+
+  private void addNumber( Number number ) {
+    double d = number.doubleValue();
+    if ( d < min ) {
+      min = d;
+    }
+    if ( d > max ) {
+      max = d;
+    }
+    sum += d;
+    if ( integral && !( number instanceof Long || number instanceof Integer ) && d != Math.rint( d ) ) {
+      integral = false;
+    }
+  }
+
+  private void addTop( Object value ) {
+    int minIndex = 0;
+    for ( int i = 0; i < topSize; i++ ) {
+      if ( topValues[ i ].equals( value ) ) {
+        topCounts[ i ]++;
+        return;
+      }
+      if ( topCounts[ i ] < topCounts[ minIndex ] ) {
+        minIndex = i;
+      }
+    }
+    if ( topSize < topValues.length ) {
+      topValues[ topSize ] = value;
+      topCounts[ topSize ] = 1;
+      topSize++;
+    } else if ( topValues.length > 0 ) {
+      // evict the least frequent, the newcomer inherits its count as error bound
+      topValues[ minIndex ] = value;
+      topCounts[ minIndex ]++;
+    }
+  }
+
+  private void addTop( Object value, long times ) {
+    for ( int i = 0; i < topSize; i++ ) {
+      if ( topValues[ i ].equals( value ) ) {
+        topCounts[ i ] += times;
+        return;
+      }
+    }
+    if ( topSize < topValues.length ) {
+      topValues[ topSize ] = value;
+      topCounts[ topSize ] = times;
+      topSize++;
+      return;
+    }
+    int minIndex = 0;
+    for ( int i = 1; i < topSize; i++ ) {
+      if ( topCounts[ i ] < topCounts[ minIndex ] ) {
+        minIndex = i;
+      }
+    }
+    if ( topValues.length > 0 && topCounts[ minIndex ] < times ) {
+      topValues[ minIndex ] = value;
+      topCounts[ minIndex ] = times;
+    }
+  }
+
+  static long hash( Object value ) {
+    if ( value instanceof String ) {
+      return HyperLogLog.hash( (String) value );
+    } else if ( value instanceof Long || value instanceof Integer ) {
+      return HyperLogLog.mix( ( (Number) value ).longValue() );
+    } else if ( value instanceof Double ) {
+      return HyperLogLog.mix( Double.doubleToLongBits( (Double) value ) );
+    } else if ( value instanceof Date ) {
+      return HyperLogLog.mix( ( (Date) value ).getTime() );
+    } else if ( value instanceof Boolean ) {
+      return HyperLogLog.mix( ( (Boolean) value ) ? 1 : 0 );
+    } else if ( value instanceof byte[] ) {
+      return HyperLogLog.hash( (byte[]) value );
+    }
+    return HyperLogLog.mix( value.hashCode() );
+  }
+
+  public void merge( FieldProfile other ) {
+    count += other.count;
+    nullCount += other.nullCount;
+    min = Math.min( min, other.min );
+    max = Math.max( max, other.max );
+    sum += other.sum;
+    integral &= other.integral;
+    cardinality.merge( other.cardinality );
+    for ( int i = 0; i < other.topSize; i++ ) {
+      addTop( other.topValues[ i ], other.topCounts[ i ] );
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isNumeric() {
+    return numeric;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getNullCount() {
+    return nullCount;
+  }
+
+  public long getValueCount() {
+    return count - nullCount;
+  }
+
+  public long getCardinality() {
+    return getValueCount() == 0 ? 0 : Math.min( cardinality.estimate(), getValueCount() );
+  }
+
+  /**
+   * @return null if the field is not numeric or had no values
+   */
+  public Double getMin() {
+    return hasNumbers() ? min : null;
+  }
+
+  public Double getMax() {
+    return hasNumbers() ? max : null;
+  }
+
+  public Double getSum() {
+    return hasNumbers() ? sum : null;
+  }
+
+  private boolean hasNumbers() {
+    return numeric && min <= max;
+  }
+
+  public boolean isIntegral() {
+    return hasNumbers() && integral;
+  }
+
+  /**
+   * Integer values that are (nearly) all distinct, such as surrogate keys or order numbers: summing them is
+   * meaningless.
+   */
+  public boolean isIdentifier() {
+    return isIntegral()
+      && getValueCount() >= IDENTIFIER_MIN_VALUES
+      && getCardinality() >= IDENTIFIER_DISTINCT_RATIO * getValueCount();
+  }
+
+  /**
+   * @return the most frequent values and their approximate counts, most frequent first
+   */
+  public Map<Object, Long> getTopValues() {
+    List<Integer> indexes = new ArrayList<>( topSize );
+    for ( int i = 0; i < topSize; i++ ) {
+      indexes.add( i );
+    }
+    indexes.sort( ( a, b ) -> Long.compare( topCounts[ b ], topCounts[ a ] ) );
+    Map<Object, Long> top = new LinkedHashMap<>();
+    for ( int i : indexes ) {
+      top.put( topValues[ i ], topCounts[ i ] );
+    }
+    return top;
+  }
+
+  @Override
+  public String toString() {
+    return name + " [count=" + count + ", nulls=" + nullCount + ", cardinality=" + getCardinality()
+      + ( hasNumbers() ? ", min=" + min + ", max=" + max + ", sum=" + sum : "" ) + "]";
+  }
+}
@@ -0,0 +1,88 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.profile;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Field profiles of the profiling steps that feed one output step in a job, by case-insensitive field name. Step
+ * copies merge their profiles in when they are disposed.
+ */
+public class FieldProfiles {
+
+  private final Map<String, FieldProfile> profiles = new LinkedHashMap<>();
+
+  /**
+   * Returns the profiles registered under <code>key</code>, creating them if needed.
+   */
+  public static FieldProfiles getOrCreate( Map<String, Object> extensionDataMap, String key ) {
+    synchronized ( extensionDataMap ) {
+      Object existing = extensionDataMap.get( key );
+      if ( existing instanceof FieldProfiles ) {
+        return (FieldProfiles) existing;
+      }
+      FieldProfiles profiles = new FieldProfiles();
+      extensionDataMap.put( key, profiles );
+      return profiles;
+    }
+  }
+
+  /**
+   * @return the registered profiles or null if no step profiled anything
+   */
+  public static FieldProfiles get( Map<String, Object> extensionDataMap, String key ) {
+    synchronized ( extensionDataMap ) {
+      Object existing = extensionDataMap.get( key );
+      return existing instanceof FieldProfiles ? (FieldProfiles) existing : null;
+    }
+  }
+
+  public synchronized void merge( FieldProfile profile ) {
+    String key = key( profile.getName() );
+    FieldProfile existing = profiles.get( key );
+    if ( existing == null ) {
+      existing = new FieldProfile( profile.getName(), profile.isNumeric() );
+      profiles.put( key, existing );
+    }
+    existing.merge( profile );
+  }
+
+  public void mergeAll( FieldProfile[] stepProfiles ) {
+    for ( FieldProfile profile : stepProfiles ) {
+      if ( profile != null ) {
+        merge( profile );
+      }
+    }
+  }
+
+  public synchronized FieldProfile get( String fieldName ) {
+    return fieldName == null ? null : profiles.get( key( fieldName ) );
+  }
+
+  public synchronized List<FieldProfile> getAll() {
+    return new ArrayList<>( profiles.values() );
+  }
+
+  public synchronized boolean isEmpty() {
+    return profiles.isEmpty();
+  }
+
+  private static String key( String fieldName ) {
+    return fieldName.toLowerCase( Locale.ROOT );
+  }
+}
@@ -0,0 +1,130 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.profile;
+
+/**
+ * Fixed size HyperLogLog cardinality estimator. Adding a hash never allocates.
+ */
+public class HyperLogLog {
+
+  public static final int DEFAULT_PRECISION = 12;
+
+  private final int precision;
+  private final byte[] registers;
+
+  public HyperLogLog() {
+    this( DEFAULT_PRECISION );
+  }
+
+  /**
+   * @param precision number of index bits, between 4 and 16. Standard error is about 1.04 / sqrt( 2^precision )
+   */
+  public HyperLogLog( int precision ) {
+    if ( precision < 4 || precision > 16 ) {
+      throw new IllegalArgumentException( "precision must be between 4 and 16" );
+    }
+    this.precision = precision;
+    this.registers = new byte[ 1 << precision ];
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * @param hash a well mixed 64 bit hash, see {@link #mix(long)}
+   */
+  public void addHash( long hash ) {
+    int index = (int) ( hash >>> ( 64 - precision ) );
+    // leading zeros of the remaining bits, plus one; the sentinel bit caps the run
+    long rest = ( hash << precision ) | ( 1L << ( precision - 1 ) );
+    byte rank = (byte) ( Long.numberOfLeadingZeros( rest ) + 1 );
+    if ( rank > registers[ index ] ) {
+      registers[ index ] = rank;
+    }
+  }
+
+  public long estimate() {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for ( byte register : registers ) {
+      sum += 1.0 / ( 1L << register );
+      if ( register == 0 ) {
+        zeros++;
+      }
+    }
+    double estimate = alpha( m ) * m * m / sum;
+    if ( estimate <= 2.5 * m && zeros > 0 ) {
+      // small range correction
+      estimate = m * Math.log( (double) m / zeros );
+    }
+    return Math.round( estimate );
+  }
+
+  public void merge( HyperLogLog other ) {
+    if ( other.precision != precision ) {
+      throw new IllegalArgumentException( "cannot merge estimators of different precision" );
+    }
+    for ( int i = 0; i < registers.length; i++ ) {
+      if ( other.registers[ i ] > registers[ i ] ) {
+        registers[ i ] = other.registers[ i ];
+      }
+    }
+  }
+
+  private static double alpha( int m ) {
+    switch ( m ) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / ( 1 + 1.079 / m );
+    }
+  }
+
+  /**
+   * 64 bit finalizer (MurmurHash3 fmix64) to spread poorly distributed input such as sequential ids.
+   */
+  public static long mix( long h ) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  public static long hash( CharSequence chars ) {
+    // FNV-1a, then mixed
+    long h = 0xcbf29ce484222325L;
+    for ( int i = 0; i < chars.length(); i++ ) {
+      h ^= chars.charAt( i );
+      h *= 0x100000001b3L;
+    }
+    return mix( h );
+  }
+
+  public static long hash( byte[] bytes ) {
+    long h = 0xcbf29ce484222325L;
+    for ( byte b : bytes ) {
+      h ^= b & 0xff;
+      h *= 0x100000001b3L;
+    }
+    return mix( h );
+  }
+}
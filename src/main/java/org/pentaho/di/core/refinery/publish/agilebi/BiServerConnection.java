@@ -31,6 +31,9 @@
 package org.pentaho.di.core.refinery.publish.agilebi;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import jakarta.xml.bind.annotation.XmlRootElement;
 
@@ -155,4 +158,24 @@ public class BiServerConnection implements Serializable {
     this.name = name;
   }
 
+  /**
+   * Key of the server and credentials for caches kept across jobs; holds a digest of the password, not the password
+   * @param connection
+   * @return
+   */
+  public static String getCacheKey( BiServerConnection connection ) {
+    String password = connection.getPassword() == null ? "" : connection.getPassword();
+    try {
+      MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+      StringBuilder key = new StringBuilder()
+        .append( connection.getUrl() ).append( '|' ).append( connection.getUserId() ).append( '|' );
+      for ( byte b : digest.digest( password.getBytes( StandardCharsets.UTF_8 ) ) ) {
+        key.append( String.format( "%02x", b ) );
+      }
+      return key.toString();
+    } catch ( NoSuchAlgorithmException e ) {
+      throw new IllegalStateException( e );
+    }
+  }
+
 }
@@ -22,6 +22,7 @@ import org.pentaho.database.service.DatabaseDialectService;
 import org.pentaho.database.util.DatabaseTypeHelper;
 import org.pentaho.di.core.database.DatabaseInterface;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.refinery.publish.util.RestClientRegistry;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
@@ -35,6 +36,7 @@ public class ModelServerAction {
 
   protected BiServerConnection biServerConnection;
   private Client _client = null;
+  private BiServerConnection _clientConnection = null;
   protected DatabaseMeta databaseMeta;
 
   public ModelServerAction() {
@@ -45,38 +47,55 @@ public class ModelServerAction {
     setBiServerConnection( serverConnection );
   }
 
+  /**
+   * @return the client shared by the actions of this type on the same server and credentials, or the own client of
+   * this action when it keeps a server session
+   */
   protected Client getClient() {
-
-    // initialize
-    if ( this._client == null ) {
-      /*
-      MessageBodyReader and MessageBodyWriter interfaces from JAX-RS-1.1 api are loaded by the main classloader
-      (due to configuration in custom.properties), as well as Jersey-1.19 classes,
-      whereas Jackson-2 is loaded by bundle's classloader. As a result, Jackson's providers are not visible to Jersey.
-
-      Moving Jackson to be also loaded by the main classloader is not working.
-      Cause Jackson-2 implements JAX-RS 2.0, and we would also have to replace JAX-RS-1.1 api
-      (the one implemented by Jersey-1.19) by JAX-RS-2.0.
-      While it's looking fine on the shallow (2.0 is compatible with 1.1),
-      it leads to similar errors when starting Jersey-2 required by other bundles, where Jersey-2 is instantiated
-      using JAX-RS api - api classes do not see an implementation.
-
-      Thus, we've come to the solution to load Jackson classes in this particular case by the main classloader.
-       */
-      ClassLoader orig = Thread.currentThread().getContextClassLoader();
-      try {
-        Thread.currentThread().setContextClassLoader( Providers.class.getClassLoader() );
-        ClientConfig clientConfig = new ClientConfig();
-        clientConfig.property("jersey.config.jsonFeature", "JacksonFeature");
-        clientConfig.property( ClientProperties.CONNECT_TIMEOUT, 2000 );
-        clientConfig.property( ClientProperties.READ_TIMEOUT, 2000 );
-        this._client = ClientBuilder.newClient( clientConfig );
-      } finally {
-        Thread.currentThread().setContextClassLoader( orig );
+    final BiServerConnection connection = biServerConnection;
+    if ( connection == null || isSessionScoped() ) {
+      if ( this._client == null || this._clientConnection != connection ) {
+        this._client = createClient();
+        if ( connection != null ) {
+          setupClient( this._client, connection );
+        }
+        this._clientConnection = connection;
       }
+      return this._client;
     }
+    return RestClientRegistry.getInstance().getClient( getClass().getName(), connection, () -> {
+      Client client = createClient();
+      setupClient( client, connection );
+      return client;
+    } );
+  }
 
-    return this._client;
+  private Client createClient() {
+    /*
+    MessageBodyReader and MessageBodyWriter interfaces from JAX-RS-1.1 api are loaded by the main classloader
+    (due to configuration in custom.properties), as well as Jersey-1.19 classes,
+    whereas Jackson-2 is loaded by bundle's classloader. As a result, Jackson's providers are not visible to Jersey.
+
+    Moving Jackson to be also loaded by the main classloader is not working.
+    Cause Jackson-2 implements JAX-RS 2.0, and we would also have to replace JAX-RS-1.1 api
+    (the one implemented by Jersey-1.19) by JAX-RS-2.0.
+    While it's looking fine on the shallow (2.0 is compatible with 1.1),
+    it leads to similar errors when starting Jersey-2 required by other bundles, where Jersey-2 is instantiated
+    using JAX-RS api - api classes do not see an implementation.
+
+    Thus, we've come to the solution to load Jackson classes in this particular case by the main classloader.
+     */
+    ClassLoader orig = Thread.currentThread().getContextClassLoader();
+    try {
+      Thread.currentThread().setContextClassLoader( Providers.class.getClassLoader() );
+      ClientConfig clientConfig = new ClientConfig();
+      clientConfig.property("jersey.config.jsonFeature", "JacksonFeature");
+      clientConfig.property( ClientProperties.CONNECT_TIMEOUT, 2000 );
+      clientConfig.property( ClientProperties.READ_TIMEOUT, 2000 );
+      return ClientBuilder.newClient( clientConfig );
+    } finally {
+      Thread.currentThread().setContextClassLoader( orig );
+    }
   }
 
   protected IDatabaseType getDatabaseType( DatabaseInterface databaseInterface ) {
@@ -118,6 +137,10 @@ public class ModelServerAction {
     return getClient().target( getUrl( path ) );
   }
 
+  public BiServerConnection getBiServerConnection() {
+    return biServerConnection;
+  }
+
   /**
    * Sets the current BI server connection
    *
@@ -125,9 +148,20 @@ public class ModelServerAction {
    */
   public void setBiServerConnection( BiServerConnection biServerConnection ) {
     this.biServerConnection = biServerConnection;
-    setupClient( getClient(), biServerConnection );
+    getClient();
+  }
+
+  /**
+   * Whether the client carries a server session (cookies, CSRF token), such a client is never shared with other
+   * actions and so lives as long as this action
+   */
+  protected boolean isSessionScoped() {
+    return false;
   }
 
+  /**
+   * Configures a newly created client for the server, once per client
+   */
   protected void setupClient( Client client, BiServerConnection biServerConnection ) {
     client
       .register( HttpAuthenticationFeature.basic( biServerConnection.getUserId(), biServerConnection.getPassword() ) );
@@ -26,6 +26,8 @@ import org.pentaho.di.core.refinery.publish.model.DataSourceAclModel;
 import org.pentaho.di.core.refinery.publish.util.JAXBUtils;
 import org.pentaho.di.job.entries.publish.exception.DuplicateDataSourceException;
 
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
 import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 import javax.ws.rs.client.Client;
@@ -66,6 +68,14 @@ public class ModelServerPublish extends ModelServerAction {
     this.logChannel = logChannel;
   }
 
+  /**
+   * The session and CSRF token belong to the job run that created this publisher
+   */
+  @Override
+  protected boolean isSessionScoped() {
+    return true;
+  }
+
   @Override
   protected void setupClient( Client client, BiServerConnection biServerConnection ) {
 
@@ -184,6 +194,21 @@ public class ModelServerPublish extends ModelServerAction {
     return deleteEntity( biServerConnection.getUrl() + "plugin/data-access/api/datasource/dsw/domain/" + domainId );
   }
 
+  /**
+   * Jersey call to delete an analysis catalog
+   *
+   * @return
+   */
+  public boolean deleteMondrianSchema( String catalogName ) {
+    try {
+      return deleteEntity( biServerConnection.getUrl() + "plugin/data-access/api/datasource/analysis/catalog/"
+        + URLEncoder.encode( catalogName, "UTF-8" ).replace( "+", "%20" ) );
+    } catch ( UnsupportedEncodingException e ) {
+      logChannel.logError( e.getMessage() );
+      return false;
+    }
+  }
+
   protected boolean deleteEntity( String url ) {
     try {
       WebTarget resource = getClient().target( url );
@@ -260,6 +285,7 @@ public class ModelServerPublish extends ModelServerAction {
   public int publishMetaDataFile( InputStream metadataFile, String domainId ) throws Exception {
     String storeDomainUrl = biServerConnection.getUrl() + "plugin/data-access/api/metadata/import";
     WebTarget resource = getClient().target( storeDomainUrl );
+    streamRequestEntity( resource );
 
     int response = PUBLISH_FAILED;
     FormDataMultiPart part = new FormDataMultiPart();
@@ -295,6 +321,7 @@ public class ModelServerPublish extends ModelServerAction {
 
     final String publishDswUrl = biServerConnection.getUrl() + "plugin/data-access/api/datasource/dsw/import";
     WebTarget resource = getClient().target( publishDswUrl );
+    streamRequestEntity( resource );
 
     FormDataMultiPart part = new FormDataMultiPart();
     part.field( "domainId", domainId, MediaType.MULTIPART_FORM_DATA_TYPE )
@@ -328,6 +355,15 @@ public class ModelServerPublish extends ModelServerAction {
     return PUBLISH_FAILED;
   }
 
+  /**
+   * Writes the multipart body to the connection as it is produced, instead of buffering the whole XMI first
+   */
+  private static void streamRequestEntity( WebTarget resource ) {
+    if ( resource != null ) {
+      resource.property( ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED );
+    }
+  }
+
   private void addAclToRequest( FormDataMultiPart part ) {
     if ( this.aclModel != null ) {
       String xml = this.aclModel.toXml();
@@ -29,6 +29,7 @@ public class DataSourcePublishModel implements Serializable {
 
   private String modelName = "";
   private boolean override;
+  private boolean batch;
   private String userOrRole;
   private String accessType = ACCESS_TYPE_EVERYONE;
 
@@ -58,6 +59,17 @@ public class DataSourcePublishModel implements Serializable {
     this.override = override;
   }
 
+  /**
+   * @return true to publish every model built earlier in the job instead of a single one
+   */
+  public boolean isBatch() {
+    return batch;
+  }
+
+  public void setBatch( boolean batch ) {
+    this.batch = batch;
+  }
+
   public String getUserOrRole() {
     return userOrRole;
   }
@@ -55,17 +55,28 @@ public abstract class BaseRestUtil {
   protected static final String KETTLE_DATA_REFINERY_HTTP_CLIENT_TIMEOUT = "KETTLE_DATA_REFINERY_HTTP_CLIENT_TIMEOUT";
 
   protected Client getAnonymousClient() {
-    ClientConfig clientConfig = new ClientConfig();
-    clientConfig.property( ClientProperties.CONNECT_TIMEOUT, Const.toInt( EnvUtil.getSystemProperty( KETTLE_DATA_REFINERY_HTTP_CLIENT_TIMEOUT ), 2000 ) );
-    clientConfig.property( ClientProperties.READ_TIMEOUT, Const.toInt( EnvUtil.getSystemProperty( KETTLE_DATA_REFINERY_HTTP_CLIENT_TIMEOUT ), 2000 ) );
-    Client client = ClientBuilder.newClient( clientConfig );
-    return client;
+    final int timeout = getTimeout();
+    return RestClientRegistry.getInstance().getClient( "jersey:" + timeout, null, () -> createClient( timeout ) );
   }
 
   protected Client getAuthenticatedClient( final BiServerConnection connection ) {
-    Client client = getAnonymousClient();
-    client.register( HttpAuthenticationFeature.basic( connection.getUserId(), connection.getPassword() ) );
-    return client;
+    final int timeout = getTimeout();
+    return RestClientRegistry.getInstance().getClient( "jersey-basic:" + timeout, connection, () -> {
+      Client client = createClient( timeout );
+      client.register( HttpAuthenticationFeature.basic( connection.getUserId(), connection.getPassword() ) );
+      return client;
+    } );
+  }
+
+  private static int getTimeout() {
+    return Const.toInt( EnvUtil.getSystemProperty( KETTLE_DATA_REFINERY_HTTP_CLIENT_TIMEOUT ), 2000 );
+  }
+
+  private static Client createClient( int timeout ) {
+    ClientConfig clientConfig = new ClientConfig();
+    clientConfig.property( ClientProperties.CONNECT_TIMEOUT, timeout );
+    clientConfig.property( ClientProperties.READ_TIMEOUT, timeout );
+    return ClientBuilder.newClient( clientConfig );
   }
 
   protected WebTarget getWebResource( final BiServerConnection connection, final String restUrl,
@@ -79,10 +90,7 @@ public abstract class BaseRestUtil {
 
   protected Response httpGet( final BiServerConnection connection, final String restUrl, boolean authenticate ) {
 
-    Client client = getAnonymousClient();
-    if ( authenticate ) {
-      client = getAuthenticatedClient( connection );
-    }
+    Client client = authenticate ? getAuthenticatedClient( connection ) : getAnonymousClient();
 
     WebTarget resource = getWebResource( connection, restUrl, client );
     Invocation.Builder builder = getDefaultWebResourceBuilder( resource );
@@ -92,10 +100,7 @@ public abstract class BaseRestUtil {
   protected Response httpPut( final BiServerConnection connection, final String restUrl,
       final boolean authenticate, final Object requestEntity, final MediaType mediaType) {
 
-    Client client = getAnonymousClient();
-    if ( authenticate ) {
-      client = getAuthenticatedClient( connection );
-    }
+    Client client = authenticate ? getAuthenticatedClient( connection ) : getAnonymousClient();
 
     WebTarget resource = getWebResource( connection, restUrl, client );
     Invocation.Builder builder = getDefaultWebResourceBuilder( resource );
@@ -146,10 +151,15 @@ public abstract class BaseRestUtil {
 
     try {
       // execute the GET
+      long start = System.nanoTime();
       HttpResponse response = ( authContext == null ) ? client.execute( get ) : client.execute( get, authContext );
 
       responseStatus.setStatus( response.getStatusLine().getStatusCode() );
-      responseStatus.setMessage( getResponseString( response ) );
+      // reading the whole body hands the connection back to the pool
+      String message = getResponseString( response );
+      responseStatus.setMessage( message );
+      RestClientRegistry.getInstance().getMetrics().recordRequest( System.nanoTime() - start, 0,
+        response.getEntity() == null ? -1 : response.getEntity().getContentLength() );
 
     } catch ( Exception e ) {
       responseStatus.setStatus( -1 );
@@ -161,14 +171,17 @@ public abstract class BaseRestUtil {
 
   @VisibleForTesting
   HttpClient getSimpleHttpClient() {
-    return HttpClientManager.getInstance().createDefaultClient();
+    return RestClientRegistry.getInstance().getClient( "http", null,
+      () -> HttpClientManager.getInstance().createDefaultClient() );
   }
 
   @VisibleForTesting
-  HttpClient getAuthenticateHttpClient( BiServerConnection connection ) {
-    HttpClientManager.HttpClientBuilderFacade clientBuilder = HttpClientManager.getInstance().createBuilder();
-    clientBuilder.setCredentials( connection.getUserId(), connection.getPassword() );
-    return clientBuilder.build();
+  HttpClient getAuthenticateHttpClient( final BiServerConnection connection ) {
+    return RestClientRegistry.getInstance().getClient( "http-basic", connection, () -> {
+      HttpClientManager.HttpClientBuilderFacade clientBuilder = HttpClientManager.getInstance().createBuilder();
+      clientBuilder.setCredentials( connection.getUserId(), connection.getPassword() );
+      return clientBuilder.build();
+    } );
   }
 
   @VisibleForTesting
@@ -0,0 +1,332 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.publish.util;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deep copies object graphs field by field. How to copy a class is worked out with reflection the first time and
+ * kept, objects reachable twice in the source are copied once, so shared references and cycles survive.
+ * <p>
+ * Strings are copied as well to keep the behavior of a serialization round trip. Classes with custom serialization
+ * and JDK types it does not know are copied through serialization, types that cannot be copied at all are
+ * reported with an {@link IllegalArgumentException}.
+ */
+public class DeepCopy {
+
+  private static final Set<Class<?>> IMMUTABLE = new HashSet<>();
+
+  static {
+    IMMUTABLE.add( Boolean.class );
+    IMMUTABLE.add( Character.class );
+    IMMUTABLE.add( Byte.class );
+    IMMUTABLE.add( Short.class );
+    IMMUTABLE.add( Integer.class );
+    IMMUTABLE.add( Long.class );
+    IMMUTABLE.add( Float.class );
+    IMMUTABLE.add( Double.class );
+    IMMUTABLE.add( BigInteger.class );
+    IMMUTABLE.add( BigDecimal.class );
+    IMMUTABLE.add( UUID.class );
+    IMMUTABLE.add( Locale.class );
+    IMMUTABLE.add( Class.class );
+  }
+
+  private static final Map<Class<?>, Plan> plans = new ConcurrentHashMap<>();
+
+  private final Map<Object, Object> copies = new IdentityHashMap<>();
+
+  private DeepCopy() {
+  }
+
+  @SuppressWarnings( "unchecked" )
+  public static <T> T copy( T object ) {
+    return (T) new DeepCopy().copyObject( object );
+  }
+
+  private Object copyObject( Object object ) {
+    if ( object == null ) {
+      return null;
+    }
+    Object copy = copies.get( object );
+    if ( copy != null ) {
+      return copy;
+    }
+    Plan plan = getPlan( object.getClass() );
+    return plan.copy( object, this );
+  }
+
+  static Plan getPlan( Class<?> type ) {
+    Plan plan = plans.get( type );
+    if ( plan == null ) {
+      plan = createPlan( type );
+      plans.putIfAbsent( type, plan );
+    }
+    return plan;
+  }
+
+  private static Plan createPlan( Class<?> type ) {
+    if ( type == String.class ) {
+      return ( object, context ) -> context.register( object, new String( (String) object ) );
+    }
+    if ( IMMUTABLE.contains( type ) || type.isEnum() || isEnumConstantBody( type ) || isJavaTime( type ) ) {
+      return ( object, context ) -> object;
+    }
+    if ( type.isArray() ) {
+      return type.getComponentType().isPrimitive() ? DeepCopy::copyPrimitiveArray : DeepCopy::copyObjectArray;
+    }
+    if ( Date.class.isAssignableFrom( type ) && isJdk( type ) ) {
+      return ( object, context ) -> context.register( object, ( (Date) object ).clone() );
+    }
+    if ( isJdk( type ) ) {
+      Constructor<?> constructor = getJdkConstructor( type );
+      if ( constructor != null && Collection.class.isAssignableFrom( type ) ) {
+        return ( object, context ) -> context.copyCollection( (Collection<?>) object, constructor, new Field[ 0 ] );
+      }
+      if ( constructor != null && Map.class.isAssignableFrom( type ) ) {
+        return ( object, context ) -> context.copyMap( (Map<?, ?>) object, constructor );
+      }
+      return serializationPlan( type );
+    }
+    if ( hasCustomSerialization( type ) ) {
+      return serializationPlan( type );
+    }
+    Constructor<?> constructor = getNoArgConstructor( type );
+    if ( constructor == null ) {
+      return unsupported( type, "it has no constructor without arguments" );
+    }
+    Field[] fields = getFields( type );
+    if ( Collection.class.isAssignableFrom( type ) ) {
+      // JDK collection state is rebuilt through add, fields of the subclass are copied
+      return ( object, context ) -> context.copyCollection( (Collection<?>) object, constructor, fields );
+    }
+    if ( Map.class.isAssignableFrom( type ) ) {
+      return unsupported( type, "maps can only be copied when they are JDK maps" );
+    }
+    return ( object, context ) -> {
+      Object copy = context.register( object, newInstance( constructor ) );
+      context.copyFields( object, copy, fields );
+      return copy;
+    };
+  }
+
+  private Object register( Object object, Object copy ) {
+    copies.put( object, copy );
+    return copy;
+  }
+
+  private void copyFields( Object source, Object target, Field[] fields ) {
+    try {
+      for ( Field field : fields ) {
+        Class<?> fieldType = field.getType();
+        if ( fieldType.isPrimitive() ) {
+          field.set( target, field.get( source ) );
+        } else {
+          field.set( target, copyObject( field.get( source ) ) );
+        }
+      }
+    } catch ( IllegalAccessException e ) {
+      throw new IllegalArgumentException( e );
+    }
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private Object copyCollection( Collection<?> source, Constructor<?> constructor, Field[] fields ) {
+    Collection<Object> copy;
+    if ( source instanceof SortedSet && constructor.getDeclaringClass() == TreeSet.class ) {
+      copy = new TreeSet<>( (Comparator<Object>) ( (SortedSet<?>) source ).comparator() );
+    } else {
+      copy = (Collection<Object>) newInstance( constructor );
+    }
+    register( source, copy );
+    copyFields( source, copy, fields );
+    List<Object> elements = new ArrayList<>( source.size() );
+    for ( Object element : source ) {
+      elements.add( copyObject( element ) );
+    }
+    copy.addAll( elements );
+    return copy;
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private Object copyMap( Map<?, ?> source, Constructor<?> constructor ) {
+    Map<Object, Object> copy;
+    if ( source instanceof SortedMap && constructor.getDeclaringClass() == TreeMap.class ) {
+      copy = new TreeMap<>( (Comparator<Object>) ( (SortedMap<?, ?>) source ).comparator() );
+    } else {
+      copy = (Map<Object, Object>) newInstance( constructor );
+    }
+    register( source, copy );
+    for ( Map.Entry<?, ?> entry : source.entrySet() ) {
+      copy.put( copyObject( entry.getKey() ), copyObject( entry.getValue() ) );
+    }
+    return copy;
+  }
+
+  private static Object copyPrimitiveArray( Object source, DeepCopy context ) {
+    int length = Array.getLength( source );
+    Object copy = Array.newInstance( source.getClass().getComponentType(), length );
+    System.arraycopy( source, 0, copy, 0, length );
+    return context.register( source, copy );
+  }
+
+  private static Object copyObjectArray( Object source, DeepCopy context ) {
+    Object[] array = (Object[]) source;
+    Object[] copy = (Object[]) Array.newInstance( source.getClass().getComponentType(), array.length );
+    context.register( source, copy );
+    for ( int i = 0; i < array.length; i++ ) {
+      copy[ i ] = context.copyObject( array[ i ] );
+    }
+    return copy;
+  }
+
+  private static Plan serializationPlan( Class<?> type ) {
+    if ( !Serializable.class.isAssignableFrom( type ) ) {
+      return unsupported( type, "it is neither copyable field by field nor serializable" );
+    }
+    return ( object, context ) -> {
+      Object copy = ObjectUtils.cloneSerialize( object );
+      if ( copy == null ) {
+        throw new IllegalArgumentException( "Unable to copy " + type.getName() + " through serialization" );
+      }
+      return context.register( object, copy );
+    };
+  }
+
+  private static Plan unsupported( Class<?> type, String reason ) {
+    return ( object, context ) -> {
+      throw new IllegalArgumentException( "Unable to copy " + type.getName() + ", " + reason );
+    };
+  }
+
+  /**
+   * Instance fields declared by the class and its superclasses, up to the first JDK class. Transient fields of
+   * serializable classes keep the value set by the constructor, as they would not be serialized either.
+   */
+  private static Field[] getFields( Class<?> type ) {
+    boolean serializable = Serializable.class.isAssignableFrom( type );
+    List<Field> fields = new ArrayList<>();
+    for ( Class<?> c = type; c != null && !isJdk( c ); c = c.getSuperclass() ) {
+      for ( Field field : c.getDeclaredFields() ) {
+        int modifiers = field.getModifiers();
+        if ( !Modifier.isStatic( modifiers ) && !field.isSynthetic()
+          && !( serializable && Modifier.isTransient( modifiers ) ) ) {
+          field.setAccessible( true );
+          fields.add( field );
+        }
+      }
+    }
+    return fields.toArray( new Field[ 0 ] );
+  }
+
+  private static boolean hasCustomSerialization( Class<?> type ) {
+    for ( Class<?> c = type; c != null && !isJdk( c ); c = c.getSuperclass() ) {
+      if ( declares( c, "writeObject", ObjectOutputStream.class )
+        || declares( c, "readObject", ObjectInputStream.class )
+        || declares( c, "writeReplace" ) || declares( c, "readResolve" ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean declares( Class<?> type, String name, Class<?>... parameterTypes ) {
+    try {
+      type.getDeclaredMethod( name, parameterTypes );
+      return true;
+    } catch ( NoSuchMethodException e ) {
+      return false;
+    }
+  }
+
+  private static Constructor<?> getNoArgConstructor( Class<?> type ) {
+    if ( Modifier.isAbstract( type.getModifiers() ) ) {
+      return null;
+    }
+    try {
+      Constructor<?> constructor = type.getDeclaredConstructor();
+      constructor.setAccessible( true );
+      return constructor;
+    } catch ( NoSuchMethodException | RuntimeException e ) {
+      return null;
+    }
+  }
+
+  /**
+   * Public JDK collections and maps are rebuilt with their public constructor
+   */
+  private static Constructor<?> getJdkConstructor( Class<?> type ) {
+    if ( !Modifier.isPublic( type.getModifiers() ) || Modifier.isAbstract( type.getModifiers() ) ) {
+      return null;
+    }
+    try {
+      return type.getConstructor();
+    } catch ( NoSuchMethodException e ) {
+      return null;
+    }
+  }
+
+  private static Object newInstance( Constructor<?> constructor ) {
+    try {
+      return constructor.newInstance();
+    } catch ( ReflectiveOperationException e ) {
+      throw new IllegalArgumentException( e );
+    }
+  }
+
+  private static boolean isJdk( Class<?> type ) {
+    String name = type.getName();
+    return name.startsWith( "java." ) || name.startsWith( "javax." ) || name.startsWith( "sun." )
+      || name.startsWith( "jdk." );
+  }
+
+  private static boolean isJavaTime( Class<?> type ) {
+    return type.getName().startsWith( "java.time." );
+  }
+
+  private static boolean isEnumConstantBody( Class<?> type ) {
+    return type.getSuperclass() != null && type.getSuperclass().isEnum();
+  }
+
+  /**
+   * How to copy instances of one class
+   */
+  interface Plan {
+    Object copy( Object object, DeepCopy context );
+  }
+}
@@ -18,11 +18,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.module.jakarta.xmlbind.JakartaXmlBindAnnotationModule;
 
 import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Marshaller;
 import jakarta.xml.bind.Unmarshaller;
 
+import javax.xml.transform.stream.StreamSource;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * @author Rowell Belen
@@ -31,6 +39,7 @@ public class JAXBUtils {
 
   private static ObjectMapper mapper = new ObjectMapper();
   private static JakartaXmlBindAnnotationModule module = new JakartaXmlBindAnnotationModule();
+  private static final Map<Class<?>, Pool> pools = new ConcurrentHashMap<>();
 
   static {
     mapper.configure( MapperFeature.USE_STD_BEAN_NAMING, true );
@@ -38,20 +47,91 @@ public class JAXBUtils {
   }
 
   public static String marshallToXml( Object source ) throws Exception {
-    JAXBContext jaxbContext = JAXBContext.newInstance( source.getClass() );
-    Marshaller marshaller = jaxbContext.createMarshaller();
-    marshaller.setProperty( Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE );
     StringWriter writer = new StringWriter();
-    marshaller.marshal( source, writer );
+    Pool pool = getPool( source.getClass() );
+    Marshaller marshaller = pool.borrowMarshaller();
+    try {
+      marshaller.marshal( source, writer );
+    } finally {
+      pool.marshallers.offer( marshaller );
+    }
     return writer.toString();
   }
 
-  @SuppressWarnings( "unchecked" )
+  /**
+   * Writes the XML of <code>source</code> to the stream, UTF-8 encoded, without building it in memory first
+   */
+  public static void marshallToXml( Object source, OutputStream out ) throws Exception {
+    Pool pool = getPool( source.getClass() );
+    Marshaller marshaller = pool.borrowMarshaller();
+    try {
+      marshaller.marshal( source, out );
+    } finally {
+      pool.marshallers.offer( marshaller );
+    }
+  }
+
   public static <T> T unmarshalFromXml( final String xml, Class<T> destinationClass ) throws Exception {
-    JAXBContext jaxbContext = JAXBContext.newInstance( destinationClass );
-    Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-    StringReader reader = new StringReader( xml );
-    return (T) unmarshaller.unmarshal( reader );
+    return unmarshal( new StreamSource( new StringReader( xml ) ), destinationClass );
+  }
+
+  public static <T> T unmarshalFromXml( final InputStream xml, Class<T> destinationClass ) throws Exception {
+    return unmarshal( new StreamSource( xml ), destinationClass );
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private static <T> T unmarshal( final StreamSource source, Class<T> destinationClass ) throws Exception {
+    Pool pool = getPool( destinationClass );
+    Unmarshaller unmarshaller = pool.unmarshallers.poll();
+    if ( unmarshaller == null ) {
+      unmarshaller = pool.context.createUnmarshaller();
+    }
+    try {
+      return (T) unmarshaller.unmarshal( source );
+    } finally {
+      pool.unmarshallers.offer( unmarshaller );
+    }
+  }
+
+  /**
+   * The context of a class, created once since it is the most expensive part of JAXB
+   */
+  static JAXBContext getContext( Class<?> type ) throws JAXBException {
+    return getPool( type ).context;
+  }
+
+  private static Pool getPool( Class<?> type ) throws JAXBException {
+    Pool pool = pools.get( type );
+    if ( pool == null ) {
+      pool = new Pool( JAXBContext.newInstance( type ) );
+      Pool existing = pools.putIfAbsent( type, pool );
+      if ( existing != null ) {
+        pool = existing;
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * Marshallers are not thread safe, each one is used by a single call at a time and kept for the next
+   */
+  private static class Pool {
+    private final JAXBContext context;
+    private final Queue<Marshaller> marshallers = new ConcurrentLinkedQueue<>();
+    private final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<>();
+
+    private Pool( JAXBContext context ) {
+      this.context = context;
+    }
+
+    private Marshaller borrowMarshaller() throws JAXBException {
+      Marshaller marshaller = marshallers.poll();
+      if ( marshaller == null ) {
+        marshaller = context.createMarshaller();
+        marshaller.setProperty( Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE );
+      }
+      return marshaller;
+    }
   }
 
   public static String marshallToJson( Object source ) throws Exception {
@@ -35,6 +35,12 @@ public class ObjectUtils {
     if ( object == null ) {
       return null;
     }
+    try {
+      return DeepCopy.copy( object );
+    } catch ( IllegalArgumentException ex ) {
+      // not copyable field by field, round trip it as before
+      logger.fine( ex.getMessage() );
+    }
     if ( object instanceof Serializable ) {
       T ret = cloneSerialize( object );
       if ( ret != null ) {
@@ -0,0 +1,271 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.publish.util;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.refinery.publish.agilebi.BiServerConnection;
+import org.pentaho.di.core.util.EnvUtil;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * HTTP clients to the BA server, one per kind of client, server URL and credentials. Clients are thread safe and keep
+ * their connections alive between requests, so sharing them saves a TCP and TLS handshake per call. Clients not used
+ * for {@link #IDLE_TIMEOUT_PROPERTY} milliseconds are dropped from the registry, and closed with their kept alive
+ * connections once idle for twice as long; a request handed the client before it was dropped may still be running on
+ * it until then. Clients that keep a server session must not be shared through this registry.
+ */
+public class RestClientRegistry {
+
+  public static final String IDLE_TIMEOUT_PROPERTY = "KETTLE_DATA_REFINERY_HTTP_CLIENT_IDLE_TIMEOUT";
+  static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis( 5 );
+
+  private static final RestClientRegistry INSTANCE = new RestClientRegistry( System::currentTimeMillis );
+
+  private final Map<Key, Entry> clients = new HashMap<>();
+  // dropped clients waiting for the requests that may still run on them
+  private final List<Entry> retired = new ArrayList<>();
+  private final LongSupplier clock;
+  private final Metrics metrics = new Metrics();
+
+  RestClientRegistry( LongSupplier clock ) {
+    this.clock = clock;
+  }
+
+  public static RestClientRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param kind       what the factory builds and how, clients of different kinds are never shared
+   * @param connection server and credentials, null for clients not bound to a server
+   * @param factory    creates and configures the client the first time
+   */
+  @SuppressWarnings( "unchecked" )
+  public <T> T getClient( String kind, BiServerConnection connection, Supplier<T> factory ) {
+    Key key = new Key( kind, connection == null ? null : BiServerConnection.getCacheKey( connection ) );
+    long now = clock.getAsLong();
+    synchronized ( clients ) {
+      evictIdle( now );
+      Entry entry = clients.get( key );
+      if ( entry == null ) {
+        entry = new Entry( factory.get() );
+        if ( entry.client instanceof Client ) {
+          ( (Client) entry.client ).register( new MetricsFilter( metrics ) );
+        }
+        clients.put( key, entry );
+        metrics.created.incrementAndGet();
+      } else {
+        metrics.reused.incrementAndGet();
+      }
+      entry.lastUsed = now;
+      return (T) entry.client;
+    }
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  int size() {
+    synchronized ( clients ) {
+      return clients.size();
+    }
+  }
+
+  /**
+   * Closes every client, only for shutdown when no request is running anymore
+   */
+  public void clear() {
+    synchronized ( clients ) {
+      for ( Entry entry : clients.values() ) {
+        close( entry );
+      }
+      clients.clear();
+      for ( Entry entry : retired ) {
+        close( entry );
+      }
+      retired.clear();
+    }
+  }
+
+  int retiredSize() {
+    synchronized ( clients ) {
+      return retired.size();
+    }
+  }
+
+  private void evictIdle( long now ) {
+    long idleTimeout = Const.toLong( EnvUtil.getSystemProperty( IDLE_TIMEOUT_PROPERTY ), DEFAULT_IDLE_TIMEOUT );
+    for ( Iterator<Entry> it = retired.iterator(); it.hasNext(); ) {
+      Entry entry = it.next();
+      if ( now - entry.lastUsed >= 2 * idleTimeout ) {
+        it.remove();
+        close( entry );
+      }
+    }
+    for ( Iterator<Entry> it = clients.values().iterator(); it.hasNext(); ) {
+      Entry entry = it.next();
+      if ( now - entry.lastUsed >= idleTimeout ) {
+        it.remove();
+        retired.add( entry );
+        metrics.evicted.incrementAndGet();
+      }
+    }
+  }
+
+  private static void close( Entry entry ) {
+    // Apache clients are only dropped, their connection pool belongs to HttpClientManager
+    if ( entry.client instanceof Client ) {
+      ( (Client) entry.client ).close();
+    }
+  }
+
+  /**
+   * Client reuse, latency and transfer counters since startup
+   */
+  public static class Metrics {
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    /**
+     * @param bytesOut request body length, negative if unknown
+     * @param bytesIn  response body length, negative if unknown
+     */
+    public void recordRequest( long nanos, long bytesOut, long bytesIn ) {
+      requests.incrementAndGet();
+      latencyNanos.addAndGet( nanos );
+      bytesSent.addAndGet( Math.max( 0, bytesOut ) );
+      bytesReceived.addAndGet( Math.max( 0, bytesIn ) );
+    }
+
+    public long getClientsCreated() {
+      return created.get();
+    }
+
+    public long getClientsReused() {
+      return reused.get();
+    }
+
+    public long getClientsEvicted() {
+      return evicted.get();
+    }
+
+    public long getRequests() {
+      return requests.get();
+    }
+
+    public long getAverageLatencyMillis() {
+      long count = requests.get();
+      return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis( latencyNanos.get() / count );
+    }
+
+    public long getBytesSent() {
+      return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+      return bytesReceived.get();
+    }
+
+    @Override
+    public String toString() {
+      return "clients created=" + getClientsCreated() + ", reused=" + getClientsReused()
+        + ", evicted=" + getClientsEvicted() + ", requests=" + getRequests()
+        + ", avg latency=" + getAverageLatencyMillis() + "ms, sent=" + getBytesSent()
+        + "B, received=" + getBytesReceived() + "B";
+    }
+  }
+
+  /**
+   * Times Jersey requests and counts their declared body lengths
+   */
+  static class MetricsFilter implements ClientRequestFilter, ClientResponseFilter {
+    private static final String START = MetricsFilter.class.getName() + ".start";
+    private final Metrics metrics;
+
+    MetricsFilter( Metrics metrics ) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void filter( ClientRequestContext request ) {
+      request.setProperty( START, System.nanoTime() );
+    }
+
+    @Override
+    public void filter( ClientRequestContext request, ClientResponseContext response ) {
+      Object start = request.getProperty( START );
+      long nanos = start instanceof Long ? System.nanoTime() - (Long) start : 0;
+      metrics.recordRequest( nanos, Const.toLong( request.getHeaderString( "Content-Length" ), -1 ),
+        response.getLength() );
+    }
+  }
+
+  private static class Entry {
+    private final Object client;
+    private long lastUsed;
+
+    private Entry( Object client ) {
+      this.client = client;
+    }
+  }
+
+  private static final class Key {
+    private final String kind;
+    // server, user and a digest of the password
+    private final String credentials;
+
+    private Key( String kind, String credentials ) {
+      this.kind = kind;
+      this.credentials = credentials;
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+      if ( this == o ) {
+        return true;
+      }
+      if ( !( o instanceof Key ) ) {
+        return false;
+      }
+      Key other = (Key) o;
+      return kind.equals( other.kind ) && Objects.equals( credentials, other.credentials );
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash( kind, credentials );
+    }
+  }
+}
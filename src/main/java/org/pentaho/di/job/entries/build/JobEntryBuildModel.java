@@ -13,10 +13,13 @@
 
 package org.pentaho.di.job.entries.build;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
 import org.pentaho.agilebi.modeler.ModelerException;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotation;
 import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroup;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroupXmlWriter;
 import org.pentaho.agilebi.modeler.util.TableModelerSource;
 import org.pentaho.di.cluster.SlaveServer;
 import org.pentaho.di.core.Const;
@@ -27,18 +30,24 @@ import org.pentaho.di.core.encryption.Encr;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleXMLException;
 import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.refinery.extension.DataProviderUpdateQueue;
 import org.pentaho.di.core.refinery.model.AnalysisModeler;
 import org.pentaho.di.core.refinery.model.DswModeler;
 import org.pentaho.di.core.refinery.model.DswModeler.ColumnMismatchException;
 import org.pentaho.di.core.refinery.model.DswModeler.UnsupportedModelException;
+import org.pentaho.di.core.refinery.model.ModelArtifactStore;
+import org.pentaho.di.core.refinery.model.ModelBuildCache;
+import org.pentaho.di.core.refinery.model.ModelCatalogCache;
 import org.pentaho.di.core.refinery.model.ModelServerFetcher;
 import org.pentaho.di.core.refinery.model.ModelServerFetcher.AuthorizationException;
 import org.pentaho.di.core.refinery.model.ModelServerFetcher.ServerException;
 import org.pentaho.di.core.refinery.model.RefineryValueMetaStrategy;
+import org.pentaho.di.core.refinery.profile.FieldProfiles;
 import org.pentaho.di.core.refinery.publish.agilebi.BiServerConnection;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.job.Job;
+import org.pentaho.di.job.JobAdapter;
 import org.pentaho.di.job.JobMeta;
 import org.pentaho.di.job.entries.trans.JobEntryTrans;
 import org.pentaho.di.job.entry.JobEntryBase;
@@ -50,6 +59,8 @@ import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.dataservice.DataServiceContext;
 import org.pentaho.di.trans.dataservice.client.DataServiceConnectionInformation;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
+import org.pentaho.di.trans.steps.annotation.ModelAnnotationAccumulator;
+import org.pentaho.di.trans.util.TransMetaCache;
 import org.pentaho.di.trans.util.TransUtil;
 import org.pentaho.di.ui.job.entries.build.JobEntryBuildModelDialog;
 import org.pentaho.di.ui.job.entries.common.ConnectionValidator;
@@ -60,9 +71,13 @@ import org.pentaho.metastore.api.IMetaStore;
 import org.pentaho.metastore.api.exceptions.MetaStoreException;
 import org.w3c.dom.Node;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import static org.pentaho.di.core.Const.nullToEmpty;
 import static org.pentaho.platform.util.StringUtil.isEmpty;
@@ -75,7 +90,11 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
 
   public static final String PLUGIN_ID = "DataRefineryBuildModel";
   public static final String KEY_MODEL_ANNOTATIONS = "KEY_MODEL_ANNOTATIONS";
+  /** followed by the name of the output step the profiled rows go to */
+  public static final String KEY_FIELD_PROFILES_PREFIX = "JobEntryBuildModel.FieldProfiles.";
   public static final String KEY_OUTPUT_STEP_PREFIX = "JobEntryBuildModel.OutputStep.";
+  /** names of the models built by the entries of a job, kept by each job and not inherited by its sub-jobs */
+  public static final String KEY_BUILT_MODELS = "JobEntryBuildModel.BuiltModels";
   private static Class<?> PKG = JobEntryBuildModel.class; // for i18n purposes, needed by Translator2!!
 
   private DswModeler modeler;
@@ -172,7 +191,8 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
         }
         JobEntryTrans trans = (JobEntryTrans) copy.getEntry();
 
-        TransMeta transMeta = trans.getTransMeta( jobMeta.getRepository(), jobMeta.getMetaStore(), jobMeta );
+        TransMeta transMeta = TransMetaCache.getInstance()
+          .getTransMeta( trans, jobMeta.getRepository(), jobMeta.getMetaStore(), jobMeta );
         stepNames.addAll( TransUtil.collectOutputStepInTrans( transMeta, getRepository(), getMetaStore() ).keySet() );
         stepNames.addAll( dataServiceContext.getMetaStoreUtil().getDataServiceNames( transMeta ) );
       }
@@ -207,7 +227,6 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
     TableModelerSource source = new TableModelerSource( dbMeta, tableName, schemaName ); //$NON-NLS-1$
     source.setSchemaName( StringUtils.defaultIfBlank( source.getSchemaName(), "" ) );
     try {
-      Domain modeledDomain;
       PhysicalTableImporter.ImportStrategy importStrategy = getImportStrategy();
 
       final ModelAnnotationGroup modelAnnotations = getModelAnnotations();
@@ -220,9 +239,7 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
         if ( !modelExists( existingModelId, fetcher ) ) {
           if ( isCreateOnPublish() ) {
             logBasic( getMsg( "BuildModelJob.Info.ModelNotFound", existingModelId ) );
-            modeledDomain =
-                getDswModeler()
-                    .createModel( modelName, source, dbMeta, importStrategy, modelAnnotations, getMetaStore() );
+            return createXmi( modelName, source, dbMeta, importStrategy, modelAnnotations );
           } else {
             if ( Const.isEmpty( existingModelId ) ) {
               throw new KettleException( getMsg( "BuildModelJob.Error.ModelNullNotFound", getName() ) );
@@ -232,16 +249,11 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
           }
         } else {
           final Domain templateModel = fetcher.downloadDswFile( existingModelId );
-          modeledDomain = getDswModeler().updateModel( modelName, templateModel, dbMeta, schemaName, tableName );
+          Domain modeledDomain = getDswModeler().updateModel( modelName, templateModel, dbMeta, schemaName, tableName );
+          return new XmiParser().generateXmi( modeledDomain );
         }
-      } else {
-        modeledDomain =
-            getDswModeler()
-                .createModel( modelName, source, dbMeta, importStrategy, modelAnnotations, getMetaStore() );
       }
-      XmiParser parser = new XmiParser();
-      String localXmi = parser.generateXmi( modeledDomain );
-      return localXmi;
+      return createXmi( modelName, source, dbMeta, importStrategy, modelAnnotations );
     } catch ( AuthorizationException e ) {
       throw new KettleException( getMsg( "BuildModelJob.Error.Authorization" ) );
     } catch ( ServerException e ) {
@@ -263,14 +275,85 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
     }
   }
 
+  /**
+   * Auto-models the table, or returns the model built last time from the same table, annotations and configuration.
+   */
+  String createXmi( final String modelName, final TableModelerSource source, final DatabaseMeta dbMeta,
+      final PhysicalTableImporter.ImportStrategy importStrategy, final ModelAnnotationGroup modelAnnotations )
+    throws Exception {
+    ModelBuildCache cache = getModelBuildCache();
+    String fingerprint = null;
+    if ( cache.isEnabled() ) {
+      fingerprint = fingerprint( modelName, source, dbMeta, importStrategy, modelAnnotations );
+      String xmi = fingerprint == null ? null : cache.get( fingerprint );
+      if ( xmi != null ) {
+        logBasic( getMsg( "BuildModelJob.Info.ModelCacheHit", modelName ) );
+        return xmi;
+      }
+    }
+
+    Domain modeledDomain = getDswModeler().createModel( modelName, source, dbMeta, importStrategy, modelAnnotations,
+        getMetaStore(), getFieldProfiles() );
+    String xmi = new XmiParser().generateXmi( modeledDomain );
+
+    if ( fingerprint != null ) {
+      try {
+        cache.put( fingerprint, xmi );
+      } catch ( KettleException e ) {
+        logBasic( getMsg( "BuildModelJob.Info.ModelCacheWriteFailed", modelName, e.getMessage() ) );
+      }
+    }
+    return xmi;
+  }
+
+  /**
+   * @return the fingerprint of everything the model is built from, null if the model cannot be cached
+   */
+  String fingerprint( final String modelName, final TableModelerSource source, final DatabaseMeta dbMeta,
+      final PhysicalTableImporter.ImportStrategy importStrategy, final ModelAnnotationGroup modelAnnotations ) {
+    ModelBuildCache.Fingerprint fingerprint = new ModelBuildCache.Fingerprint();
+    fingerprint.add( modelName, dbMeta.getXML(), dbMeta.getURL(), source.getSchemaName(), source.getTableName() );
+
+    // the fields the output step wrote are the columns of the model; without them the table would have to be read
+    if ( !( importStrategy instanceof RefineryValueMetaStrategy ) ) {
+      log.logDebug( getMsg( "BuildModelJob.Debug.ModelCacheSkipped", modelName ) );
+      return null;
+    }
+    ( (RefineryValueMetaStrategy) importStrategy ).addToFingerprint( fingerprint );
+
+    // linked shared dimensions are read from the metastore while annotations are applied
+    for ( ModelAnnotation<?> modelAnnotation : modelAnnotations ) {
+      if ( modelAnnotation.getType() == ModelAnnotation.Type.LINK_DIMENSION ) {
+        return null;
+      }
+    }
+    fingerprint.add( new ModelAnnotationGroupXmlWriter( modelAnnotations ).getXML() );
+
+    getDswModeler().addToFingerprint( fingerprint, getFieldProfiles() );
+    return fingerprint.toString();
+  }
+
+  ModelBuildCache getModelBuildCache() {
+    return ModelBuildCache.getInstance();
+  }
+
   private ModelAnnotationGroup getModelAnnotations() {
-    Object modelAnnotationGroup = this.getParentJob().getExtensionDataMap().get( KEY_MODEL_ANNOTATIONS );
-    if ( modelAnnotationGroup != null && modelAnnotationGroup instanceof ModelAnnotationGroup ) {
-      return (ModelAnnotationGroup) modelAnnotationGroup;
+    ModelAnnotationGroup modelAnnotationGroup = ModelAnnotationAccumulator.toModelAnnotationGroup(
+        this.getParentJob().getExtensionDataMap(), KEY_MODEL_ANNOTATIONS );
+    if ( modelAnnotationGroup != null ) {
+      return modelAnnotationGroup;
     }
     return new ModelAnnotationGroup();
   }
 
+  /**
+   * @return the profiles of the fields that went to the output step of this model, null if none were profiled
+   */
+  FieldProfiles getFieldProfiles() {
+    String outputStepName = StringUtils.trimToEmpty( environmentSubstitute( getOutputStep() ) );
+    return FieldProfiles.get( this.getParentJob().getExtensionDataMap(), KEY_FIELD_PROFILES_PREFIX + outputStepName );
+  }
+
   PhysicalTableImporter.ImportStrategy getImportStrategy() throws KettleException, ModelerException {
     StepMetaDataCombi stepMetaDataCombi = getStepMetaDataCombi();
     if ( stepMetaDataCombi != null ) {
@@ -290,7 +373,8 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
       if ( jobCopy.isTransformation() ) {
         JobEntryTrans entry = (JobEntryTrans) jobCopy.getEntry();
         try {
-          transMetas.add( entry.getTransMeta( getRepository(), getMetaStore(), getVariables() ) );
+          transMetas.add(
+            TransMetaCache.getInstance().getTransMeta( entry, getRepository(), getMetaStore(), getVariables() ) );
         } catch ( Exception e ) {
           log.logDebug( getMsg( "BuildModelJob.Debug.BadTrans", jobCopy.getName() ), e );
         }
@@ -345,15 +429,13 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
   protected ConnectionValidator getConnectionValidator( BiServerConnection connection ) {
     ConnectionValidator validator = new ConnectionValidator();
     validator.setConnection( connection );
+    validator.setLog( log );
     return validator;
   }
 
   protected boolean modelExists( String modelId, ModelServerFetcher fetcher ) throws KettleException,
     AuthorizationException, ServerException {
-    HashSet<String> allIds = new HashSet<String>();
-    allIds.addAll( fetcher.fetchAnalysisList() );
-    allIds.addAll( fetcher.fetchDswList() );
-    return allIds.contains( modelId );
+    return ModelCatalogCache.getInstance().contains( fetcher, modelId );
   }
 
   public BiServerConnection environmentSubstitute( BiServerConnection conn ) {
@@ -378,6 +460,9 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
     String outputStep = environmentSubstitute( getOutputStep() );
     String modelName = environmentSubstitute( getModelName() );
 
+    // shared dimensions must include the data providers of the transformations that ran before
+    DataProviderUpdateQueue.await( getParentJob(), log );
+
     try {
 
       setVarAndLogBasic( "JobEntryBuildModel.DatabaseConnection." + modelName, getConnectionInfo().getDatabaseMeta()
@@ -388,10 +473,11 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
         setVarAndLogBasic( "JobEntryBuildModel.Mondrian.Datasource." + modelName, getConnectionInfo().getDatabaseMeta()
             .getName() );
       } else {
-        setVarAndLogDebug( "JobEntryBuildModel.XMI." + modelName, buildXmi( getParentJob().getJobMeta(), outputStep,
-            modelName ) );
+        String xmi = buildXmi( getParentJob().getJobMeta(), outputStep, modelName );
+        setVarAndLogDebug( "JobEntryBuildModel.XMI." + modelName, toVariableValue( modelName, xmi ) );
         setVarAndLogBasic( "JobEntryBuildModel.XMI.DSW." + modelName, "true" );
       }
+      addBuiltModelName( getParentJob().getExtensionDataMap(), modelName );
 
       result.setResult( true );
     } catch ( Exception e ) {
@@ -403,13 +489,41 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
     return result;
   }
 
+  @SuppressWarnings( "unchecked" )
+  private static void addBuiltModelName( Map<String, Object> extensionDataMap, String modelName ) {
+    synchronized ( extensionDataMap ) {
+      Set<String> modelNames = (Set<String>) extensionDataMap.get( KEY_BUILT_MODELS );
+      if ( modelNames == null ) {
+        modelNames = new HashSet<String>();
+        extensionDataMap.put( KEY_BUILT_MODELS, modelNames );
+      }
+      modelNames.add( modelName );
+    }
+  }
+
+  /**
+   * @return the names of the models built so far by the entries of the job, sorted
+   */
+  @SuppressWarnings( "unchecked" )
+  public static Set<String> getBuiltModelNames( Job job ) {
+    Map<String, Object> extensionDataMap = job.getExtensionDataMap();
+    synchronized ( extensionDataMap ) {
+      Set<String> modelNames = (Set<String>) extensionDataMap.get( KEY_BUILT_MODELS );
+      return modelNames == null ? new TreeSet<String>() : new TreeSet<String>( modelNames );
+    }
+  }
+
+  /**
+   * @return the renamed schema, or the handle of the stored schema if it is large
+   */
   String buildAnalysis( final String modelName ) throws KettleException {
-    String analysisFile;
+    final InputStream analysisFile;
     String selectedModelName = environmentSubstitute( getSelectedModel() );
 
     try {
-      if ( modelExists( selectedModelName, getModelServerFetcher() ) ) {
-        analysisFile = getModelServerFetcher().downloadAnalysisFile( selectedModelName );
+      ModelServerFetcher fetcher = getModelServerFetcher();
+      if ( modelExists( selectedModelName, fetcher ) ) {
+        analysisFile = fetcher.openAnalysisFile( selectedModelName );
       } else {
         if ( Const.isEmpty( selectedModelName ) ) {
           throw new KettleException( getMsg( "BuildModelJob.Error.ModelNullNotFound", getName() ) );
@@ -420,8 +534,49 @@ public class JobEntryBuildModel extends JobEntryBase implements JobEntryInterfac
     } catch ( Exception e ) {
       throw new KettleException( e );
     }
-    AnalysisModeler analysisModeler = getAnalysisModeler();
-    return analysisModeler.replaceTableAndSchemaNames( analysisFile, modelName );
+    try {
+      // the downloaded schema is renamed as it is read, and a large result goes to disk as it is written
+      String schema = ModelArtifactStore.getInstance().write(
+        out -> getAnalysisModeler().replaceTableAndSchemaNames( analysisFile, out, modelName ) );
+      return ModelArtifactStore.isHandle( schema ) ? keepUntilRootJobFinishes( modelName, schema ) : schema;
+    } finally {
+      IOUtils.closeQuietly( analysisFile );
+    }
+  }
+
+  /**
+   * Large artifacts go to the {@link ModelArtifactStore} until the root job finishes, the variable only gets their
+   * handle. Variables passed up to a parent job or back through the result stay valid for the whole run, but only in
+   * this JVM: a handle sent to another Carte server or read after the root job finished can't be resolved.
+   *
+   * @return the value of the variable
+   */
+  String toVariableValue( final String modelName, final String artifact ) throws KettleException {
+    final ModelArtifactStore store = ModelArtifactStore.getInstance();
+    if ( !store.isLarge( artifact ) ) {
+      return artifact;
+    }
+    return keepUntilRootJobFinishes( modelName, store.put( artifact ) );
+  }
+
+  private String keepUntilRootJobFinishes( final String modelName, final String handle ) {
+    final ModelArtifactStore store = ModelArtifactStore.getInstance();
+    getRootJob().addJobListener( new JobAdapter() {
+      @Override
+      public void jobFinished( Job job ) {
+        store.release( handle );
+      }
+    } );
+    logBasic( getMsg( "BuildModelJob.Info.ArtifactSpooled", modelName, handle ) );
+    return handle;
+  }
+
+  Job getRootJob() {
+    Job root = getParentJob();
+    while ( root.getParentJob() != null ) {
+      root = root.getParentJob();
+    }
+    return root;
   }
 
   AnalysisModeler getAnalysisModeler() throws KettleException {
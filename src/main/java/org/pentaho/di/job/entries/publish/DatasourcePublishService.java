@@ -19,12 +19,13 @@ import org.pentaho.database.model.DatabaseConnection;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.refinery.model.ModelArtifactStore;
+import org.pentaho.di.core.refinery.model.ModelCatalogCache;
 import org.pentaho.di.core.refinery.publish.agilebi.ModelServerPublish;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.job.entries.publish.exception.DuplicateDataSourceException;
 import org.pentaho.di.trans.dataservice.client.DataServiceConnectionInformation;
 
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
 /**
@@ -35,7 +36,6 @@ public class DatasourcePublishService implements PublishService {
   private static Class<?> PKG = JobEntryDatasourcePublish.class;
 
   private static final String METADATA_EXTENSION = ".xmi";
-  private static final String ENCODING = "UTF-8";
 
   private LogChannelInterface log;
 
@@ -122,6 +122,7 @@ public class DatasourcePublishService implements PublishService {
       } else {
         success = modelServerPublish.deleteMetadataXmi( modelName );
       }
+      invalidateCatalog( modelServerPublish );
 
       if ( !success ) {
         throw new Exception( this.getMsg( "JobEntryDatasourcePublish.Delete.XMI.Failed", modelName ) );
@@ -135,6 +136,16 @@ public class DatasourcePublishService implements PublishService {
     log.logBasic( this.getMsg( "JobEntryDatasourcePublish.Delete.XMI.Success", modelName ) );
   }
 
+  protected void deleteMondrianSchema( final ModelServerPublish modelServerPublish, final String modelName )
+    throws KettleException {
+    boolean success = modelServerPublish.deleteMondrianSchema( modelName );
+    invalidateCatalog( modelServerPublish );
+    if ( !success ) {
+      throw new KettleException( this.getMsg( "JobEntryDatasourcePublish.Delete.Mondrian.Failed", modelName ) );
+    }
+    log.logBasic( this.getMsg( "JobEntryDatasourcePublish.Delete.Mondrian.Success", modelName ) );
+  }
+
   protected String checkDswId( String modelName ) {
     if ( !modelName.endsWith( METADATA_EXTENSION ) ) {
       if ( StringUtils.endsWithIgnoreCase( modelName, METADATA_EXTENSION ) ) {
@@ -156,7 +167,7 @@ public class DatasourcePublishService implements PublishService {
     // Publish Mondrian Schema
     InputStream mondrianInputStream = null;
     try {
-      mondrianInputStream = new ByteArrayInputStream( mondrianSchema.getBytes( ENCODING ) );
+      mondrianInputStream = ModelArtifactStore.getInstance().openStream( mondrianSchema );
       modelServerPublish.setForceOverwrite( forceOverride );
       int status =
         modelServerPublish.publishMondrianSchema( mondrianInputStream, modelName, mondrianDatasource, forceOverride );
@@ -167,6 +178,7 @@ public class DatasourcePublishService implements PublishService {
       throw new KettleException( e );
     } finally {
       IOUtils.closeQuietly( mondrianInputStream );
+      invalidateCatalog( modelServerPublish );
     }
     log.logBasic( this.getMsg( "JobEntryDatasourcePublish.Publish.Mondrian.Success", modelName ) );
   }
@@ -182,7 +194,8 @@ public class DatasourcePublishService implements PublishService {
     // Publish XMI
     InputStream xmiInputStream = null;
     try {
-      xmiInputStream = new ByteArrayInputStream( xmiString.getBytes( ENCODING ) );
+      // read from the artifact store or encoded while it is sent, no byte copy of the document
+      xmiInputStream = ModelArtifactStore.getInstance().openStream( xmiString );
       modelServerPublish.setForceOverwrite( forceOverride );
       int status = modelServerPublish.publishMetaDataFile( xmiInputStream, modelName );
       if ( status != ModelServerPublish.PUBLISH_SUCCESS ) {
@@ -192,6 +205,7 @@ public class DatasourcePublishService implements PublishService {
       throw new KettleException( e );
     } finally {
       IOUtils.closeQuietly( xmiInputStream );
+      invalidateCatalog( modelServerPublish );
     }
     log.logBasic( this.getMsg( "JobEntryDatasourcePublish.Publish.Metadata.Success", modelName ) );
   }
@@ -207,7 +221,7 @@ public class DatasourcePublishService implements PublishService {
     // Publish XMI
     InputStream xmiInputStream = null;
     try {
-      xmiInputStream = IOUtils.toInputStream( xmiString, ENCODING );
+      xmiInputStream = ModelArtifactStore.getInstance().openStream( xmiString );
       modelServerPublish.setForceOverwrite( forceOverride );
       int status = modelServerPublish.publishDsw( xmiInputStream, checkDswId( modelName ) );
       if ( status == ModelServerPublish.PUBLISH_CONFLICT ) {
@@ -219,11 +233,19 @@ public class DatasourcePublishService implements PublishService {
       throw new KettleException( e );
     } finally {
       IOUtils.closeQuietly( xmiInputStream );
+      invalidateCatalog( modelServerPublish );
     }
     log.logBasic( this.getMsg( "JobEntryDatasourcePublish.Publish.Dsw.Success", modelName ) );
   }
 
 
+  /**
+   * Build Model looks up existing models in the catalog of the server, which publishing or deleting a model changes
+   */
+  private void invalidateCatalog( final ModelServerPublish modelServerPublish ) {
+    ModelCatalogCache.getInstance().invalidate( modelServerPublish.getBiServerConnection() );
+  }
+
   private boolean isKettleThinLocal( final DatabaseMeta databaseMeta ) {
     return isKettleThin( databaseMeta )
       && "true".equals( databaseMeta.getExtraOptions().get( DataServiceConnectionInformation.KETTLE_THIN + ".local" ) );
@@ -36,6 +36,7 @@ import org.pentaho.di.job.JobHopMeta;
 import org.pentaho.di.job.JobMeta;
 import org.pentaho.di.job.entries.build.JobEntryBuildModel;
 import org.pentaho.di.job.entry.JobEntryBase;
+import org.pentaho.di.job.entry.JobEntryCopy;
 import org.pentaho.di.job.entry.JobEntryInterface;
 import org.pentaho.di.metastore.MetaStoreConst;
 import org.pentaho.di.repository.ObjectId;
@@ -44,7 +45,16 @@ import org.pentaho.di.ui.job.entries.common.ConnectionValidator;
 import org.pentaho.metastore.api.IMetaStore;
 import org.w3c.dom.Node;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 @org.pentaho.di.core.annotations.JobEntry( id = "DATASOURCE_PUBLISH",
   i18nPackageName = "org.pentaho.di.job.entries.publish", image = "publish.svg",
@@ -55,6 +65,11 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
 
   private static Class<?> PKG = JobEntryDatasourcePublish.class; // for i18n purposes, needed by Translator2!!
 
+  private static final String XMI_VARIABLE = "JobEntryBuildModel.XMI.";
+  private static final String DSW_VARIABLE = "JobEntryBuildModel.XMI.DSW.";
+  private static final String MONDRIAN_SCHEMA_VARIABLE = "JobEntryBuildModel.Mondrian.Schema.";
+  private static final String CONNECTION_VARIABLE = "JobEntryBuildModel.DatabaseConnection.";
+
   private DataSourcePublishModel dataSourcePublishModel;
   private DatasourcePublishService datasourcePublishService;
 
@@ -67,6 +82,7 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
     public static final String BASERVER_PASSWORD = "ba_server_password";
     public static final String ACL_ACCESS_TYPE = "acl_access_type";
     public static final String ACL_USER_OR_ROLE = "acl_user_or_role";
+    public static final String BATCH = "batch_publish";
   }
 
   public JobEntryDatasourcePublish( DatasourcePublishService datasourcePublishService ) {
@@ -83,12 +99,7 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
 
   @Override
   public Result execute( Result result, int i ) throws KettleException {
-    boolean dsPublished, metaPublished;
-    dsPublished = metaPublished = false;
-    DatabaseMeta databaseMeta = null;
-    ModelServerPublish modelServerPublish = null;
-    String dswFlag = null;
-    String modelName = null;
+    PublishPipeline pipeline = new PublishPipeline();
     try {
       BiServerConnection biServerModel = dataSourcePublishModel.getBiServerConnection();
 
@@ -113,10 +124,10 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
       connection.setUserId( biServerModel.getUserId() );
       log.logBasic( getMsg( "JobEntryDatasourcePublish.Publish.BAServer", biServerModel.getUrl() ) );
 
-      modelServerPublish = getModelServerPublish();
+      final ModelServerPublish modelServerPublish = getModelServerPublish();
       modelServerPublish.setBiServerConnection( connection );
 
-      boolean forceOverride = dataSourcePublishModel.isOverride();
+      final boolean forceOverride = dataSourcePublishModel.isOverride();
 
       DataSourceAclModel datasourceAcl = new DataSourceAclModel();
       String accessType =
@@ -138,7 +149,14 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
       }
       modelServerPublish.setAclModel( datasourceAcl );
 
-      modelName = getModelName();
+      if ( dataSourcePublishModel.isBatch() ) {
+        int failed = publishBatch( modelServerPublish, forceOverride );
+        result.setResult( failed == 0 );
+        result.setNrErrors( failed );
+        return result;
+      }
+
+      final String modelName = getModelName();
       log.logBasic( this.getMsg( "JobEntryDatasourcePublish.Publish.Model", modelName ) );
 
       // We support publishing whatever is available to the publish job entry.. so if a build model job entry
@@ -146,67 +164,226 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
       // job entry precedes this, then we publish whatever is set by this job entry.
 
       // Publish Database Meta
-      databaseMeta = discoverDatabaseMeta( getParentJob().getJobMeta() );
-      if ( databaseMeta != null ) {
-        // Cannot publish JNDI data sources at this time, we don't know if BIServer has access to it
-        if ( DatabaseAccessType.values()[ databaseMeta.getAccessType() ] == DatabaseAccessType.JNDI ) {
-          throw new KettleException(
-            this.getMsg( "JobEntryDatasourcePublish.Error.JNDIDatasource", databaseMeta.getName() ) );
-        }
-
-        // check overwrite condition
-        DatabaseConnection dbConnection = modelServerPublish.connectionNameExists( databaseMeta.getName() );
-        if ( dbConnection != null && !dataSourcePublishModel.isOverride() ) {
-          throw new KettleException( this.getMsg( "JobEntryDatasourcePublish.Error.DBConnectionExists" ) );
-        }
-
-        datasourcePublishService.publishDatabaseMeta( modelServerPublish, databaseMeta, forceOverride );
-      } else {
+      final DatabaseMeta databaseMeta = discoverDatabaseMeta( getParentJob().getJobMeta() );
+      if ( databaseMeta == null ) {
         throw new KettleException( this.getMsg( "JobEntryDatasourcePublish.Error.UnableToFindDBConnection" ) );
       }
-      dsPublished = true;
-
-      // Publish Metadata XMI
-      dswFlag = getParentJob().getVariable( "JobEntryBuildModel.XMI.DSW." + modelName );
-      log.logBasic( getMsg( "JobEntryDatasourcePublish.Publish.ReadVariable", "JobEntryBuildModel.XMI.DSW."
-        + modelName, dswFlag ) );
-      String xmiString = getParentJob().getVariable( "JobEntryBuildModel.XMI." + modelName );
-      log.logDetailed(
-        getMsg( "JobEntryDatasourcePublish.Publish.ReadVariable", "JobEntryBuildModel.XMI." + modelName, xmiString ) );
+      publishConnection( pipeline, modelServerPublish, databaseMeta, forceOverride );
+
+      // the schema goes after the XMI of the same model and is not uploaded if the XMI fails
+      pipeline.publish( createModelSteps( modelServerPublish, modelName, forceOverride ) );
+
+      result.setResult( true );
+
+    } catch ( KettleException e ) {
+      logBasic( this.getMsg( "JobEntryDatasourcePublish.Rollback" ) );
+      pipeline.rollback( log );
+      logError( e.getMessage(), e );
+      result.setResult( false );
+      result.setNrErrors( 1 );
+    }
+
+    return result;
+  }
+
+  private void publishConnection( PublishPipeline pipeline, final ModelServerPublish modelServerPublish,
+                                  final DatabaseMeta databaseMeta, final boolean forceOverride )
+    throws KettleException {
+    // Cannot publish JNDI data sources at this time, we don't know if BIServer has access to it
+    if ( DatabaseAccessType.values()[ databaseMeta.getAccessType() ] == DatabaseAccessType.JNDI ) {
+      throw new KettleException(
+        this.getMsg( "JobEntryDatasourcePublish.Error.JNDIDatasource", databaseMeta.getName() ) );
+    }
+
+    // check overwrite condition
+    DatabaseConnection dbConnection = modelServerPublish.connectionNameExists( databaseMeta.getName() );
+    if ( dbConnection != null && !forceOverride ) {
+      throw new KettleException( this.getMsg( "JobEntryDatasourcePublish.Error.DBConnectionExists" ) );
+    }
+
+    // models reference the connection, it goes first
+    pipeline.publish( new PublishPipeline.Step(
+      () -> datasourcePublishService.publishDatabaseMeta( modelServerPublish, databaseMeta, forceOverride ),
+      () -> datasourcePublishService.deleteDatabaseMeta( modelServerPublish, databaseMeta ) ) );
+  }
+
+  /**
+   * Uploads the XMI and then the Mondrian schema of a model that were built earlier in the job
+   */
+  private PublishPipeline.Step[] createModelSteps( final ModelServerPublish modelServerPublish,
+                                                   final String modelName, final boolean forceOverride ) {
+    // Publish Metadata XMI
+    final String dswFlag = getParentJob().getVariable( DSW_VARIABLE + modelName );
+    log.logBasic( getMsg( "JobEntryDatasourcePublish.Publish.ReadVariable", "JobEntryBuildModel.XMI.DSW."
+      + modelName, dswFlag ) );
+    final String xmiString = getParentJob().getVariable( XMI_VARIABLE + modelName );
+    log.logDetailed(
+      getMsg( "JobEntryDatasourcePublish.Publish.ReadVariable", "JobEntryBuildModel.XMI." + modelName, xmiString ) );
+    PublishPipeline.Step xmi = new PublishPipeline.Step( () -> {
       if ( dswFlag != null && dswFlag.equalsIgnoreCase( "true" ) ) {
         datasourcePublishService.publishDswXmi( modelName, xmiString, modelServerPublish, forceOverride );
       } else {
         datasourcePublishService.publishMetadataXmi( modelName, xmiString, modelServerPublish, forceOverride );
       }
-      metaPublished = true;
+    }, () -> datasourcePublishService.deleteXMI( modelServerPublish, modelName, dswFlag ) );
+
+    // Publish Mondrian Schema
+    final String mondrianSchema = getParentJob().getVariable( MONDRIAN_SCHEMA_VARIABLE + modelName );
+    log.logDetailed( getMsg( "JobEntryDatasourcePublish.Publish.ReadVariable", "JobEntryBuildModel.Mondrian.Schema."
+      + modelName, mondrianSchema ) );
+    final String mondrianDatasource =
+      getParentJob().getVariable( "JobEntryBuildModel.Mondrian.Datasource." + modelName );
+    log.logBasic( getMsg( "JobEntryDatasourcePublish.Publish.ReadVariable", "JobEntryBuildModel.Mondrian.Datasource."
+      + modelName, mondrianDatasource ) );
+
+    PublishPipeline.Step mondrian = new PublishPipeline.Step(
+      () -> datasourcePublishService
+        .publishMondrianSchema( modelName, mondrianSchema, mondrianDatasource, modelServerPublish, forceOverride ),
+      // nothing to undo when there was no schema to publish
+      mondrianSchema == null || mondrianDatasource == null ? null
+        : () -> datasourcePublishService.deleteMondrianSchema( modelServerPublish, modelName ) );
+
+    return new PublishPipeline.Step[] { xmi, mondrian };
+  }
 
-      // Publish Mondrian Schema
-      String mondrianSchema = getParentJob().getVariable( "JobEntryBuildModel.Mondrian.Schema." + modelName );
-      log.logDetailed( getMsg( "JobEntryDatasourcePublish.Publish.ReadVariable", "JobEntryBuildModel.Mondrian.Schema."
-        + modelName, mondrianSchema ) );
-      String mondrianDatasource = getParentJob().getVariable( "JobEntryBuildModel.Mondrian.Datasource." + modelName );
-      log.logBasic( getMsg( "JobEntryDatasourcePublish.Publish.ReadVariable", "JobEntryBuildModel.Mondrian.Datasource."
-        + modelName, mondrianDatasource ) );
+  /**
+   * Publishes every model built earlier in the job with the server session of this entry. Each database connection
+   * is published once, then the models are uploaded by a bounded pool, the artifacts of one model in sequence. A
+   * failed model only undoes its own uploads, a connection is removed again when none of its models went through.
+   *
+   * @return the number of models that could not be published
+   */
+  int publishBatch( final ModelServerPublish modelServerPublish, final boolean forceOverride )
+    throws KettleException {
+    Set<String> modelNames = findBuiltModelNames();
+    if ( modelNames.isEmpty() ) {
+      throw new KettleException( getMsg( "JobEntryDatasourcePublish.Batch.NoModels" ) );
+    }
+    JobMeta jobMeta = getParentJob().getJobMeta();
+    Map<String, BatchResult> results = new LinkedHashMap<>();
+    Map<String, DatabaseMeta> connections = new LinkedHashMap<>();
+    for ( String modelName : modelNames ) {
+      BatchResult batchResult = new BatchResult( modelName );
+      results.put( modelName, batchResult );
+      DatabaseMeta databaseMeta = discoverDatabaseMeta( jobMeta, modelName );
+      if ( databaseMeta == null ) {
+        batchResult.error = getMsg( "JobEntryDatasourcePublish.Error.UnableToFindDBConnection" );
+      } else {
+        batchResult.connection = databaseMeta.getName();
+        connections.putIfAbsent( databaseMeta.getName(), databaseMeta );
+      }
+    }
 
-      datasourcePublishService
-        .publishMondrianSchema( modelName, mondrianSchema, mondrianDatasource, modelServerPublish, forceOverride );
+    // models reference their connection, the connections go first and only once each
+    Map<String, PublishPipeline> published = new HashMap<>();
+    Map<String, String> connectionErrors = new HashMap<>();
+    for ( DatabaseMeta databaseMeta : connections.values() ) {
+      PublishPipeline pipeline = new PublishPipeline();
+      try {
+        publishConnection( pipeline, modelServerPublish, databaseMeta, forceOverride );
+        published.put( databaseMeta.getName(), pipeline );
+      } catch ( KettleException e ) {
+        logError( e.getMessage(), e );
+        connectionErrors.put( databaseMeta.getName(), e.getMessage() );
+      }
+    }
 
-      result.setResult( true );
+    // the threads of a batch end with it, concurrent batches do not queue behind each other
+    ExecutorService executor = PublishPipeline.createExecutor( "DataRefinery batch publish" );
+    try {
+      Map<String, Future<?>> uploads = new LinkedHashMap<>();
+      for ( final BatchResult batchResult : results.values() ) {
+        if ( batchResult.connection == null ) {
+          continue;
+        }
+        if ( connectionErrors.containsKey( batchResult.connection ) ) {
+          batchResult.error = connectionErrors.get( batchResult.connection );
+          continue;
+        }
+        log.logBasic( getMsg( "JobEntryDatasourcePublish.Publish.Model", batchResult.model ) );
+        final PublishPipeline.Step[] steps = createModelSteps( modelServerPublish, batchResult.model, forceOverride );
+        uploads.put( batchResult.model, executor.submit( () -> publishModel( batchResult, steps ) ) );
+      }
+      for ( Map.Entry<String, Future<?>> upload : uploads.entrySet() ) {
+        try {
+          upload.getValue().get();
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+          results.get( upload.getKey() ).error = e.toString();
+        } catch ( ExecutionException e ) {
+          results.get( upload.getKey() ).error = String.valueOf( e.getCause() );
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
 
-    } catch ( KettleException e ) {
-      logBasic( this.getMsg( "JobEntryDatasourcePublish.Rollback" ) );
-      if ( dsPublished && databaseMeta != null ) {
-        datasourcePublishService.deleteDatabaseMeta( modelServerPublish, databaseMeta );
+    // a connection no model could use is not left behind
+    Set<String> usedConnections = new HashSet<>();
+    for ( BatchResult batchResult : results.values() ) {
+      if ( batchResult.error == null ) {
+        usedConnections.add( batchResult.connection );
       }
-      if ( metaPublished && modelName != null ) {
-        datasourcePublishService.deleteXMI( modelServerPublish, modelName, dswFlag );
+    }
+    for ( Map.Entry<String, PublishPipeline> connection : published.entrySet() ) {
+      if ( !usedConnections.contains( connection.getKey() ) ) {
+        connection.getValue().rollback( log );
       }
+    }
+
+    return logBatchResults( results.values() );
+  }
+
+  private void publishModel( BatchResult batchResult, PublishPipeline.Step[] steps ) {
+    long start = System.currentTimeMillis();
+    PublishPipeline pipeline = new PublishPipeline();
+    try {
+      pipeline.publish( steps );
+    } catch ( KettleException | RuntimeException e ) {
       logError( e.getMessage(), e );
-      result.setResult( false );
-      result.setNrErrors( 1 );
+      pipeline.rollback( log );
+      batchResult.error = e.getMessage() == null ? e.toString() : e.getMessage();
     }
+    batchResult.millis = System.currentTimeMillis() - start;
+  }
 
-    return result;
+  private int logBatchResults( Collection<BatchResult> results ) {
+    int failed = 0;
+    for ( BatchResult batchResult : results ) {
+      String status;
+      if ( batchResult.error == null ) {
+        status = getMsg( "JobEntryDatasourcePublish.Batch.Published" );
+      } else {
+        status = getMsg( "JobEntryDatasourcePublish.Batch.Failed", batchResult.error );
+        failed++;
+      }
+      log.logBasic( getMsg( "JobEntryDatasourcePublish.Batch.Row", batchResult.model,
+        Const.NVL( batchResult.connection, "-" ), status, String.valueOf( batchResult.millis ) ) );
+    }
+    log.logBasic( getMsg( "JobEntryDatasourcePublish.Batch.Summary", String.valueOf( results.size() - failed ),
+      String.valueOf( results.size() ) ) );
+    return failed;
+  }
+
+  /**
+   * @return the names of the models built by the build model entries of the parent job, sorted
+   */
+  Set<String> findBuiltModelNames() {
+    return JobEntryBuildModel.getBuiltModelNames( getParentJob() );
+  }
+
+  /**
+   * Result of one model of a batch
+   */
+  private static class BatchResult {
+    private final String model;
+    private String connection;
+    private volatile String error;
+    private volatile long millis;
+
+    private BatchResult( String model ) {
+      this.model = model;
+    }
   }
 
   @Override
@@ -219,6 +396,7 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
     if ( model != null ) {
       xml.append( "      " ).append( XMLHandler.addTagValue( Fields.LOGICAL_MODEL, model.getModelName() ) );
       xml.append( "      " ).append( XMLHandler.addTagValue( Fields.OVERRIDE, model.isOverride() ) );
+      xml.append( "      " ).append( XMLHandler.addTagValue( Fields.BATCH, model.isBatch() ) );
       xml.append( "      " ).append( XMLHandler.addTagValue( Fields.ACL_ACCESS_TYPE, model.getAccessType() ) );
       xml.append( "      " ).append( XMLHandler.addTagValue( Fields.ACL_USER_OR_ROLE, model.getUserOrRole() ) );
 
@@ -263,6 +441,7 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
     model.setBiServerConnection( biServerModel );
 
     model.setOverride( BooleanUtils.toBoolean( XMLHandler.getTagValue( entrynode, Fields.OVERRIDE ) ) );
+    model.setBatch( BooleanUtils.toBoolean( XMLHandler.getTagValue( entrynode, Fields.BATCH ) ) );
     model.setAccessType( XMLHandler.getTagValue( entrynode, Fields.ACL_ACCESS_TYPE ) );
     model.setUserOrRole( XMLHandler.getTagValue( entrynode, Fields.ACL_USER_OR_ROLE ) );
 
@@ -291,6 +470,7 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
     DataSourcePublishModel dsModel = new DataSourcePublishModel();
     dsModel.setModelName( rep.getJobEntryAttributeString( id_jobentry, Fields.LOGICAL_MODEL ) );
     dsModel.setOverride( rep.getJobEntryAttributeBoolean( id_jobentry, Fields.OVERRIDE ) );
+    dsModel.setBatch( rep.getJobEntryAttributeBoolean( id_jobentry, Fields.BATCH ) );
     dsModel.setAccessType( rep.getJobEntryAttributeString( id_jobentry, Fields.ACL_ACCESS_TYPE ) );
     dsModel.setUserOrRole( rep.getJobEntryAttributeString( id_jobentry, Fields.ACL_USER_OR_ROLE ) );
     dsModel.setBiServerConnection( biServerModel );
@@ -313,6 +493,7 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
         .getUserId() ) );
       rep.saveJobEntryAttribute( id_job, getObjectId(), Fields.LOGICAL_MODEL, dataSourcePublishModel.getModelName() );
       rep.saveJobEntryAttribute( id_job, getObjectId(), Fields.OVERRIDE, dataSourcePublishModel.isOverride() );
+      rep.saveJobEntryAttribute( id_job, getObjectId(), Fields.BATCH, dataSourcePublishModel.isBatch() );
       rep
         .saveJobEntryAttribute( id_job, getObjectId(), Fields.ACL_ACCESS_TYPE, dataSourcePublishModel.getAccessType() );
       rep.saveJobEntryAttribute( id_job, getObjectId(), Fields.ACL_USER_OR_ROLE,
@@ -335,6 +516,7 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
   protected ConnectionValidator getConnectionValidator( BiServerConnection connection ) {
     ConnectionValidator validator = new ConnectionValidator();
     validator.setConnection( connection );
+    validator.setLog( log );
     return validator;
   }
 
@@ -365,6 +547,26 @@ public class JobEntryDatasourcePublish extends JobEntryBase implements Cloneable
     if ( jobEntryBuildModel == null ) {
       return null;
     }
+    return getRuntimeDatabaseMeta( jobEntryBuildModel );
+  }
+
+  /**
+   * @return the connection of the build model job entry that built the model, or else the connection of the job
+   * named by the variables of the model
+   */
+  public DatabaseMeta discoverDatabaseMeta( final JobMeta jobMeta, final String modelName ) throws KettleException {
+    for ( JobEntryCopy copy : jobMeta.getJobCopies() ) {
+      JobEntryInterface entry = copy.getEntry();
+      if ( entry instanceof JobEntryBuildModel
+        && modelName.equals( environmentSubstitute( ( (JobEntryBuildModel) entry ).getModelName() ) ) ) {
+        return getRuntimeDatabaseMeta( (JobEntryBuildModel) entry );
+      }
+    }
+    String connectionName = getParentJob().getVariable( CONNECTION_VARIABLE + modelName );
+    return connectionName == null ? null : jobMeta.findDatabase( connectionName );
+  }
+
+  private DatabaseMeta getRuntimeDatabaseMeta( JobEntryBuildModel jobEntryBuildModel ) throws KettleException {
     // When the build model job entry is used during execution time, it will be cloned
     // and initalized with runtime properties.  We need to do the same when using
     // it to get the runtime DatabaseMeta
@@ -0,0 +1,113 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.job.entries.publish;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.util.EnvUtil;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the artifacts of a model and remembers how to undo each one that went through.
+ * <p>
+ * The artifacts of a model are uploaded one after the other, they may write the same datasource or catalog on the
+ * server. On failure, {@link #rollback(LogChannelInterface)} runs the compensating actions of the published
+ * artifacts, latest first. A pipeline is used by one thread, independent models get a pipeline each.
+ */
+public class PublishPipeline {
+
+  /**
+   * Number of models uploaded at the same time by each batch publish
+   */
+  public static final String THREADS_PROPERTY = "KETTLE_DATA_REFINERY_PUBLISH_THREADS";
+  static final int DEFAULT_THREADS = 4;
+
+  /**
+   * A call to the BA server
+   */
+  public interface Action {
+    void run() throws KettleException;
+  }
+
+  /**
+   * An artifact to publish and how to remove it again, if it can be removed
+   */
+  public static class Step {
+    private final Action publish;
+    private final Action compensation;
+
+    public Step( Action publish, Action compensation ) {
+      this.publish = publish;
+      this.compensation = compensation;
+    }
+  }
+
+  private final Deque<Step> published = new ArrayDeque<>();
+
+  /**
+   * Publishes the steps in order and stops at the first failure.
+   */
+  public void publish( Step... steps ) throws KettleException {
+    for ( Step step : steps ) {
+      try {
+        step.publish.run();
+      } catch ( RuntimeException e ) {
+        throw new KettleException( e );
+      }
+      published.push( step );
+    }
+  }
+
+  /**
+   * Undoes the published steps, latest first. Failures are logged and do not stop the rollback.
+   */
+  public void rollback( LogChannelInterface log ) {
+    for ( Step step = published.poll(); step != null; step = published.poll() ) {
+      if ( step.compensation != null ) {
+        try {
+          step.compensation.run();
+        } catch ( KettleException | RuntimeException e ) {
+          log.logError( e.getMessage(), e );
+        }
+      }
+    }
+  }
+
+  int getPublishedCount() {
+    return published.size();
+  }
+
+  /**
+   * A pool of daemon threads sized by {@link #THREADS_PROPERTY}, to shut down by the caller once done
+   */
+  static ExecutorService createExecutor( String threadName ) {
+    int threads = Math.max( 1, Const.toInt( EnvUtil.getSystemProperty( THREADS_PROPERTY ), DEFAULT_THREADS ) );
+    ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>(),
+      runnable -> {
+        Thread thread = new Thread( runnable, threadName );
+        thread.setDaemon( true );
+        return thread;
+      } );
+    executor.allowCoreThreadTimeOut( true );
+    return executor;
+  }
+}
@@ -23,10 +23,11 @@ import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroupXmlWri
 import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationManager;
 import org.pentaho.agilebi.modeler.models.annotations.data.ColumnMapping;
 import org.pentaho.agilebi.modeler.models.annotations.data.DataProvider;
-import org.pentaho.agilebi.modeler.models.annotations.util.KeyValueClosure;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.refinery.ModelAnnotationGroupCache;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.repository.ObjectId;
@@ -57,6 +58,13 @@ public abstract class BaseAnnotationMeta extends BaseStepMeta implements StepMet
 
   private static Class<?> PKG = BaseAnnotationMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /**
+   * Repository attribute holding the whole step as XML, older steps have one attribute per property
+   */
+  static final String REP_XML = "MODEL_ANNOTATIONS_XML";
+  static final String REP_XML_TAG = "model-annotation-step";
+  static final int REP_XML_VERSION = 1;
+
   private boolean sharedDimension; // need to know this before loading from the MetaStore
 
   private ModelAnnotationGroup modelAnnotations;
@@ -65,6 +73,8 @@ public abstract class BaseAnnotationMeta extends BaseStepMeta implements StepMet
 
   private String targetOutputStep;
 
+  private boolean profileFields;
+
   public ModelAnnotationGroup getModelAnnotations() {
     return modelAnnotations;
   }
@@ -89,6 +99,17 @@ public abstract class BaseAnnotationMeta extends BaseStepMeta implements StepMet
     this.targetOutputStep = targetOutputStep;
   }
 
+  /**
+   * @return true if the step collects field statistics for Build Model while rows pass through
+   */
+  public boolean isProfileFields() {
+    return profileFields;
+  }
+
+  public void setProfileFields( boolean profileFields ) {
+    this.profileFields = profileFields;
+  }
+
   public void setSharedDimension( boolean sharedDimension ) {
     this.sharedDimension = sharedDimension;
   }
@@ -124,6 +145,9 @@ public abstract class BaseAnnotationMeta extends BaseStepMeta implements StepMet
 
     xml.append( "    " ).append( XMLHandler.addTagValue( "category", getModelAnnotationCategory() ) );
     xml.append( "    " ).append( XMLHandler.addTagValue( "targetOutputStep", getTargetOutputStep() ) );
+    if ( isProfileFields() ) {
+      xml.append( "    " ).append( XMLHandler.addTagValue( "profileFields", true ) );
+    }
 
     // Use common writer
     ModelAnnotationGroupXmlWriter xmlWriter = new ModelAnnotationGroupXmlWriter( getModelAnnotations() );
@@ -157,6 +181,7 @@ public abstract class BaseAnnotationMeta extends BaseStepMeta implements StepMet
 
     setModelAnnotationCategory( XMLHandler.getTagValue( step, "category" ) );
     setTargetOutputStep( XMLHandler.getTagValue( step, "targetOutputStep" ) );
+    setProfileFields( "Y".equalsIgnoreCase( XMLHandler.getTagValue( step, "profileFields" ) ) );
     ModelAnnotationGroupXmlReader mar = new ModelAnnotationGroupXmlReader();
     ModelAnnotationGroup modelAnnotationGroup = mar.readModelAnnotationGroup( step );
     sharedDimension = modelAnnotationGroup.isSharedDimension();
@@ -171,95 +196,18 @@ public abstract class BaseAnnotationMeta extends BaseStepMeta implements StepMet
 
     try {
 
-      rep.saveStepAttribute( id_transformation, id_step, "CATEGORY_NAME", getModelAnnotationCategory() );
-      rep.saveStepAttribute( id_transformation, id_step, "TARGET_OUTPUT_STEP", getTargetOutputStep() );
-
-      // Save model annotations
+      // Add default names
       if ( getModelAnnotations() != null ) {
-
-        for ( int i = 0; i < getModelAnnotations().size(); i++ ) {
-
-          final ModelAnnotation<?> modelAnnotation =
-              getModelAnnotations().get( i );
-
-          // Add default name
+        for ( ModelAnnotation<?> modelAnnotation : getModelAnnotations() ) {
           if ( StringUtils.isBlank( modelAnnotation.getName() ) ) {
             modelAnnotation.setName( UUID.randomUUID().toString() ); // backwards compatibility
           }
-
-          rep.saveStepAttribute( id_transformation, id_step, i, "ANNOTATION_NAME",
-              modelAnnotation.getName() );
-          rep.saveStepAttribute( id_transformation, id_step, i, "ANNOTATION_FIELD_NAME",
-              modelAnnotation.getAnnotation().getField() );
-
-          if ( modelAnnotation.getType() != null ) {
-            rep.saveStepAttribute( id_transformation, id_step, i, "ANNOTATION_TYPE",
-                modelAnnotation.getType().toString() );
-
-            final int INDEX = i; // trap index so we can use in inner class
-            modelAnnotation.iterateProperties( new KeyValueClosure() {
-              @Override
-              public void execute( String key, Serializable serializable ) {
-                try {
-                  if ( serializable != null && StringUtils.isNotBlank( serializable.toString() ) ) {
-                    rep.saveStepAttribute( id_transformation, id_step, INDEX, "PROPERTY_VALUE_" + key,
-                        serializable.toString() );
-                  }
-                } catch ( KettleException e ) {
-                  logError( e.getMessage() );
-                }
-              }
-            } );
-          }
-        }
-
-        rep.saveStepAttribute( id_transformation, id_step, "SHARED_DIMENSION",
-            getModelAnnotations().isSharedDimension() );
-        rep.saveStepAttribute( id_transformation, id_step, "DESCRIPTION",
-            getModelAnnotations().getDescription() );
-
-        List<DataProvider> dataProviders = getModelAnnotations().getDataProviders();
-        if ( dataProviders != null && !dataProviders.isEmpty() ) {
-          for ( int dIdx = 0; dIdx < dataProviders.size(); dIdx++ ) {
-
-            DataProvider dataProvider = dataProviders.get( dIdx );
-
-            // Save Data Provider properties
-            rep.saveStepAttribute( id_transformation, id_step, dIdx, "DP_NAME",
-                dataProvider.getName() );
-            rep.saveStepAttribute( id_transformation, id_step, dIdx, "DP_SCHEMA_NAME",
-                dataProvider.getSchemaName() );
-            rep.saveStepAttribute( id_transformation, id_step, dIdx, "DP_TABLE_NAME",
-                dataProvider.getTableName() );
-            rep.saveStepAttribute( id_transformation, id_step, dIdx, "DP_DATABASE_META_NAME_REF",
-                dataProvider.getDatabaseMetaNameRef() );
-
-            List<ColumnMapping> columnMappings = dataProvider.getColumnMappings();
-            if ( columnMappings != null && !columnMappings.isEmpty() ) {
-
-              // Save count for loading
-              rep.saveStepAttribute( id_transformation, id_step, "CM_COUNT_" + dIdx, columnMappings.size() );
-
-              for ( int cIdx = 0; cIdx < columnMappings.size(); cIdx++ ) {
-
-                ColumnMapping columnMapping = columnMappings.get( cIdx );
-
-                // Save ColumnMapping properties
-                rep.saveStepAttribute( id_transformation, id_step, dIdx, "CM_NAME_" + cIdx,
-                    columnMapping.getName() );
-                rep.saveStepAttribute( id_transformation, id_step, dIdx, "CM_COLUMN_NAME_" + cIdx,
-                    columnMapping.getColumnName() );
-
-                if ( columnMapping.getColumnDataType() != null ) {
-                  rep.saveStepAttribute( id_transformation, id_step, dIdx, "CM_DATA_TYPE_" + cIdx,
-                      columnMapping.getColumnDataType().name() );
-                }
-              }
-            }
-          }
         }
       }
 
+      // Everything goes into one attribute, one repository call whatever the number of annotations
+      rep.saveStepAttribute( id_transformation, id_step, REP_XML, getRepositoryXml() );
+
     } catch ( Exception e ) {
       throw new KettleException( BaseMessages.getString(
           PKG, "ModelAnnotationMeta.Exception.UnableToSaveStepInfoToRepository" )
@@ -271,96 +219,126 @@ public abstract class BaseAnnotationMeta extends BaseStepMeta implements StepMet
   public void readRep( Repository rep, IMetaStore metaStore, ObjectId id_step, List<DatabaseMeta> databases )
     throws KettleException {
 
-    ModelAnnotationGroup modelAnnotationGroup = new ModelAnnotationGroup();
+    ModelAnnotationGroup modelAnnotationGroup;
     try {
+      String xml = rep.getStepAttributeString( id_step, REP_XML );
+      if ( StringUtils.isNotBlank( xml ) ) {
+        modelAnnotationGroup = readRepositoryXml( xml );
+      } else {
+        modelAnnotationGroup = readLegacyRep( rep, id_step );
+      }
+    } catch ( Exception e ) {
+      throw new KettleException( BaseMessages.getString(
+          PKG, "ModelAnnotationMeta.Exception.UnexpectedErrorReadingStepInfoFromRepository" ), e );
+    }
 
-      setModelAnnotationCategory( rep.getStepAttributeString( id_step, "CATEGORY_NAME" ) );
-      setTargetOutputStep( rep.getStepAttributeString( id_step, "TARGET_OUTPUT_STEP" ) );
+    setModelAnnotations( modelAnnotationGroup );
 
-      int nrAnnotations = rep.countNrStepAttributes( id_step, "ANNOTATION_NAME" );
+    // This may override the loaded model annotation group
+    if ( StringUtils.isNotBlank( getModelAnnotationCategory() ) ) {
+      readDataFromMetaStore( metaStore );
+    }
+  }
 
-      // Read annotations
-      for ( int i = 0; i < nrAnnotations; i++ ) {
-        String annotationName = rep.getStepAttributeString( id_step, i, "ANNOTATION_NAME" );
-        String annotationFieldName = rep.getStepAttributeString( id_step, i, "ANNOTATION_FIELD_NAME" );
-        String annotationType = rep.getStepAttributeString( id_step, i, "ANNOTATION_TYPE" );
+  private String getRepositoryXml() {
+    return "<" + REP_XML_TAG + " version=\"" + REP_XML_VERSION + "\">" + getModelAnnotationsXml()
+      + XMLHandler.closeTag( REP_XML_TAG );
+  }
 
-        // Create model annotation
-        ModelAnnotation<?> modelAnnotation = ModelAnnotationGroupXmlReader.create( annotationType, annotationFieldName );
-        if ( StringUtils.isNotBlank( annotationName ) ) {
-          modelAnnotation.setName( annotationName );
-        }
+  private ModelAnnotationGroup readRepositoryXml( String xml ) throws KettleException {
+    Node node = XMLHandler.getSubNode( XMLHandler.loadXMLString( xml ), REP_XML_TAG );
+    int version = Const.toInt( XMLHandler.getTagAttribute( node, "version" ), 0 );
+    if ( version < 1 || version > REP_XML_VERSION ) {
+      throw new KettleException( BaseMessages.getString(
+          PKG, "ModelAnnotationMeta.Exception.UnsupportedRepositoryFormat", String.valueOf( version ) ) );
+    }
+    return readModelAnnotationGroup( node );
+  }
+
+  /**
+   * Reads steps saved before the annotations were kept in a single attribute, one attribute per property
+   */
+  private ModelAnnotationGroup readLegacyRep( Repository rep, ObjectId id_step ) throws KettleException {
+
+    ModelAnnotationGroup modelAnnotationGroup = new ModelAnnotationGroup();
+
+    setModelAnnotationCategory( rep.getStepAttributeString( id_step, "CATEGORY_NAME" ) );
+    setTargetOutputStep( rep.getStepAttributeString( id_step, "TARGET_OUTPUT_STEP" ) );
+    setProfileFields( rep.getStepAttributeBoolean( id_step, "PROFILE_FIELDS" ) );
+
+    int nrAnnotations = rep.countNrStepAttributes( id_step, "ANNOTATION_NAME" );
+
+    // Read annotations
+    for ( int i = 0; i < nrAnnotations; i++ ) {
+      String annotationName = rep.getStepAttributeString( id_step, i, "ANNOTATION_NAME" );
+      String annotationFieldName = rep.getStepAttributeString( id_step, i, "ANNOTATION_FIELD_NAME" );
+      String annotationType = rep.getStepAttributeString( id_step, i, "ANNOTATION_TYPE" );
 
-        if ( StringUtils.isNotBlank( annotationType ) ) {
-          // Populate annotation properties
-          Map<String, Serializable> map = new HashMap<String, Serializable>();
-          for ( String key : modelAnnotation.getAnnotation().getModelPropertyIds() ) {
-            try {
-              String value = rep.getStepAttributeString( id_step, i, "PROPERTY_VALUE_" + key );
-              if ( StringUtils.isNotBlank( value ) ) {
-                map.put( key, value );
-              }
-            } catch ( KettleException ke ) {
-              // Ignore - not found
+      // Create model annotation
+      ModelAnnotation<?> modelAnnotation = ModelAnnotationGroupXmlReader.create( annotationType, annotationFieldName );
+      if ( StringUtils.isNotBlank( annotationName ) ) {
+        modelAnnotation.setName( annotationName );
+      }
+
+      if ( StringUtils.isNotBlank( annotationType ) ) {
+        // Populate annotation properties
+        Map<String, Serializable> map = new HashMap<String, Serializable>();
+        for ( String key : modelAnnotation.getAnnotation().getModelPropertyIds() ) {
+          try {
+            String value = rep.getStepAttributeString( id_step, i, "PROPERTY_VALUE_" + key );
+            if ( StringUtils.isNotBlank( value ) ) {
+              map.put( key, value );
             }
+          } catch ( KettleException ke ) {
+            // Ignore - not found
           }
-          modelAnnotation.populateAnnotation( map );
         }
-
-        // Add to group
-        modelAnnotationGroup.add( modelAnnotation );
+        modelAnnotation.populateAnnotation( map );
       }
 
-      modelAnnotationGroup
-          .setSharedDimension( BooleanUtils.toBoolean( rep.getStepAttributeString( id_step, "SHARED_DIMENSION" ) ) );
-      sharedDimension = modelAnnotationGroup.isSharedDimension();
-      modelAnnotationGroup.setDescription( rep.getStepAttributeString( id_step, "DESCRIPTION" ) );
+      // Add to group
+      modelAnnotationGroup.add( modelAnnotation );
+    }
 
-      List<DataProvider> dataProviders = new ArrayList<DataProvider>();
-      int nrDataProviders = rep.countNrStepAttributes( id_step, "DP_NAME" );
-      for ( int i = 0; i < nrDataProviders; i++ ) {
+    modelAnnotationGroup
+        .setSharedDimension( BooleanUtils.toBoolean( rep.getStepAttributeString( id_step, "SHARED_DIMENSION" ) ) );
+    sharedDimension = modelAnnotationGroup.isSharedDimension();
+    modelAnnotationGroup.setDescription( rep.getStepAttributeString( id_step, "DESCRIPTION" ) );
 
-        DataProvider dataProvider = new DataProvider();
+    List<DataProvider> dataProviders = new ArrayList<DataProvider>();
+    int nrDataProviders = rep.countNrStepAttributes( id_step, "DP_NAME" );
+    for ( int i = 0; i < nrDataProviders; i++ ) {
 
-        dataProvider.setName( rep.getStepAttributeString( id_step, i, "DP_NAME" ) );
-        dataProvider.setSchemaName( rep.getStepAttributeString( id_step, i, "DP_SCHEMA_NAME" ) );
-        dataProvider.setTableName( rep.getStepAttributeString( id_step, i, "DP_TABLE_NAME" ) );
-        dataProvider.setDatabaseMetaNameRef( rep.getStepAttributeString( id_step, i, "DP_DATABASE_META_NAME_REF" ) );
+      DataProvider dataProvider = new DataProvider();
 
-        List<ColumnMapping> columnMappings = new ArrayList<ColumnMapping>();
-        long nrColumnMappings = rep.getStepAttributeString( id_step, "CM_COUNT_" + i ) != null
-            ? Long.valueOf( rep.getStepAttributeString( id_step, "CM_COUNT_" + i ) )
-            : 0;
-        for ( int j = 0; j < nrColumnMappings; j++ ) {
+      dataProvider.setName( rep.getStepAttributeString( id_step, i, "DP_NAME" ) );
+      dataProvider.setSchemaName( rep.getStepAttributeString( id_step, i, "DP_SCHEMA_NAME" ) );
+      dataProvider.setTableName( rep.getStepAttributeString( id_step, i, "DP_TABLE_NAME" ) );
+      dataProvider.setDatabaseMetaNameRef( rep.getStepAttributeString( id_step, i, "DP_DATABASE_META_NAME_REF" ) );
 
-          ColumnMapping columnMapping = new ColumnMapping();
+      List<ColumnMapping> columnMappings = new ArrayList<ColumnMapping>();
+      String columnMappingCount = rep.getStepAttributeString( id_step, "CM_COUNT_" + i );
+      long nrColumnMappings = columnMappingCount != null ? Long.valueOf( columnMappingCount ) : 0;
+      for ( int j = 0; j < nrColumnMappings; j++ ) {
 
-          columnMapping.setName( rep.getStepAttributeString( id_step, i, "CM_NAME_" + j ) );
-          columnMapping.setColumnName( rep.getStepAttributeString( id_step, i, "CM_COLUMN_NAME_" + j ) );
-          String dataType = rep.getStepAttributeString( id_step, i, "CM_DATA_TYPE_" + j );
-          if ( StringUtils.isNotBlank( dataType ) ) {
-            columnMapping.setColumnDataType( DataType.valueOf( dataType ) );
-          }
+        ColumnMapping columnMapping = new ColumnMapping();
 
-          columnMappings.add( columnMapping );
+        columnMapping.setName( rep.getStepAttributeString( id_step, i, "CM_NAME_" + j ) );
+        columnMapping.setColumnName( rep.getStepAttributeString( id_step, i, "CM_COLUMN_NAME_" + j ) );
+        String dataType = rep.getStepAttributeString( id_step, i, "CM_DATA_TYPE_" + j );
+        if ( StringUtils.isNotBlank( dataType ) ) {
+          columnMapping.setColumnDataType( DataType.valueOf( dataType ) );
         }
 
-        dataProvider.setColumnMappings( columnMappings );
-        dataProviders.add( dataProvider );
+        columnMappings.add( columnMapping );
       }
-      modelAnnotationGroup.setDataProviders( dataProviders );
 
-    } catch ( Exception e ) {
-      throw new KettleException( BaseMessages.getString(
-          PKG, "ModelAnnotationMeta.Exception.UnexpectedErrorReadingStepInfoFromRepository" ), e );
+      dataProvider.setColumnMappings( columnMappings );
+      dataProviders.add( dataProvider );
     }
+    modelAnnotationGroup.setDataProviders( dataProviders );
 
-    setModelAnnotations( modelAnnotationGroup );
-
-    // This may override the loaded model annotation group
-    if ( StringUtils.isNotBlank( getModelAnnotationCategory() ) ) {
-      readDataFromMetaStore( metaStore );
-    }
+    return modelAnnotationGroup;
   }
 
   public void readDataFromMetaStore( IMetaStore metaStore ) {
@@ -371,8 +349,11 @@ public abstract class BaseAnnotationMeta extends BaseStepMeta implements StepMet
       }
 
       ModelAnnotationManager manager = getModelAnnotationManager( getModelAnnotations() );
-      if ( manager.containsGroup( getModelAnnotationCategory(), metaStore ) ) {
-        setModelAnnotations( manager.readGroup( getModelAnnotationCategory(), metaStore ) );
+      // the cache also knows which groups are missing, deletes through this JVM invalidate it
+      ModelAnnotationGroup group = ModelAnnotationGroupCache.getInstance().readGroup(
+        manager, getModelAnnotations().isSharedDimension(), getModelAnnotationCategory(), metaStore );
+      if ( group != null ) {
+        setModelAnnotations( group );
       }
     } catch ( Exception e ) {
       logError( e.getMessage() );
@@ -394,6 +375,8 @@ public abstract class BaseAnnotationMeta extends BaseStepMeta implements StepMet
     }
     checkValidName( modelAnnotations.getName() );
     manager.createGroup( modelAnnotations, metaStore );
+    ModelAnnotationGroupCache.getInstance()
+      .invalidate( modelAnnotations.isSharedDimension(), modelAnnotations.getName(), metaStore );
   }
 
   public void checkValidName( final String name ) throws KettleException {
@@ -0,0 +1,137 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.annotation;
+
+import org.apache.commons.lang.StringUtils;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotation;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroup;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the annotations of every Annotate Stream step that runs in a job (or a standalone transformation).
+ * <p>
+ * Step copies and parallel transformations add to it concurrently. Annotations are keyed by type, name and field:
+ * running the same step in several copies registers its annotations once, and an annotation of a later step on the
+ * same key replaces the earlier one and moves to the end, as if it had been applied after it. Unnamed annotations
+ * can't be told apart, only the very same instance is a duplicate.
+ */
+public class ModelAnnotationAccumulator {
+
+  // in the order build model applies them, guarded by itself
+  private final Map<String, ModelAnnotation<?>> annotations = new LinkedHashMap<>();
+  private final Map<ModelAnnotation<?>, String> unnamedKeys = new IdentityHashMap<>();
+
+  /**
+   * Returns the accumulator registered under <code>key</code>, creating it if needed. A plain
+   * {@link ModelAnnotationGroup} found in the map is migrated into the new accumulator.
+   */
+  public static ModelAnnotationAccumulator getOrCreate( Map<String, Object> extensionDataMap, String key ) {
+    // the extension data maps are not thread safe; this only runs once per step init
+    synchronized ( extensionDataMap ) {
+      Object existing = extensionDataMap.get( key );
+      if ( existing instanceof ModelAnnotationAccumulator ) {
+        return (ModelAnnotationAccumulator) existing;
+      }
+      ModelAnnotationAccumulator accumulator = new ModelAnnotationAccumulator();
+      if ( existing instanceof ModelAnnotationGroup ) {
+        accumulator.addAll( (ModelAnnotationGroup) existing );
+      }
+      extensionDataMap.put( key, accumulator );
+      return accumulator;
+    }
+  }
+
+  /**
+   * Reads whatever was registered under <code>key</code> as a group.
+   *
+   * @return a new group, or null if nothing was registered
+   */
+  public static ModelAnnotationGroup toModelAnnotationGroup( Map<String, Object> extensionDataMap, String key ) {
+    Object registered;
+    synchronized ( extensionDataMap ) {
+      registered = extensionDataMap.get( key );
+    }
+    if ( registered instanceof ModelAnnotationAccumulator ) {
+      return ( (ModelAnnotationAccumulator) registered ).toModelAnnotationGroup();
+    }
+    if ( registered instanceof ModelAnnotationGroup ) {
+      return (ModelAnnotationGroup) registered;
+    }
+    return null;
+  }
+
+  /**
+   * @return false if the very same annotation was already present
+   */
+  public boolean add( ModelAnnotation<?> annotation ) {
+    if ( annotation == null ) {
+      return false;
+    }
+    synchronized ( annotations ) {
+      String key = keyOf( annotation );
+      if ( annotations.get( key ) == annotation ) {
+        // another copy of the same step, keep its place
+        return false;
+      }
+      // a later step re-annotates the field, apply it last
+      annotations.remove( key );
+      annotations.put( key, annotation );
+      return true;
+    }
+  }
+
+  public void addAll( ModelAnnotationGroup group ) {
+    for ( ModelAnnotation<?> annotation : group ) {
+      add( annotation );
+    }
+  }
+
+  public int size() {
+    synchronized ( annotations ) {
+      return annotations.size();
+    }
+  }
+
+  /**
+   * @return a snapshot of the accumulated annotations, in the order they are applied
+   */
+  public ModelAnnotationGroup toModelAnnotationGroup() {
+    ModelAnnotationGroup group = new ModelAnnotationGroup();
+    synchronized ( annotations ) {
+      group.addAll( annotations.values() );
+    }
+    return group;
+  }
+
+  /**
+   * The caller holds the lock.
+   */
+  private String keyOf( ModelAnnotation<?> annotation ) {
+    String field = annotation.getAnnotation() == null ? null : annotation.getAnnotation().getField();
+    String name;
+    if ( StringUtils.isBlank( annotation.getName() ) ) {
+      name = unnamedKeys.get( annotation );
+      if ( name == null ) {
+        name = "#" + unnamedKeys.size();
+        unnamedKeys.put( annotation, name );
+      }
+    } else {
+      name = "=" + annotation.getName();
+    }
+    return annotation.getType() + "|" + name + "|" + field;
+  }
+}
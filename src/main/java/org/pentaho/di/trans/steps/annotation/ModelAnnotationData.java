@@ -14,6 +14,7 @@
 package org.pentaho.di.trans.steps.annotation;
 
 import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroup;
+import org.pentaho.di.core.refinery.profile.FieldProfile;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
@@ -22,4 +23,10 @@ import org.pentaho.di.trans.step.StepDataInterface;
  */
 public class ModelAnnotationData extends BaseStepData implements StepDataInterface {
   public ModelAnnotationGroup annotations;
+
+  /** per input field, only set when profiling */
+  public FieldProfile[] profiles;
+
+  /** rows bypass getRow/putRow, decided on the first processRow call */
+  public Boolean passthrough;
 }
@@ -19,7 +19,11 @@ import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotation;
 import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroup;
 import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationManager;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.refinery.ModelAnnotationGroupCache;
+import org.pentaho.di.core.refinery.profile.FieldProfile;
+import org.pentaho.di.core.refinery.profile.FieldProfiles;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
@@ -27,6 +31,7 @@ import org.pentaho.di.job.entries.build.JobEntryBuildModel;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.RowHandler;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
@@ -35,6 +40,17 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 import org.pentaho.metadata.model.concept.types.AggregationType;
 import org.pentaho.metastore.api.exceptions.MetaStoreException;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author Rowell Belen
  */
@@ -42,6 +58,15 @@ public class ModelAnnotationStep extends BaseStep implements StepInterface {
 
   private static final Class<?> PKG = ModelAnnotationMeta.class;
 
+  static final int PASSTHROUGH_BATCH_SIZE = 1000;
+  private static final long PASSTHROUGH_WAIT_MS = 50;
+
+  /** prefix of the trans extension data key holding the non-numeric input fields of a step */
+  static final String KEY_NON_NUMERIC_FIELDS = "ModelAnnotationStep.NonNumericFields.";
+
+  // rows must go through a row handler set from outside, it may look at or replace them
+  private volatile boolean customRowHandler;
+
   /**
    * This is the base step that forms that basis for all steps. You can derive from this class to implement your own
    * steps.
@@ -103,6 +128,18 @@ public class ModelAnnotationStep extends BaseStep implements StepInterface {
 
   @Override
   public boolean processRow( final StepMetaInterface smi, final StepDataInterface sdi ) throws KettleException {
+    ModelAnnotationData data = (ModelAnnotationData) sdi;
+    if ( data != null && data.passthrough == null ) {
+      // row listeners are only attached after init, decide on the first call
+      data.passthrough = isPassthroughPossible( (BaseAnnotationMeta) smi );
+      if ( data.passthrough ) {
+        logDetailed( BaseMessages.getString( PKG, "ModelAnnotation.Runtime.Passthrough" ) );
+      }
+    }
+    if ( data != null && data.passthrough ) {
+      return passRowsThrough();
+    }
+
     Object[] row = getRow();
     if ( first && row != null ) {
       first = false;
@@ -111,10 +148,101 @@ public class ModelAnnotationStep extends BaseStep implements StepInterface {
       setOutputDone();
       return false;
     }
+    if ( ( (BaseAnnotationMeta) smi ).isProfileFields() ) {
+      profileRow( (ModelAnnotationData) sdi, row );
+    }
     putRow( getInputRowMeta(), row );
     return true;
   }
 
+  @Override
+  public void setRowHandler( RowHandler rowHandler ) {
+    super.setRowHandler( rowHandler );
+    customRowHandler = true;
+  }
+
+  /**
+   * Rows can go straight from the input to the output row set when nothing but this step would see them.
+   */
+  boolean isPassthroughPossible( BaseAnnotationMeta meta ) {
+    return meta != null
+        && !customRowHandler
+        && !meta.isProfileFields()
+        && getInputRowSets().size() == 1
+        && getOutputRowSets().size() == 1
+        && getRowListeners().isEmpty()
+        && !getStepMeta().isDoingErrorHandling()
+        && !getTrans().isSafeModeEnabled();
+  }
+
+  /**
+   * Moves up to a batch of rows to the single output row set, bypassing the per row bookkeeping of putRow. Rows are
+   * read with getRow, which waits while the transformation is paused and returns null once stopped or done.
+   */
+  private boolean passRowsThrough() throws KettleException {
+    RowSet output = getOutputRowSets().get( 0 );
+    for ( int i = 0; i < PASSTHROUGH_BATCH_SIZE; i++ ) {
+      Object[] row = getRow();
+      if ( row == null ) {
+        setOutputDone();
+        return false;
+      }
+      while ( !output.putRowWait( getInputRowMeta(), row, PASSTHROUGH_WAIT_MS, TimeUnit.MILLISECONDS ) ) {
+        if ( isStopped() ) {
+          return false;
+        }
+      }
+      incrementLinesWritten();
+    }
+    return true;
+  }
+
+  private void profileRow( ModelAnnotationData data, Object[] row ) throws KettleException {
+    RowMetaInterface rowMeta = getInputRowMeta();
+    if ( data.profiles == null ) {
+      data.profiles = new FieldProfile[ rowMeta.size() ];
+      for ( int i = 0; i < data.profiles.length; i++ ) {
+        data.profiles[ i ] = FieldProfile.create( rowMeta.getValueMeta( i ) );
+      }
+    }
+    for ( int i = 0; i < data.profiles.length; i++ ) {
+      data.profiles[ i ].add( rowMeta.getValueMeta( i ), row[ i ] );
+    }
+  }
+
+  @Override
+  public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    ModelAnnotationData data = (ModelAnnotationData) sdi;
+    if ( data.profiles != null ) {
+      // copies profile their own share of the rows, merge them for the build models of the output steps
+      for ( String outputStep : getProfiledOutputSteps( (BaseAnnotationMeta) smi ) ) {
+        FieldProfiles.getOrCreate( getAnnotationExtensionDataMap(),
+          JobEntryBuildModel.KEY_FIELD_PROFILES_PREFIX + outputStep ).mergeAll( data.profiles );
+      }
+      data.profiles = null;
+    }
+    super.dispose( smi, sdi );
+  }
+
+  /**
+   * Steps the profiled rows go to: the target output step if one is set, otherwise every step after this one.
+   */
+  Set<String> getProfiledOutputSteps( BaseAnnotationMeta meta ) {
+    String target = StringUtils.trimToNull( environmentSubstitute( meta.getTargetOutputStep() ) );
+    if ( target != null ) {
+      return Collections.singleton( target );
+    }
+    Set<String> stepNames = new LinkedHashSet<>();
+    Deque<StepMeta> pending = new ArrayDeque<>( getTransMeta().findNextSteps( getStepMeta() ) );
+    while ( !pending.isEmpty() ) {
+      StepMeta next = pending.pop();
+      if ( next != null && stepNames.add( StringUtils.trimToEmpty( next.getName() ) ) ) {
+        pending.addAll( getTransMeta().findNextSteps( next ) );
+      }
+    }
+    return stepNames;
+  }
+
   /**
    * exposes an annotation group to build model
    *
@@ -134,14 +262,8 @@ public class ModelAnnotationStep extends BaseStep implements StepInterface {
     }
     validateMeasuresNumeric( currentGroup );
 
-    ModelAnnotationGroup allAnnotations = getExistingAnnotations();
     if ( !currentGroup.isSharedDimension() ) {
-      allAnnotations.addAll( currentGroup );
-    }
-    if ( getTrans().getParentJob() != null ) {
-      getTrans().getParentJob().getExtensionDataMap().put( JobEntryBuildModel.KEY_MODEL_ANNOTATIONS, allAnnotations );
-    } else {
-      getTrans().getExtensionDataMap().put( JobEntryBuildModel.KEY_MODEL_ANNOTATIONS, allAnnotations );
+      getAnnotationAccumulator().addAll( currentGroup );
     }
     return currentGroup;
   }
@@ -160,7 +282,10 @@ public class ModelAnnotationStep extends BaseStep implements StepInterface {
     }
     try {
       ModelAnnotationManager mgr = getModelAnnotationsManager( modelAnnotationMeta );
-      ModelAnnotationGroup group = mgr.readGroup( groupName, metaStore );
+      ModelAnnotationGroupCache cache = getModelAnnotationGroupCache();
+      ModelAnnotationGroup group =
+        cache.readGroup( mgr, modelAnnotationMeta.isSharedDimension(), groupName, metaStore );
+      logGroupCacheStatistics( cache );
       if ( group == null ) {
         throw new KettleException( BaseMessages.getString(
           PKG, modelAnnotationMeta.isSharedDimension()
@@ -173,6 +298,17 @@ public class ModelAnnotationStep extends BaseStep implements StepInterface {
     }
   }
 
+  private void logGroupCacheStatistics( ModelAnnotationGroupCache cache ) {
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "ModelAnnotation.Runtime.GroupCacheStatistics",
+        cache.getHits(), cache.getMisses(), cache.size() ) );
+    }
+  }
+
+  protected ModelAnnotationGroupCache getModelAnnotationGroupCache() {
+    return ModelAnnotationGroupCache.getInstance();
+  }
+
   protected ModelAnnotationManager getModelAnnotationsManager( BaseAnnotationMeta modelAnnotationMeta ) {
     if ( modelAnnotationMeta.isSharedDimension() ) {
       return new ModelAnnotationManager( true );
@@ -183,37 +319,91 @@ public class ModelAnnotationStep extends BaseStep implements StepInterface {
 
 
   private void validateMeasuresNumeric( ModelAnnotationGroup annotations ) throws KettleException {
-    RowMetaInterface inputRowMeta = getInputRowMeta();
-    if (  inputRowMeta == null ) {
-      inputRowMeta = getTransMeta().getPrevStepFields( getStepMeta() );
+    Map<String, ValueMetaInterface> nonNumericFields = getNonNumericFields();
+    if ( nonNumericFields == null || nonNumericFields.isEmpty() ) {
+      return;
     }
-    if ( inputRowMeta != null ) {
-      for ( ModelAnnotation<?> annotation : annotations ) {
-        if ( annotation.getType() != null && annotation.getType().equals( ModelAnnotation.Type.CREATE_MEASURE ) ) {
-          for ( ValueMetaInterface valueMeta : inputRowMeta.getValueMetaList() ) {
-            if ( !valueMeta.isNumeric() && valueMeta.getName().equals( annotation.getAnnotation().getField() ) ) {
-              CreateMeasure createMeasure = (CreateMeasure) annotation.getAnnotation();
-              if ( !createMeasure.getAggregateType().equals( AggregationType.COUNT ) && !createMeasure
-                  .getAggregateType().equals( AggregationType.COUNT_DISTINCT ) ) {
-                throw new KettleException( BaseMessages.getString( PKG, "ModelAnnotation.Runtime.NonNumericMeasure",
-                    createMeasure.getAggregateType().name() ) );
-              }
-            }
+    List<String> fields = new ArrayList<>();
+    List<String> errors = new ArrayList<>();
+    for ( ModelAnnotation<?> annotation : annotations ) {
+      if ( annotation.getType() != null && annotation.getType().equals( ModelAnnotation.Type.CREATE_MEASURE ) ) {
+        String field = annotation.getAnnotation().getField();
+        if ( field != null && nonNumericFields.containsKey( field ) ) {
+          CreateMeasure createMeasure = (CreateMeasure) annotation.getAnnotation();
+          if ( !createMeasure.getAggregateType().equals( AggregationType.COUNT ) && !createMeasure
+              .getAggregateType().equals( AggregationType.COUNT_DISTINCT ) ) {
+            fields.add( field );
+            errors.add( BaseMessages.getString( PKG, "ModelAnnotation.Runtime.NonNumericMeasure",
+                createMeasure.getAggregateType().name() ) );
           }
         }
       }
     }
+    if ( errors.size() == 1 ) {
+      throw new KettleException( errors.get( 0 ) );
+    } else if ( !errors.isEmpty() ) {
+      StringBuilder report =
+          new StringBuilder( BaseMessages.getString( PKG, "ModelAnnotation.Runtime.NonNumericMeasures" ) );
+      for ( int i = 0; i < errors.size(); i++ ) {
+        report.append( Const.CR ).append( fields.get( i ) ).append( ": " ).append( errors.get( i ) );
+      }
+      throw new KettleException( report.toString() );
+    }
   }
 
-  private ModelAnnotationGroup getExistingAnnotations() {
-    Object o = ( getTrans().getParentJob() == null )
-        ? getTrans().getExtensionDataMap().get( JobEntryBuildModel.KEY_MODEL_ANNOTATIONS )
-        : getTrans().getParentJob().getExtensionDataMap().get( JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
-    if ( o == null ) {
-      return new ModelAnnotationGroup();
-    } else {
-      return (ModelAnnotationGroup) o;
+  /**
+   * Non-numeric fields of the incoming stream by name. When no row was read yet the previous step fields are
+   * resolved once per transformation and shared by all copies of the step.
+   */
+  @SuppressWarnings( "unchecked" )
+  Map<String, ValueMetaInterface> getNonNumericFields() throws KettleException {
+    RowMetaInterface inputRowMeta = getInputRowMeta();
+    if ( inputRowMeta != null ) {
+      return indexNonNumericFields( inputRowMeta );
+    }
+    Map<String, Object> transExtensionDataMap = getTrans() == null ? null : getTrans().getExtensionDataMap();
+    if ( transExtensionDataMap == null ) {
+      return indexNonNumericFields( getTransMeta().getPrevStepFields( getStepMeta() ) );
+    }
+    String key = KEY_NON_NUMERIC_FIELDS + getStepname();
+    // copies initialize in parallel, only the first one walks the transformation
+    synchronized ( transExtensionDataMap ) {
+      Object cached = transExtensionDataMap.get( key );
+      if ( cached instanceof Map ) {
+        return (Map<String, ValueMetaInterface>) cached;
+      }
+      Map<String, ValueMetaInterface> fields =
+          indexNonNumericFields( getTransMeta().getPrevStepFields( getStepMeta() ) );
+      transExtensionDataMap.put( key, fields == null ? Collections.emptyMap() : fields );
+      return fields;
+    }
+  }
+
+  static Map<String, ValueMetaInterface> indexNonNumericFields( RowMetaInterface rowMeta ) {
+    if ( rowMeta == null ) {
+      return null;
+    }
+    Map<String, ValueMetaInterface> fields = new HashMap<>();
+    for ( ValueMetaInterface valueMeta : rowMeta.getValueMetaList() ) {
+      if ( !valueMeta.isNumeric() && valueMeta.getName() != null ) {
+        fields.putIfAbsent( valueMeta.getName(), valueMeta );
+      }
     }
+    return fields;
+  }
+
+  private ModelAnnotationAccumulator getAnnotationAccumulator() {
+    return ModelAnnotationAccumulator.getOrCreate(
+      getAnnotationExtensionDataMap(), JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
+  }
+
+  /**
+   * Build model reads what the steps expose from the parent job
+   */
+  private Map<String, Object> getAnnotationExtensionDataMap() {
+    return ( getTrans().getParentJob() == null )
+        ? getTrans().getExtensionDataMap()
+        : getTrans().getParentJob().getExtensionDataMap();
   }
 
   private boolean isOutputStepFound( final String outputStep ) throws KettleException {
@@ -0,0 +1,291 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.util;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.ObjectLocationSpecificationMethod;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.job.entries.trans.JobEntryTrans;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.pentaho.di.repository.RepositoryDirectoryInterface;
+import org.pentaho.di.repository.RepositoryObject;
+import org.pentaho.di.repository.RepositoryObjectType;
+import org.pentaho.di.trans.StepWithMappingMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.metastore.api.IMetaStore;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Transformations of job entries and mapping steps, loaded once per location and revision. The revision is the last
+ * modified time of the file or of the repository object, so a transformation saved since is loaded again. Those whose
+ * revision can't be told are loaded every time.
+ * <p>
+ * A transformation is only handed out for the same repository connection it was loaded with, and to parents with the
+ * same variables, since a loaded transformation keeps both. Reconnecting to a repository loads them again.
+ * <p>
+ * The transformations are shared, they are meant to look at steps and data services, not to be changed or run.
+ */
+public class TransMetaCache {
+
+  /**
+   * How many transformations are kept; 0 disables the cache
+   */
+  public static final String SIZE_PROPERTY = "KETTLE_DATA_REFINERY_TRANS_META_CACHE_SIZE";
+  static final int DEFAULT_SIZE = 100;
+
+  private static final TransMetaCache INSTANCE = new TransMetaCache();
+
+  // in access order, the eldest is the least recently used
+  private final Map<String, Revision> revisions = new LinkedHashMap<String, Revision>( 16, 0.75f, true ) {
+    @Override protected boolean removeEldestEntry( Map.Entry<String, Revision> eldest ) {
+      return size() > getSize();
+    }
+  };
+
+  // ids of transformations referenced by name, per repository connection
+  private final Map<Repository, Map<String, ObjectId>> ids = new WeakHashMap<Repository, Map<String, ObjectId>>();
+
+  TransMetaCache() {
+  }
+
+  public static TransMetaCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return the transformation the job entry runs
+   */
+  public TransMeta getTransMeta( final JobEntryTrans entry, final Repository repository, final IMetaStore metaStore,
+                                 final VariableSpace space ) throws KettleException {
+    Key key = key( entry.getSpecificationMethod(), entry.getFilename(), entry.getTransObjectId(),
+      entry.getDirectory(), entry.getTransname(), repository, space );
+    return get( key, repository, space, () -> entry.getTransMeta( repository, metaStore, space ) );
+  }
+
+  /**
+   * @return the sub-transformation of a mapping or other step, null if the step has none
+   */
+  public TransMeta fetchTransMeta( final StepMetaInterface stepMeta, final Repository repository,
+                                   final IMetaStore metaStore, final TransMeta parent ) throws KettleException {
+    Key key = null;
+    if ( stepMeta instanceof StepWithMappingMeta ) {
+      StepWithMappingMeta mapping = (StepWithMappingMeta) stepMeta;
+      key = key( mapping.getSpecificationMethod(), mapping.getFileName(), mapping.getTransObjectId(),
+        mapping.getDirectoryPath(), mapping.getTransName(), repository, parent );
+    }
+    return get( key, repository, parent, () -> stepMeta.fetchTransMeta( stepMeta, repository, metaStore, parent ) );
+  }
+
+  public void clear() {
+    synchronized ( revisions ) {
+      revisions.clear();
+    }
+    synchronized ( ids ) {
+      ids.clear();
+    }
+  }
+
+  int size() {
+    synchronized ( revisions ) {
+      return revisions.size();
+    }
+  }
+
+  private TransMeta get( Key key, Repository repository, VariableSpace space, Loader loader ) throws KettleException {
+    if ( key == null || getSize() <= 0 ) {
+      return loader.load();
+    }
+    Map<String, String> variables = variables( space );
+    synchronized ( revisions ) {
+      Revision revision = revisions.get( key.location );
+      if ( revision != null && revision.revision == key.revision && revision.repository == repository
+        && revision.variables.equals( variables ) ) {
+        return revision.transMeta;
+      }
+    }
+    // load outside of the lock, a slow repository must not block the others
+    TransMeta transMeta = loader.load();
+    if ( transMeta != null ) {
+      synchronized ( revisions ) {
+        revisions.put( key.location, new Revision( key.revision, transMeta, repository, variables ) );
+      }
+    }
+    return transMeta;
+  }
+
+  /**
+   * The variables a loaded transformation inherits from its parent
+   */
+  private static Map<String, String> variables( VariableSpace space ) {
+    Map<String, String> variables = new HashMap<String, String>();
+    if ( space != null ) {
+      for ( String name : space.listVariables() ) {
+        variables.put( name, space.getVariable( name ) );
+      }
+    }
+    return variables;
+  }
+
+  /**
+   * @return where the mapping or other step loads its sub-transformation from, null if that is not known
+   */
+  static String location( StepMetaInterface stepMeta, VariableSpace space ) {
+    if ( !( stepMeta instanceof StepWithMappingMeta ) ) {
+      return null;
+    }
+    StepWithMappingMeta mapping = (StepWithMappingMeta) stepMeta;
+    if ( mapping.getSpecificationMethod() == null ) {
+      return null;
+    }
+    switch ( mapping.getSpecificationMethod() ) {
+      case FILENAME:
+        return Const.isEmpty( mapping.getFileName() ) ? null
+          : "file:" + space.environmentSubstitute( mapping.getFileName() );
+      case REPOSITORY_BY_NAME:
+        return Const.isEmpty( mapping.getTransName() ) ? null
+          : "name:" + space.environmentSubstitute( Const.NVL( mapping.getDirectoryPath(), "/" ) ) + "/"
+          + space.environmentSubstitute( mapping.getTransName() );
+      case REPOSITORY_BY_REFERENCE:
+        return mapping.getTransObjectId() == null ? null : "id:" + mapping.getTransObjectId().getId();
+      default:
+        return null;
+    }
+  }
+
+  private Key key( ObjectLocationSpecificationMethod method, String fileName, ObjectId objectId,
+                   String directory, String name, Repository repository, VariableSpace space ) {
+    if ( method == null ) {
+      return null;
+    }
+    try {
+      switch ( method ) {
+        case FILENAME:
+          return fileKey( space.environmentSubstitute( fileName ) );
+        case REPOSITORY_BY_NAME:
+          if ( repository == null || Const.isEmpty( name ) ) {
+            return null;
+          }
+          return nameKey( repository, space.environmentSubstitute( Const.NVL( directory, "/" ) ),
+            space.environmentSubstitute( name ) );
+        case REPOSITORY_BY_REFERENCE:
+          return repository == null ? null : repositoryKey( repository, objectId );
+        default:
+          return null;
+      }
+    } catch ( KettleException | IllegalArgumentException e ) {
+      // not cached, the loader reports what is wrong with the location
+      return null;
+    }
+  }
+
+  private static Key fileKey( String fileName ) {
+    if ( Const.isEmpty( fileName ) ) {
+      return null;
+    }
+    File file = fileName.startsWith( "file:" ) ? new File( URI.create( fileName ) ) : new File( fileName );
+    // other file systems have no cheap way to tell their revision
+    if ( !file.isFile() ) {
+      return null;
+    }
+    return new Key( "file:" + file.getAbsolutePath(), file.lastModified() );
+  }
+
+  /**
+   * Resolves the name to an id once per repository connection, after that only the revision is asked for. The name is
+   * resolved again when the transformation of the id is gone.
+   */
+  private Key nameKey( Repository repository, String directory, String name ) throws KettleException {
+    String path = directory + "/" + name;
+    ObjectId objectId;
+    synchronized ( ids ) {
+      Map<String, ObjectId> repositoryIds = ids.get( repository );
+      objectId = repositoryIds == null ? null : repositoryIds.get( path );
+    }
+    if ( objectId != null ) {
+      Key key = repositoryKey( repository, objectId );
+      if ( key != null ) {
+        return key;
+      }
+    }
+    RepositoryDirectoryInterface repositoryDirectory = repository.findDirectory( directory );
+    objectId = repositoryDirectory == null ? null : repository.getTransformationID( name, repositoryDirectory );
+    synchronized ( ids ) {
+      Map<String, ObjectId> repositoryIds = ids.get( repository );
+      if ( repositoryIds == null ) {
+        repositoryIds = new HashMap<String, ObjectId>();
+        ids.put( repository, repositoryIds );
+      }
+      if ( objectId == null ) {
+        repositoryIds.remove( path );
+      } else {
+        repositoryIds.put( path, objectId );
+      }
+    }
+    return repositoryKey( repository, objectId );
+  }
+
+  private static Key repositoryKey( Repository repository, ObjectId objectId ) throws KettleException {
+    if ( objectId == null ) {
+      return null;
+    }
+    RepositoryObject information = repository.getObjectInformation( objectId, RepositoryObjectType.TRANSFORMATION );
+    if ( information == null || information.isDeleted() || information.getModifiedDate() == null ) {
+      return null;
+    }
+    return new Key( "repository:" + repository.getName() + ":" + objectId.getId(),
+      information.getModifiedDate().getTime() );
+  }
+
+  int getSize() {
+    return Const.toInt( EnvUtil.getSystemProperty( SIZE_PROPERTY ), DEFAULT_SIZE );
+  }
+
+  private interface Loader {
+    TransMeta load() throws KettleException;
+  }
+
+  private static class Key {
+    private final String location;
+    private final long revision;
+
+    private Key( String location, long revision ) {
+      this.location = location;
+      this.revision = revision;
+    }
+  }
+
+  private static class Revision {
+    private final long revision;
+    private final TransMeta transMeta;
+    private final Repository repository;
+    private final Map<String, String> variables;
+
+    private Revision( long revision, TransMeta transMeta, Repository repository, Map<String, String> variables ) {
+      this.revision = revision;
+      this.transMeta = transMeta;
+      this.repository = repository;
+      this.variables = variables;
+    }
+  }
+}
@@ -15,22 +15,70 @@ package org.pentaho.di.trans.util;
 
 import org.apache.commons.lang.StringUtils;
 import org.pentaho.di.base.AbstractMeta;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.ProvidesDatabaseConnectionInformation;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.parameters.UnknownParamException;
+import org.pentaho.di.core.util.EnvUtil;
 import org.pentaho.di.repository.Repository;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
 import org.pentaho.metastore.api.IMetaStore;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class TransUtil {
+
+  /**
+   * Number of sub-transformations loaded at the same time by all the lookups of output steps of the JVM
+   */
+  public static final String THREADS_PROPERTY = "KETTLE_DATA_REFINERY_TRANS_FETCH_THREADS";
+  static final int DEFAULT_THREADS = 4;
+
+  private static final ExecutorService EXECUTOR = createExecutor();
+
+  /**
+   * Output steps of the transformation and of its sub-transformations, by step name. A sub-transformation used by
+   * several steps is looked at once, one that uses its own parent is not looked at again.
+   * <p>
+   * Sub-transformations are loaded level by level, those of a level at the same time when no repository is connected.
+   * The steps are collected in the order of the transformation as if they had been loaded one after the other.
+   */
   public static Map<String, ProvidesDatabaseConnectionInformation> collectOutputStepInTrans(
       final TransMeta transMeta, final Repository repository, final IMetaStore metastore )
     throws KettleException {
+    return collectOutputStepInTrans( transMeta, fetchSubTransMetas( transMeta, repository, metastore ),
+        new HashMap<String, Map<String, ProvidesDatabaseConnectionInformation>>(),
+        Collections.newSetFromMap( new IdentityHashMap<TransMeta, Boolean>() ) );
+  }
+
+  private static Map<String, ProvidesDatabaseConnectionInformation> collectOutputStepInTrans(
+      final TransMeta transMeta, final Map<StepMetaInterface, TransMeta> subTransMetas,
+      final Map<String, Map<String, ProvidesDatabaseConnectionInformation>> collected, final Set<TransMeta> parents ) {
+    String identity = identity( transMeta );
+    if ( identity != null && collected.containsKey( identity ) ) {
+      return collected.get( identity );
+    }
+    if ( !parents.add( transMeta ) ) {
+      // a sub-transformation runs its own parent, its steps are being collected already
+      return Collections.emptyMap();
+    }
     HashMap<String, ProvidesDatabaseConnectionInformation> stepMap =
         new HashMap<String, ProvidesDatabaseConnectionInformation>();
     for ( StepMeta stepMeta : transMeta.getSteps() ) {
@@ -40,17 +88,148 @@ public class TransUtil {
         stepMap.put( StringUtils.trimToEmpty( stepMeta.getName() ), info );
       } else if ( stepMeta != null && stepMeta.getStepMetaInterface() != null ) {
 
-        TransMeta relatedTransMeta = stepMeta.getStepMetaInterface().fetchTransMeta( stepMeta.getStepMetaInterface(),
-            repository, metastore, transMeta );
+        TransMeta relatedTransMeta = subTransMetas.get( stepMeta.getStepMetaInterface() );
 
         if ( relatedTransMeta != null ) {
-          stepMap.putAll( collectOutputStepInTrans( relatedTransMeta, repository, metastore ) );
+          stepMap.putAll( collectOutputStepInTrans( relatedTransMeta, subTransMetas, collected, parents ) );
         }
       }
     }
+    parents.remove( transMeta );
+    if ( identity != null ) {
+      collected.put( identity, stepMap );
+    }
     return stepMap;
   }
 
+  /**
+   * Loads the sub-transformations of the transformation and of its sub-transformations, by the step using them. A
+   * level is loaded only once the previous one is, no load waits for another, so that the pool can't run out of
+   * threads. Steps that use the same location share one load, and every step gets the first transformation loaded
+   * from where it points to.
+   * <p>
+   * A repository is not thread safe, the database repository works through a single connection, so with a repository
+   * every load runs on the calling thread one after the other.
+   */
+  static Map<StepMetaInterface, TransMeta> fetchSubTransMetas( final TransMeta transMeta,
+      final Repository repository, final IMetaStore metastore ) throws KettleException {
+    Map<StepMetaInterface, TransMeta> subTransMetas = new IdentityHashMap<StepMetaInterface, TransMeta>();
+    Map<String, Future<TransMeta>> loads = new HashMap<String, Future<TransMeta>>();
+    Map<String, TransMeta> loaded = new HashMap<String, TransMeta>();
+    Set<TransMeta> seen = Collections.newSetFromMap( new IdentityHashMap<TransMeta, Boolean>() );
+    seen.add( transMeta );
+    if ( identity( transMeta ) != null ) {
+      loaded.put( identity( transMeta ), transMeta );
+    }
+
+    List<Future<TransMeta>> futures = new ArrayList<Future<TransMeta>>();
+    try {
+      List<TransMeta> level = Collections.singletonList( transMeta );
+      while ( !level.isEmpty() ) {
+        List<StepMetaInterface> steps = new ArrayList<StepMetaInterface>();
+        futures.clear();
+        for ( final TransMeta parent : level ) {
+          for ( StepMeta stepMeta : parent.getSteps() ) {
+            final StepMetaInterface step = stepMeta == null ? null : stepMeta.getStepMetaInterface();
+            if ( step == null || getDatabaseConnectionInformation( step ) != null ) {
+              continue;
+            }
+            String location = TransMetaCache.location( step, parent );
+            Future<TransMeta> future = location == null ? null : loads.get( location );
+            if ( future == null ) {
+              future = load(
+                () -> TransMetaCache.getInstance().fetchTransMeta( step, repository, metastore, parent ), repository );
+              if ( location != null ) {
+                loads.put( location, future );
+              }
+            }
+            steps.add( step );
+            futures.add( future );
+          }
+        }
+
+        List<TransMeta> next = new ArrayList<TransMeta>();
+        for ( int i = 0; i < steps.size(); i++ ) {
+          TransMeta subTransMeta = get( futures.get( i ) );
+          if ( subTransMeta == null ) {
+            continue;
+          }
+          String identity = identity( subTransMeta );
+          if ( identity != null ) {
+            if ( loaded.containsKey( identity ) ) {
+              subTransMeta = loaded.get( identity );
+            } else {
+              loaded.put( identity, subTransMeta );
+            }
+          }
+          subTransMetas.put( steps.get( i ), subTransMeta );
+          if ( seen.add( subTransMeta ) ) {
+            next.add( subTransMeta );
+          }
+        }
+        level = next;
+      }
+    } finally {
+      for ( Future<TransMeta> future : futures ) {
+        future.cancel( true );
+      }
+    }
+    return subTransMetas;
+  }
+
+  private static Future<TransMeta> load( Callable<TransMeta> loader, Repository repository ) {
+    if ( repository != null ) {
+      FutureTask<TransMeta> task = new FutureTask<TransMeta>( loader );
+      task.run();
+      return task;
+    }
+    return EXECUTOR.submit( loader );
+  }
+
+  private static TransMeta get( Future<TransMeta> future ) throws KettleException {
+    try {
+      return future.get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( e );
+    } catch ( ExecutionException e ) {
+      if ( e.getCause() instanceof KettleException ) {
+        throw (KettleException) e.getCause();
+      }
+      throw new KettleException( e.getCause() );
+    }
+  }
+
+  /**
+   * A pool of daemon threads sized by {@link #THREADS_PROPERTY}. Nothing is queued: when every thread is busy the
+   * caller loads the transformation itself, so a large job does not hold up the lookups of other dialogs or jobs.
+   */
+  private static ExecutorService createExecutor() {
+    int threads = Math.max( 1, Const.toInt( EnvUtil.getSystemProperty( THREADS_PROPERTY ), DEFAULT_THREADS ) );
+    ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(),
+        runnable -> {
+          Thread thread = new Thread( runnable, "DataRefinery transformation loader" );
+          thread.setDaemon( true );
+          return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy() );
+    executor.allowCoreThreadTimeOut( true );
+    return executor;
+  }
+
+  /**
+   * @return where the transformation was loaded from, null if that is not known
+   */
+  static String identity( final TransMeta transMeta ) {
+    if ( transMeta.getObjectId() != null ) {
+      return "repository:" + transMeta.getObjectId().getId();
+    }
+    if ( !StringUtils.isEmpty( transMeta.getFilename() ) ) {
+      return "file:" + transMeta.getFilename();
+    }
+    return null;
+  }
+
   private static ProvidesDatabaseConnectionInformation getDatabaseConnectionInformation( Object o ) {
     if ( o != null && ProvidesDatabaseConnectionInformation.class.isAssignableFrom( o.getClass() ) ) {
       return ProvidesDatabaseConnectionInformation.class.cast( o );
@@ -17,11 +17,23 @@ import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.gui.SpoonFactory;
 import org.pentaho.di.core.gui.SpoonInterface;
+import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.refinery.publish.agilebi.BiServerConnection;
 import org.pentaho.di.core.refinery.publish.util.PublishRestUtil;
+import org.pentaho.di.core.util.EnvUtil;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.job.entries.publish.JobEntryDatasourcePublish;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
@@ -32,33 +44,96 @@ public class ConnectionValidator {
   private static final Class<JobEntryDatasourcePublish> PKG = JobEntryDatasourcePublish.class;
   private static final Logger logger = Logger.getLogger( PKG.getName() );
 
+  /**
+   * How long a successful runtime validation is trusted for the same server and credentials, in milliseconds
+   */
+  public static final String VALIDATION_TTL_PROPERTY = "KETTLE_DATA_REFINERY_CONNECTION_VALIDATION_TTL";
+  static final long DEFAULT_VALIDATION_TTL = TimeUnit.MINUTES.toMillis( 5 );
+
+  static final int MAX_VALIDATED = 64;
+  private static final int MAX_CHECK_THREADS = 4;
+  private static final int AUTHORIZED = Integer.MIN_VALUE;
+
+  private static final Map<String, Long> validated = new LinkedHashMap<String, Long>( 16, 0.75f, true ) {
+    @Override
+    protected boolean removeEldestEntry( Map.Entry<String, Long> eldest ) {
+      return size() > MAX_VALIDATED;
+    }
+  };
+
+  /**
+   * Only runs single requests, a check never waits for another one on this pool
+   */
+  private static final ThreadPoolExecutor checks =
+    new ThreadPoolExecutor( MAX_CHECK_THREADS, MAX_CHECK_THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+      runnable -> {
+        Thread thread = new Thread( runnable, "data-refinery-connection-validator" );
+        thread.setDaemon( true );
+        return thread;
+      } );
+
+  static {
+    checks.allowCoreThreadTimeOut( true );
+  }
+
   private boolean suppressSuccessMessage;
-  private PublishRestUtil publishRestUtil;
+  // checks running at the same time each get their own, the last HTTP status is kept per instance
+  private Supplier<PublishRestUtil> publishRestUtil = PublishRestUtil::new;
   private BiServerConnection connection;
+  private LogChannelInterface log;
+  private boolean serverVerified;
+  private volatile int lastHTTPStatus;
 
   public ConnectionValidator() {
-    this.publishRestUtil = new PublishRestUtil(); // default
   }
 
+  /**
+   * Checks the server, credentials and permissions, unless they passed for the same connection less than
+   * {@link #VALIDATION_TTL_PROPERTY} milliseconds ago. Failures are never cached.
+   */
   public void validateConnectionInRuntime() throws KettleException {
+    long start = System.currentTimeMillis();
+    String key = isBiServerConnectionProvided() && !Const.isEmpty( connection.getUrl() )
+      ? BiServerConnection.getCacheKey( connection ) : null;
+    if ( key != null && isValidated( key, start ) ) {
+      logValidation( "JobEntryDatasourcePublish.Validation.Cached", start );
+      return;
+    }
+    validateConnection();
+    if ( key != null ) {
+      synchronized ( validated ) {
+        purgeExpired( start );
+        validated.put( key, start );
+      }
+    }
+    logValidation( "JobEntryDatasourcePublish.Validation.Done", start );
+  }
+
+  private void validateConnection() throws KettleException {
     // check server
     if ( !this.isPentahoServer() ) {
       throw new KettleException( this.getMsg( "JobEntryDatasourcePublish.Test.InvalidPentahoServerMsgRuntime" ) );
     }
+    serverVerified = true;
 
     // check login info
     if ( !this.isUserInfoProvided() ) {
       throw new KettleException( this.getMsg( "JobEntryDatasourcePublish.Test.MissingUserMsg" ) );
     }
 
-    boolean isAuthenticated = !publishRestUtil.isUnauthenticatedUser( this.connection );
+    // login and permissions do not depend on each other, ask for them at once
+    Future<Boolean> unauthenticated =
+      checks.submit( () -> publishRestUtil.get().isUnauthenticatedUser( this.connection ) );
+    boolean canConnect = canConnect();
+
+    boolean isAuthenticated = !get( unauthenticated );
     if ( !isAuthenticated ) {
       throw new KettleException( this.getMsg( "JobEntryDatasourcePublish.Test.UsernamePasswordFailMsg" ) );
     }
 
     // test permissions
-    if ( !this.canConnect() ) {
-      if ( publishRestUtil.getLastHTTPStatus() == 404 ) {
+    if ( !canConnect ) {
+      if ( getLastHTTPStatus() == 404 ) {
         throw new KettleException( this.getMsg( "JobEntryDatasourcePublish.Test.BadURLMsg" ) );
       } else {
         throw new KettleException( this.getMsg( "JobEntryDatasourcePublish.Test.PermissionsErrorMsg" ) );
@@ -66,6 +141,60 @@ public class ConnectionValidator {
     }
   }
 
+  private static <T> T get( Future<T> check ) throws KettleException {
+    try {
+      return check.get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( e );
+    } catch ( ExecutionException e ) {
+      throw new KettleException( e.getCause() );
+    }
+  }
+
+  private boolean isValidated( String key, long now ) {
+    long ttl = Const.toLong( EnvUtil.getSystemProperty( VALIDATION_TTL_PROPERTY ), DEFAULT_VALIDATION_TTL );
+    synchronized ( validated ) {
+      Long validatedAt = validated.get( key );
+      if ( validatedAt != null && now - validatedAt < ttl ) {
+        return true;
+      }
+      validated.remove( key );
+      return false;
+    }
+  }
+
+  /**
+   * Drops the validations that are too old to be trusted, the caller holds the lock.
+   */
+  private static void purgeExpired( long now ) {
+    long ttl = Const.toLong( EnvUtil.getSystemProperty( VALIDATION_TTL_PROPERTY ), DEFAULT_VALIDATION_TTL );
+    for ( Iterator<Long> validatedAt = validated.values().iterator(); validatedAt.hasNext(); ) {
+      if ( now - validatedAt.next() >= ttl ) {
+        validatedAt.remove();
+      }
+    }
+  }
+
+  static int getValidationCacheSize() {
+    synchronized ( validated ) {
+      return validated.size();
+    }
+  }
+
+  private void logValidation( String messageKey, long start ) {
+    if ( log != null ) {
+      log.logBasic( BaseMessages.getString( PKG, messageKey, connection.getUrl(),
+        String.valueOf( System.currentTimeMillis() - start ) ) );
+    }
+  }
+
+  static void clearValidationCache() {
+    synchronized ( validated ) {
+      validated.clear();
+    }
+  }
+
   public boolean validateConnectionInDesignTime() {
 
     // check server
@@ -86,7 +215,7 @@ public class ConnectionValidator {
       return false; // exit
     }
 
-    boolean isAuthenticated = !publishRestUtil.isUnauthenticatedUser( this.connection );
+    boolean isAuthenticated = !publishRestUtil.get().isUnauthenticatedUser( this.connection );
     if ( !isAuthenticated ) {
       this.showError(
           getMsg( "JobEntryDatasourcePublish.Test.UsernamePasswordFail" ),
@@ -106,7 +235,7 @@ public class ConnectionValidator {
       return true; // valid
 
     } else {
-      if ( publishRestUtil.getLastHTTPStatus() == 404 ) {
+      if ( getLastHTTPStatus() == 404 ) {
         this.showError(
             getMsg( "JobEntryDatasourcePublish.Test.BadURL" ),
             getMsg( "JobEntryDatasourcePublish.Test.BadURLMsg" ) );
@@ -125,12 +254,12 @@ public class ConnectionValidator {
   }
 
   public boolean isUserInfoProvided() {
-    return publishRestUtil.isUserInfoProvided( this.connection );
+    return publishRestUtil.get().isUserInfoProvided( this.connection );
   }
 
   public boolean isPentahoServer() {
     try {
-      return isBiServerConnectionProvided() && publishRestUtil.isPentahoServer( this.connection );
+      return isBiServerConnectionProvided() && publishRestUtil.get().isPentahoServer( this.connection );
     } catch ( Exception e ) {
       logger.warning( e.getLocalizedMessage() );
       return false;
@@ -139,21 +268,36 @@ public class ConnectionValidator {
 
   public boolean canConnect() {
 
-    if ( !isPentahoServer() ) {
+    // already checked by the runtime validation
+    if ( !serverVerified && !isPentahoServer() ) {
       return false;
     }
 
-    boolean canPublish = publishRestUtil.canPublish( this.connection );
-    if ( !canPublish ) {
-      return false;
+    Future<Integer> canManageDatasources = checks.submit( () -> check( PublishRestUtil::canManageDatasources ) );
+    int canPublish = check( PublishRestUtil::canPublish );
+    try {
+      // the status of the first failing check, as when they were asked one after the other
+      lastHTTPStatus = canPublish != AUTHORIZED ? canPublish : get( canManageDatasources );
+    } catch ( KettleException e ) {
+      logger.warning( e.getLocalizedMessage() );
+      lastHTTPStatus = -1;
     }
+    return lastHTTPStatus == AUTHORIZED;
+  }
 
-    boolean canManageDatasources = publishRestUtil.canManageDatasources( this.connection );
-    if ( !canManageDatasources ) {
-      return false;
-    }
+  /**
+   * @return {@link #AUTHORIZED}, or the HTTP status of the denied request
+   */
+  private int check( BiFunction<PublishRestUtil, BiServerConnection, Boolean> permission ) {
+    PublishRestUtil restUtil = publishRestUtil.get();
+    return permission.apply( restUtil, this.connection ) ? AUTHORIZED : restUtil.getLastHTTPStatus();
+  }
 
-    return true;
+  /**
+   * @return the HTTP status of the permission check that failed in the last {@link #canConnect()}
+   */
+  public int getLastHTTPStatus() {
+    return lastHTTPStatus;
   }
 
   public void showInfo( String title, String message ) {
@@ -168,6 +312,11 @@ public class ConnectionValidator {
 
   public void setConnection( BiServerConnection connection ) {
     this.connection = connection;
+    this.serverVerified = false;
+  }
+
+  public void setLog( LogChannelInterface log ) {
+    this.log = log;
   }
 
   public void setSuppressSuccessMessage( boolean suppressSuccessMessage ) {
@@ -175,7 +324,7 @@ public class ConnectionValidator {
   }
 
   public void setPublishRestUtil( PublishRestUtil publishRestUtil ) {
-    this.publishRestUtil = publishRestUtil;
+    this.publishRestUtil = () -> publishRestUtil;
   }
 
   protected SpoonInterface getSpoon() {
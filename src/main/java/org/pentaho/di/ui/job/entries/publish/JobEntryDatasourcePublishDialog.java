@@ -64,6 +64,7 @@ public class JobEntryDatasourcePublishDialog extends JobEntryDialogBoilerplate<J
   private JobEntryDatasourcePublish jobEntry;
   private DataSourcePublishModel model;
   private Button bForceOverwrite;
+  private Button bBatch;
   private ServerConnectionGroupWrapper serverConnectionGroupWrapper;
   private ComboVar wAccessType;
   private TextVar wUserOrRoleAcl;
@@ -98,6 +99,14 @@ public class JobEntryDatasourcePublishDialog extends JobEntryDialogBoilerplate<J
 
     positionControlBelow( bForceOverwrite, null, 0 );
 
+    // Batch Flag
+    bBatch = new Button( composite, SWT.CHECK );
+    bBatch.setToolTipText( getMsg( "JobEntryDatasourcePublish.Batch.Tooltip" ) );
+    bBatch.setText( getMsg( "JobEntryDatasourcePublish.Batch.Label" ) );
+    props.setLook( bBatch );
+
+    positionControlBelow( bBatch, bForceOverwrite, DEFAULT_CONTROLS_TOP_MARGIN );
+
     return composite;
   }
 
@@ -204,6 +213,7 @@ public class JobEntryDatasourcePublishDialog extends JobEntryDialogBoilerplate<J
     }
 
     this.bForceOverwrite.setSelection( this.model.isOverride() );
+    this.bBatch.setSelection( this.model.isBatch() );
     if ( this.model.getUserOrRole() != null ) {
       this.wUserOrRoleAcl.setText( this.model.getUserOrRole() );
     }
@@ -244,6 +254,7 @@ public class JobEntryDatasourcePublishDialog extends JobEntryDialogBoilerplate<J
     DataSourcePublishModel dataSourcePublishModel = new DataSourcePublishModel();
 
     dataSourcePublishModel.setOverride( bForceOverwrite.getSelection() );
+    dataSourcePublishModel.setBatch( bBatch.getSelection() );
 
     if ( resolveVariables ) {
       dataSourcePublishModel.setAccessType( getAccessTypeCodeFromDescription(
@@ -42,6 +42,7 @@ import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.gui.SpoonFactory;
 import org.pentaho.di.core.gui.SpoonInterface;
 import org.pentaho.di.core.plugins.PluginInterface;
+import org.pentaho.di.core.refinery.ModelAnnotationGroupCache;
 import org.pentaho.di.core.refinery.publish.util.ObjectUtils;
 import org.pentaho.di.core.util.StringUtil;
 import org.pentaho.di.i18n.BaseMessages;
@@ -825,6 +826,7 @@ public abstract class BaseAnnotationStepDialog extends BaseStepDialog implements
         String groupName = markedForDeletion.pop();
         if ( getModelAnnotationManger().containsGroup( groupName, getMetaStore() ) ) {
           getModelAnnotationManger().deleteGroup( groupName, getMetaStore() );
+          ModelAnnotationGroupCache.getInstance().invalidate( sharedDimensions, groupName, getMetaStore() );
         }
       } catch ( MetaStoreException e ) {
         logError( e.getLocalizedMessage(), e );
@@ -61,6 +61,7 @@ public class ModelAnnotationDialog extends BaseAnnotationStepDialog {
   private ModelAnnotationsTableComposite tableComposite;
   private Button bLocal;
   private Button bLinked;
+  private Button wProfileFields;
   private Listener lsLinked;
   private Listener lsLocal;
 
@@ -170,6 +171,27 @@ public class ModelAnnotationDialog extends BaseAnnotationStepDialog {
     return wLocalLinked;
   }
 
+  private Control createProfileFields( final Control topWidget ) {
+    wProfileFields = new Button( shell, SWT.CHECK );
+    wProfileFields.setText( BaseMessages.getString( PKG, "ModelAnnotation.ProfileFields.Label" ) );
+    wProfileFields.setToolTipText( BaseMessages.getString( PKG, "ModelAnnotation.ProfileFields.Tooltip" ) );
+    props.setLook( wProfileFields );
+
+    FormData fdProfileFields = new FormData();
+    fdProfileFields.top = new FormAttachment( topWidget, 10 );
+    fdProfileFields.left = new FormAttachment( 0, LEFT_MARGIN_OFFSET );
+    fdProfileFields.right = new FormAttachment( 100, RIGHT_MARGIN_OFFSET );
+    wProfileFields.setLayoutData( fdProfileFields );
+
+    wProfileFields.addListener( SWT.Selection, new Listener() {
+      @Override public void handleEvent( Event event ) {
+        wApply.setEnabled( true );
+      }
+    } );
+
+    return wProfileFields;
+  }
+
   private void positionControl( Composite composite, Control topWidget ) {
 
     FormData fData = new FormData();
@@ -256,6 +278,7 @@ public class ModelAnnotationDialog extends BaseAnnotationStepDialog {
     Control top = topWidget;
     top = createLocalLinked( top );
     top = createDescription( top );
+    top = createProfileFields( top );
     createFieldsTable( top );
     resizeSummaryColumn( tableComposite );
 
@@ -282,6 +305,7 @@ public class ModelAnnotationDialog extends BaseAnnotationStepDialog {
 
   @Override
   protected void afterOpen() {
+    wProfileFields.setSelection( input.isProfileFields() );
     populateCategories( envSub( input.getModelAnnotationCategory() ), false );
     if ( StringUtils.isBlank( envSub( input.getModelAnnotationCategory() ) ) ) {
       populateTable( input.getModelAnnotations() );
@@ -351,8 +375,10 @@ public class ModelAnnotationDialog extends BaseAnnotationStepDialog {
             || changed
             || !stepname.equals( wStepname.getText() )
             || !input.getModelAnnotations().equals( tableComposite.getData() )
-            || !StringUtils.equals( input.getModelAnnotations().getDescription(), wDescription.getText() ) );
+            || !StringUtils.equals( input.getModelAnnotations().getDescription(), wDescription.getText() )
+            || input.isProfileFields() != wProfileFields.getSelection() );
     stepname = wStepname.getText(); // return value
+    input.setProfileFields( wProfileFields.getSelection() );
     input.setModelAnnotations( tableComposite.getData() );
     input.getModelAnnotations().setName( getWGroups().getText() );
     input.getModelAnnotations().setDescription( wDescription.getText() );
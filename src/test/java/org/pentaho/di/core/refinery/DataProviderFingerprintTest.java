@@ -0,0 +1,69 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery;
+
+import org.junit.Test;
+import org.pentaho.agilebi.modeler.models.annotations.data.ColumnMapping;
+import org.pentaho.agilebi.modeler.models.annotations.data.DataProvider;
+import org.pentaho.metadata.model.concept.types.DataType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataProviderFingerprintTest {
+
+  private static DataProvider provider( String table, String... columns ) {
+    DataProvider provider = new DataProvider();
+    provider.setName( "out" );
+    provider.setDatabaseMetaNameRef( "conn" );
+    provider.setSchemaName( "public" );
+    provider.setTableName( table );
+    List<ColumnMapping> columnMappings = new ArrayList<ColumnMapping>();
+    for ( String column : columns ) {
+      ColumnMapping columnMapping = new ColumnMapping();
+      columnMapping.setName( column );
+      columnMapping.setColumnName( column );
+      columnMapping.setColumnDataType( DataType.STRING );
+      columnMappings.add( columnMapping );
+    }
+    provider.setColumnMappings( columnMappings );
+    return provider;
+  }
+
+  @Test
+  public void testSameContentSameFingerprint() {
+    assertEquals( DataProviderFingerprint.of( provider( "t", "a", "b" ) ),
+        DataProviderFingerprint.of( provider( "t", "a", "b" ) ) );
+    DataProvider renamed = provider( "t", "a", "b" );
+    renamed.setName( "other step" );
+    assertTrue( DataProviderFingerprint.sameContent( provider( "t", "a", "b" ), renamed ) );
+  }
+
+  @Test
+  public void testContentChanges() {
+    String fingerprint = DataProviderFingerprint.of( provider( "t", "a", "b" ) );
+    assertNotEquals( fingerprint, DataProviderFingerprint.of( provider( "t2", "a", "b" ) ) );
+    assertNotEquals( fingerprint, DataProviderFingerprint.of( provider( "t", "a" ) ) );
+    assertNotEquals( fingerprint, DataProviderFingerprint.of( provider( "t", "ab" ) ) );
+
+    DataProvider retyped = provider( "t", "a", "b" );
+    retyped.getColumnMappings().get( 1 ).setColumnDataType( DataType.NUMERIC );
+    assertFalse( DataProviderFingerprint.sameContent( provider( "t", "a", "b" ), retyped ) );
+  }
+}
@@ -42,6 +42,8 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
@@ -312,4 +314,126 @@ public class DataProviderHelperTest {
     }
   }
 
+  @Test
+  public void testFlushCoalescesGroupsAndConnections() throws Exception {
+    IMetaStore metaStore = mock( IMetaStore.class );
+    final DatabaseMeta dbMeta =
+        new DatabaseMeta( "dbmetaTest", "postgresql", "Native", "somehost", "db", "3001", "user", "pass" );
+    final ModelAnnotationManager manager = mock( ModelAnnotationManager.class );
+    when( manager.storeDatabaseMeta( any( DatabaseMeta.class ), eq( metaStore ) ) ).thenReturn( "uniqueId" );
+    DataProviderHelper helper = new DataProviderHelper( metaStore ) {
+      protected ModelAnnotationManager getModelAnnotationManager() {
+        return manager;
+      };
+    };
+    // two steps annotating the same shared dimension, each with its own copy of the group
+    ModelAnnotationGroup group1 = new ModelAnnotationGroup();
+    group1.setName( "mag" );
+    ModelAnnotationGroup group2 = new ModelAnnotationGroup();
+    group2.setName( "mag" );
+
+    helper.addDataProvider( group1, tableOutputCombi( "out1", dbMeta, "table1" ) );
+    helper.addDataProvider( group2, tableOutputCombi( "out2", dbMeta, "table2" ) );
+    verify( manager, never() ).updateGroup( any( ModelAnnotationGroup.class ), any( IMetaStore.class ) );
+    assertTrue( helper.hasPendingUpdates() );
+
+    helper.flush();
+    assertFalse( helper.hasPendingUpdates() );
+    verify( manager, times( 1 ) ).storeDatabaseMeta( any( DatabaseMeta.class ), eq( metaStore ) );
+    verify( manager, times( 1 ) ).updateGroup( group1, metaStore );
+    assertEquals( 2, group1.getDataProviders().size() );
+    assertEquals( "table1", group1.getDataProviders().get( 0 ).getTableName() );
+    assertEquals( "table2", group1.getDataProviders().get( 1 ).getTableName() );
+  }
+
+  @Test
+  public void testUnchangedProviderIsNotWritten() throws Exception {
+    IMetaStore metaStore = mock( IMetaStore.class );
+    final DatabaseMeta dbMeta =
+        new DatabaseMeta( "dbmetaTest", "postgresql", "Native", "somehost", "db", "3001", "user", "pass" );
+    final ModelAnnotationManager manager = mock( ModelAnnotationManager.class );
+    when( manager.storeDatabaseMeta( any( DatabaseMeta.class ), eq( metaStore ) ) ).thenReturn( "uniqueId" );
+    DataProviderHelper helper = new DataProviderHelper( metaStore ) {
+      protected ModelAnnotationManager getModelAnnotationManager() {
+        return manager;
+      };
+    };
+    ModelAnnotationGroup group = new ModelAnnotationGroup();
+    group.setName( "mag" );
+
+    helper.updateDataProvider( group, tableOutputCombi( "out1", dbMeta, "table1" ) );
+    // same load again
+    helper.updateDataProvider( group, tableOutputCombi( "out1", dbMeta, "table1" ) );
+    verify( manager, times( 1 ) ).updateGroup( group, metaStore );
+
+    // new column
+    StepMetaDataCombi changed = tableOutputCombi( "out1", dbMeta, "table1" );
+    ( (TableOutputData) changed.data ).insertRowMeta =
+        getRowMeta( new ValueMetaInteger( "id" ), new ValueMetaString( "name" ) );
+    helper.updateDataProvider( group, changed );
+    verify( manager, times( 2 ) ).updateGroup( group, metaStore );
+    assertEquals( 1, group.getDataProviders().size() );
+    assertEquals( 2, group.getDataProviders().get( 0 ).getColumnMappings().size() );
+  }
+
+  @Test
+  public void testStoredConnectionIsNotWrittenAgain() throws Exception {
+    IMetaStore metaStore = mock( IMetaStore.class );
+    final DatabaseMeta dbMeta =
+        new DatabaseMeta( "dbmetaTest", "postgresql", "Native", "somehost", "db", "3001", "user", "pass" );
+    final ModelAnnotationManager manager = mock( ModelAnnotationManager.class );
+    when( manager.storeDatabaseMeta( any( DatabaseMeta.class ), eq( metaStore ) ) ).thenReturn( "dbmetaTest" );
+    ModelAnnotationGroup group = new ModelAnnotationGroup();
+    group.setName( "mag" );
+
+    // every flush of a job run uses a new helper
+    for ( int i = 0; i < 2; i++ ) {
+      DataProviderHelper helper = new DataProviderHelper( metaStore ) {
+        protected ModelAnnotationManager getModelAnnotationManager() {
+          return manager;
+        };
+      };
+      helper.updateDataProvider( group, tableOutputCombi( "out1", dbMeta, "table1" ) );
+    }
+    verify( manager, times( 1 ) ).storeDatabaseMeta( any( DatabaseMeta.class ), eq( metaStore ) );
+
+    // same connection with other settings
+    DatabaseMeta moved = (DatabaseMeta) dbMeta.clone();
+    moved.setHostname( "otherhost" );
+    DataProviderHelper helper = new DataProviderHelper( metaStore ) {
+      protected ModelAnnotationManager getModelAnnotationManager() {
+        return manager;
+      };
+    };
+    helper.updateDataProvider( group, tableOutputCombi( "out1", moved, "table1" ) );
+    verify( manager, times( 2 ) ).storeDatabaseMeta( any( DatabaseMeta.class ), eq( metaStore ) );
+
+    // once expired the connection is stored again, it may have been deleted since
+    System.setProperty( ModelAnnotationGroupCache.TTL_PROPERTY, "0" );
+    try {
+      helper.updateDataProvider( group, tableOutputCombi( "out1", moved, "table1" ) );
+    } finally {
+      System.clearProperty( ModelAnnotationGroupCache.TTL_PROPERTY );
+    }
+    verify( manager, times( 3 ) ).storeDatabaseMeta( any( DatabaseMeta.class ), eq( metaStore ) );
+  }
+
+  private StepMetaDataCombi tableOutputCombi( String stepName, DatabaseMeta dbMeta, String table ) {
+    TableOutputMeta tableOutMeta = new TableOutputMeta();
+    tableOutMeta.setDefault();
+    tableOutMeta.setDatabaseMeta( dbMeta );
+    tableOutMeta.setTableName( table );
+    StepMetaDataCombi combi = new StepMetaDataCombi();
+    combi.stepname = stepName;
+    TableOutputData tableOutData = new TableOutputData();
+    tableOutData.insertRowMeta = getRowMeta( new ValueMetaInteger( "id" ) );
+    TableOutput tableOutStep = mock( TableOutput.class );
+    when( tableOutStep.environmentSubstitute( table ) ).thenReturn( table );
+    combi.meta = tableOutMeta;
+    combi.stepMeta = new StepMeta( stepName, tableOutMeta );
+    combi.data = tableOutData;
+    combi.step = tableOutStep;
+    return combi;
+  }
+
 }
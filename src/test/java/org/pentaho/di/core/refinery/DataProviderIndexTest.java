@@ -0,0 +1,78 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery;
+
+import org.junit.Test;
+import org.pentaho.agilebi.modeler.models.annotations.data.ColumnMapping;
+import org.pentaho.agilebi.modeler.models.annotations.data.DataProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DataProviderIndexTest {
+
+  private static DataProvider provider( String ref, String schema, String table, String column ) {
+    DataProvider provider = new DataProvider();
+    provider.setDatabaseMetaNameRef( ref );
+    provider.setSchemaName( schema );
+    provider.setTableName( table );
+    ColumnMapping columnMapping = new ColumnMapping();
+    columnMapping.setName( column );
+    columnMapping.setColumnName( column );
+    provider.setColumnMappings( new ArrayList<ColumnMapping>( Collections.singletonList( columnMapping ) ) );
+    return provider;
+  }
+
+  @Test
+  public void testUpsert() {
+    List<DataProvider> providers = new ArrayList<DataProvider>();
+    DataProvider existing = provider( "conn", null, "dim_date", "a" );
+    providers.add( existing );
+    DataProviderIndex index = new DataProviderIndex( providers );
+
+    assertSame( existing, index.get( "conn", null, "dim_date" ) );
+    assertNull( index.get( "conn", "public", "dim_date" ) );
+
+    assertFalse( index.upsert( provider( "conn", null, "dim_date", "a" ) ) );
+    assertTrue( index.upsert( provider( "conn", null, "dim_date", "b" ) ) );
+    assertEquals( 1, providers.size() );
+    assertEquals( "b", existing.getColumnMappings().get( 0 ).getColumnName() );
+
+    DataProvider other = provider( "conn", "public", "dim_date", "a" );
+    assertTrue( index.upsert( other ) );
+    assertEquals( 2, providers.size() );
+    assertSame( other, index.get( "conn", "public", "dim_date" ) );
+  }
+
+  @Test
+  public void testManyProviders() {
+    List<DataProvider> providers = new ArrayList<DataProvider>();
+    DataProviderIndex index = new DataProviderIndex( providers );
+    for ( int i = 0; i < 5000; i++ ) {
+      assertTrue( index.upsert( provider( "conn" + ( i % 7 ), "s", "fact" + i, "c" ) ) );
+    }
+    for ( int i = 0; i < 5000; i++ ) {
+      assertFalse( index.upsert( provider( "conn" + ( i % 7 ), "s", "fact" + i, "c" ) ) );
+    }
+    assertEquals( 5000, index.size() );
+    assertEquals( "fact42", index.get( "conn0", "s", "fact42" ).getTableName() );
+  }
+}
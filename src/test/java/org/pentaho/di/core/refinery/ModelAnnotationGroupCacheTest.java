@@ -0,0 +1,181 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.agilebi.modeler.models.annotations.CreateAttribute;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotation;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroup;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationManager;
+import org.pentaho.metastore.api.IMetaStore;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ModelAnnotationGroupCacheTest {
+
+  private ModelAnnotationGroupCache cache;
+  private ModelAnnotationManager manager;
+  private IMetaStore metaStore;
+
+  @Before
+  public void setUp() throws Exception {
+    cache = new ModelAnnotationGroupCache( 2 );
+    manager = mock( ModelAnnotationManager.class );
+    metaStore = mock( IMetaStore.class );
+    when( manager.readGroup( "g1", metaStore ) ).thenAnswer( invocation -> createGroup( "g1" ) );
+    when( manager.readGroup( "g2", metaStore ) ).thenAnswer( invocation -> createGroup( "g2" ) );
+    when( manager.readGroup( "g3", metaStore ) ).thenAnswer( invocation -> createGroup( "g3" ) );
+  }
+
+  private static ModelAnnotationGroup createGroup( String name ) {
+    CreateAttribute ca = new CreateAttribute();
+    ca.setName( "attr" );
+    ca.setField( "field" );
+    ModelAnnotationGroup group = new ModelAnnotationGroup( new ModelAnnotation<CreateAttribute>( ca ) );
+    group.setName( name );
+    return group;
+  }
+
+  @Test
+  public void testSecondReadIsServedFromCache() throws Exception {
+    ModelAnnotationGroup first = cache.readGroup( manager, false, "g1", metaStore );
+    ModelAnnotationGroup second = cache.readGroup( manager, false, "g1", metaStore );
+
+    verify( manager, times( 1 ) ).readGroup( "g1", metaStore );
+    assertNotSame( first, second );
+    assertEquals( "g1", second.getName() );
+    assertEquals( 1, second.size() );
+    assertEquals( "field", second.get( 0 ).getAnnotation().getField() );
+    assertEquals( 1, cache.getHits() );
+    assertEquals( 1, cache.getMisses() );
+  }
+
+  @Test
+  public void testCopiesAreIndependent() throws Exception {
+    cache.readGroup( manager, false, "g1", metaStore );
+    ModelAnnotationGroup copy = cache.readGroup( manager, false, "g1", metaStore );
+    copy.clear();
+
+    assertEquals( 1, cache.readGroup( manager, false, "g1", metaStore ).size() );
+  }
+
+  @Test
+  public void testNamespaceAndMetaStoreArePartOfTheKey() throws Exception {
+    IMetaStore otherMetaStore = mock( IMetaStore.class );
+    when( manager.readGroup( "g1", otherMetaStore ) ).thenAnswer( invocation -> createGroup( "g1" ) );
+
+    cache.readGroup( manager, false, "g1", metaStore );
+    cache.readGroup( manager, true, "g1", metaStore );
+    cache.readGroup( manager, false, "g1", otherMetaStore );
+
+    verify( manager, times( 2 ) ).readGroup( "g1", metaStore );
+    verify( manager, times( 1 ) ).readGroup( "g1", otherMetaStore );
+    assertEquals( 0, cache.getHits() );
+  }
+
+  @Test
+  public void testInvalidateForcesReload() throws Exception {
+    cache.readGroup( manager, true, "g1", metaStore );
+    cache.invalidate( true, "g1", metaStore );
+    cache.readGroup( manager, true, "g1", metaStore );
+
+    verify( manager, times( 2 ) ).readGroup( "g1", metaStore );
+  }
+
+  @Test
+  public void testReadRacingWithInvalidateIsNotCached() throws Exception {
+    when( manager.readGroup( "g1", metaStore ) ).thenAnswer( invocation -> {
+      // the group gets updated while it is being read
+      cache.invalidate( false, "g1", metaStore );
+      return createGroup( "g1" );
+    } );
+    cache.readGroup( manager, false, "g1", metaStore );
+
+    assertEquals( 0, cache.size() );
+  }
+
+  @Test
+  public void testMissingGroupIsCachedUntilCreated() throws Exception {
+    assertNull( cache.readGroup( manager, false, "missing", metaStore ) );
+    assertNull( cache.readGroup( manager, false, "missing", metaStore ) );
+
+    verify( manager, times( 1 ) ).readGroup( "missing", metaStore );
+    assertEquals( 1, cache.size() );
+
+    when( manager.readGroup( "missing", metaStore ) ).thenAnswer( invocation -> createGroup( "missing" ) );
+    cache.invalidate( false, "missing", metaStore );
+    assertEquals( "missing", cache.readGroup( manager, false, "missing", metaStore ).getName() );
+  }
+
+  @Test
+  public void testSizeIsBounded() throws Exception {
+    cache.readGroup( manager, false, "g1", metaStore );
+    cache.readGroup( manager, false, "g2", metaStore );
+    cache.readGroup( manager, false, "g1", metaStore );
+    cache.readGroup( manager, false, "g3", metaStore );
+
+    assertEquals( 2, cache.size() );
+    // g2 was least recently used
+    cache.readGroup( manager, false, "g2", metaStore );
+    verify( manager, times( 2 ) ).readGroup( "g2", metaStore );
+    verify( manager, times( 1 ) ).readGroup( "g1", metaStore );
+  }
+
+  @Test
+  public void testExpiredGroupIsReadAgain() throws Exception {
+    AtomicLong now = new AtomicLong( 1000L );
+    cache = new ModelAnnotationGroupCache( 2, now::get );
+    cache.readGroup( manager, false, "g1", metaStore );
+    now.addAndGet( ModelAnnotationGroupCache.DEFAULT_TTL - 1 );
+    cache.readGroup( manager, false, "g1", metaStore );
+    verify( manager, times( 1 ) ).readGroup( "g1", metaStore );
+
+    // written by another process sharing the metastore
+    now.incrementAndGet();
+    cache.readGroup( manager, false, "g1", metaStore );
+    verify( manager, times( 2 ) ).readGroup( "g1", metaStore );
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    System.setProperty( ModelAnnotationGroupCache.TTL_PROPERTY, "0" );
+    try {
+      cache.readGroup( manager, false, "g1", metaStore );
+      cache.readGroup( manager, false, "g1", metaStore );
+      verify( manager, times( 2 ) ).readGroup( "g1", metaStore );
+      assertEquals( 0, cache.size() );
+    } finally {
+      System.clearProperty( ModelAnnotationGroupCache.TTL_PROPERTY );
+    }
+  }
+
+  @Test
+  public void testGroupsOfCollectedMetaStoreArePurged() throws Exception {
+    IMetaStore otherMetaStore = mock( IMetaStore.class );
+    when( manager.readGroup( "g1", otherMetaStore ) ).thenAnswer( invocation -> createGroup( "g1" ) );
+    cache.readGroup( manager, false, "g1", otherMetaStore );
+    assertEquals( 1, cache.size() );
+
+    otherMetaStore = null;
+    for ( int i = 0; i < 50 && cache.size() > 0; i++ ) {
+      System.gc();
+      Thread.sleep( 20 );
+    }
+    assertEquals( 0, cache.size() );
+  }
+}
@@ -0,0 +1,71 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.extension;
+
+import org.junit.Test;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.refinery.DataProviderHelper;
+import org.pentaho.di.job.Job;
+import org.pentaho.di.job.JobListener;
+import org.pentaho.metastore.api.exceptions.MetaStoreException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+public class DataProviderUpdateQueueTest {
+
+  @Test
+  public void testOneQueuePerJob() throws Exception {
+    Job job = mock( Job.class );
+    Map<String, Object> map = new HashMap<>();
+    when( job.getExtensionDataMap() ).thenReturn( map );
+
+    DataProviderUpdateQueue queue = DataProviderUpdateQueue.getOrCreate( job );
+    assertSame( queue, DataProviderUpdateQueue.getOrCreate( job ) );
+    assertSame( queue, map.get( DataProviderUpdateQueue.KEY ) );
+    verify( job, times( 1 ) ).addJobListener( any( JobListener.class ) );
+  }
+
+  @Test
+  public void testAwaitWaitsForSubmittedUpdates() throws Exception {
+    Job job = mock( Job.class );
+    when( job.getExtensionDataMap() ).thenReturn( new HashMap<String, Object>() );
+    LogChannelInterface log = mock( LogChannelInterface.class );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    DataProviderHelper helper = mock( DataProviderHelper.class );
+    doAnswer( invocation -> {
+      release.await();
+      return null;
+    } ).when( helper ).flush();
+    DataProviderHelper failing = mock( DataProviderHelper.class );
+    doThrow( new MetaStoreException( "boom" ) ).when( failing ).flush();
+
+    DataProviderUpdateQueue queue = DataProviderUpdateQueue.getOrCreate( job );
+    queue.submit( helper, log );
+    queue.submit( failing, log );
+    assertEquals( 2, queue.getPendingCount() );
+    release.countDown();
+
+    DataProviderUpdateQueue.await( job, log );
+    assertEquals( 0, queue.getPendingCount() );
+    verify( helper ).flush();
+    verify( failing ).flush();
+    verify( log ).logError( anyString(), any( MetaStoreException.class ) );
+  }
+}
@@ -25,10 +25,12 @@ import org.pentaho.di.core.row.value.ValueMetaBase;
 import org.pentaho.di.job.entries.build.JobEntryBuildModel;
 import org.pentaho.di.job.entry.JobEntryBase;
 
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.pentaho.di.core.row.ValueMetaInterface.*;
@@ -112,6 +114,58 @@ public class AnalysisModelerTest {
     }
   }
 
+  @Test
+  public void testStreamedUpdateAnalysisModel() throws Exception {
+    String expectedSchema = IOUtils.toString( getClass().getResourceAsStream( "resources/newTableAnalysisSchema.xml" ) );
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    getAnalysisModeler().replaceTableAndSchemaNames(
+      getClass().getResourceAsStream( "resources/testAnalysisSchema.xml" ), out, "newModel" );
+    assertEquals( expectedSchema.replaceAll( "\r", "" ), out.toString( "UTF-8" ).replaceAll( "\r", "" ) );
+  }
+
+  @Test
+  public void testStreamedSchemaIsValidated() throws Exception {
+    try {
+      getAnalysisModeler().replaceTableAndSchemaNames(
+        getClass().getResourceAsStream( "resources/multiCubeAnalysisSchema.xml" ), new ByteArrayOutputStream(),
+        "newModel" );
+      Assert.fail( "should have thrown exception" );
+    } catch ( KettleException e ) {
+      assertEquals(
+        getString( JobEntryBuildModel.class, "AnalysisModeler.SelectModelErrorMultipleCubes" ),
+        e.getMessage().trim() );
+    }
+  }
+
+  @Test
+  public void testModelNameIsEscaped() throws Exception {
+    String schema = IOUtils.toString( getClass().getResourceAsStream( "resources/testAnalysisSchema.xml" ) );
+    String first = getAnalysisModeler().replaceTableAndSchemaNames( schema, "Sales & <Returns>" );
+    assertTrue( first.contains( "<Schema name=\"Sales &amp; &lt;Returns" ) );
+    // nothing of the first rename is kept
+    String second = getAnalysisModeler().replaceTableAndSchemaNames( schema, "newModel" );
+    assertTrue( second.contains( "<Schema name=\"newModel\"" ) );
+  }
+
+  @Test
+  public void testStaleTableFieldsAreReloaded() throws Exception {
+    String schema = IOUtils.toString( getClass().getResourceAsStream( "resources/testAnalysisSchema.xml" ) );
+    final AnalysisModeler fresh = getAnalysisModeler();
+    final int[] reads = new int[1];
+    AnalysisModeler modeler = new AnalysisModeler( new JobEntryBase( ), connectionInfo ) {
+      @Override List<ValueMetaInterface> getFieldsInDatabase() throws KettleDatabaseException {
+        // cached before the SALES column was added
+        return reads[0]++ == 0 ? fresh.getFieldsInDatabase().subList( 0, 8 ) : fresh.getFieldsInDatabase();
+      }
+
+      @Override boolean invalidateFieldsInDatabase() {
+        return true;
+      }
+    };
+    modeler.replaceTableAndSchemaNames( schema, "newModel" );
+    assertEquals( 2, reads[0] );
+  }
+
   private AnalysisModeler getAnalysisModeler() {
     return new AnalysisModeler( new JobEntryBase( ), connectionInfo ) {
       @Override List<ValueMetaInterface> getFieldsInDatabase()
@@ -23,13 +23,21 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.Configuration;
 import org.osgi.service.cm.ConfigurationAdmin;
 import org.pentaho.agilebi.modeler.ModelerException;
+import org.pentaho.agilebi.modeler.geo.GeoContext;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -131,4 +139,54 @@ public class GeoContextBlueprintConfigProviderTest {
 
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testGeoContextIsBuiltOncePerConfiguration() throws Exception {
+    geoContextProvider.updated( geoRoles() );
+    GeoContext geoContext = geoContextProvider.getGeoContext();
+    assertNotNull( geoContext );
+    assertSame( geoContext, geoContextProvider.getGeoContext() );
+
+    Hashtable<String, Object> updated = geoRoles();
+    updated.put( "geo.dimension.name", "Location" );
+    geoContextProvider.updated( updated );
+    GeoContext updatedContext = geoContextProvider.getGeoContext();
+    assertNotSame( geoContext, updatedContext );
+    assertEquals( "Location", updatedContext.getDimensionName() );
+  }
+
+  @Test
+  public void testNoGeoContextWithoutRoles() throws Exception {
+    geoContextProvider.updated( null );
+    assertNull( geoContextProvider.getGeoContext() );
+  }
+
+  @Test
+  public void testInvalidConfigurationFailsUntilUpdated() throws Exception {
+    Hashtable<String, Object> invalid = new Hashtable<>();
+    invalid.put( "geo.roles", "country" );
+    geoContextProvider.updated( invalid );
+    for ( int i = 0; i < 2; i++ ) {
+      try {
+        geoContextProvider.getGeoContext();
+        fail();
+      } catch ( ModelerException e ) {
+        assertTrue( e.getMessage().contains( "geo.country.aliases" ) );
+      }
+    }
+
+    geoContextProvider.updated( geoRoles() );
+    assertNotNull( geoContextProvider.getGeoContext() );
+  }
+
+  private Hashtable<String, Object> geoRoles() throws IOException {
+    Properties properties = new Properties();
+    try ( InputStream in = getClass().getResourceAsStream( "/geoRoles.properties" ) ) {
+      properties.load( in );
+    }
+    Hashtable<String, Object> props = new Hashtable<>();
+    for ( String key : properties.stringPropertyNames() ) {
+      props.put( key, properties.getProperty( key ) );
+    }
+    return props;
+  }
+}
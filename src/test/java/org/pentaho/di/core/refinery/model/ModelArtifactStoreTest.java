@@ -0,0 +1,176 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.model;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModelArtifactStoreTest {
+
+  private static final String XMI = "<xmi:XMI name=\"münchen\"/>";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final ModelArtifactStore store = new ModelArtifactStore();
+
+  @Test
+  public void testPlainValuesAreReadAsIs() throws Exception {
+    assertFalse( ModelArtifactStore.isHandle( XMI ) );
+    assertFalse( ModelArtifactStore.isHandle( null ) );
+    assertEquals( XMI, store.resolve( XMI ) );
+    try ( InputStream in = store.openStream( XMI ) ) {
+      assertEquals( XMI, IOUtils.toString( in, StandardCharsets.UTF_8 ) );
+    }
+  }
+
+  @Test
+  public void testStoredArtifactIsReadThroughItsHandle() throws Exception {
+    String handle = store.put( XMI );
+    assertTrue( ModelArtifactStore.isHandle( handle ) );
+    assertEquals( XMI, store.resolve( handle ) );
+    try ( InputStream in = store.openStream( handle ) ) {
+      assertEquals( XMI, IOUtils.toString( in, StandardCharsets.UTF_8 ) );
+    }
+    assertEquals( 1, store.size() );
+    store.release( handle );
+    assertEquals( 0, store.size() );
+  }
+
+  @Test
+  public void testOpenStreamKeepsArtifactUntilClosed() throws Exception {
+    String handle = store.put( XMI );
+    InputStream in = store.openStream( handle );
+    store.release( handle );
+    assertEquals( 1, store.size() );
+    assertEquals( XMI, IOUtils.toString( in, StandardCharsets.UTF_8 ) );
+    in.close();
+    in.close();
+    assertEquals( 0, store.size() );
+  }
+
+  @Test( expected = KettleException.class )
+  public void testReleasedArtifactIsGone() throws Exception {
+    String handle = store.put( XMI );
+    store.release( handle );
+    store.resolve( handle );
+  }
+
+  @Test
+  public void testIsLarge() {
+    System.setProperty( ModelArtifactStore.THRESHOLD_PROPERTY, "4" );
+    try {
+      assertTrue( store.isLarge( XMI ) );
+      assertFalse( store.isLarge( "<a/>" ) );
+      assertFalse( store.isLarge( null ) );
+    } finally {
+      System.clearProperty( ModelArtifactStore.THRESHOLD_PROPERTY );
+    }
+  }
+
+  @Test
+  public void testWrittenContentIsStoredOnlyWhenLarge() throws Exception {
+    System.setProperty( ModelArtifactStore.THRESHOLD_PROPERTY, "8" );
+    try {
+      assertEquals( "<a/>", store.write( out -> out.write( "<a/>".getBytes( StandardCharsets.UTF_8 ) ) ) );
+      assertEquals( 0, store.size() );
+
+      String handle = store.write( out -> out.write( XMI.getBytes( StandardCharsets.UTF_8 ) ) );
+      assertTrue( ModelArtifactStore.isHandle( handle ) );
+      assertEquals( XMI, store.resolve( handle ) );
+      store.release( handle );
+      assertEquals( 0, store.size() );
+    } finally {
+      System.clearProperty( ModelArtifactStore.THRESHOLD_PROPERTY );
+    }
+  }
+
+  @Test
+  public void testFailedWriteLeavesNothingBehind() throws Exception {
+    System.setProperty( ModelArtifactStore.THRESHOLD_PROPERTY, "8" );
+    try {
+      store.write( out -> {
+        out.write( XMI.getBytes( StandardCharsets.UTF_8 ) );
+        throw new KettleException( "invalid schema" );
+      } );
+      fail();
+    } catch ( KettleException e ) {
+      assertEquals( 0, store.size() );
+      assertEquals( 1, store.getDirectory().list().length );
+    } finally {
+      System.clearProperty( ModelArtifactStore.THRESHOLD_PROPERTY );
+    }
+  }
+
+  @Test
+  public void testOrphansOfOtherJvmsAreSwept() throws Exception {
+    File configured = folder.newFolder( "tmp" );
+    File root = new File( configured, ModelArtifactStore.SPOOL_DIRECTORY );
+    long old = System.currentTimeMillis() - ModelArtifactStore.SWEEP_GRACE_MS - 1000L;
+    File orphan = jvmDirectory( root, "orphan", old );
+    FileUtils.writeStringToFile( new File( orphan, "data-refinery-1.artifact" ), XMI, StandardCharsets.UTF_8 );
+    FileUtils.touch( new File( orphan, ModelArtifactStore.LOCK_FILE ) );
+    orphan.setLastModified( old );
+    File unlocked = jvmDirectory( root, "unlocked", old );
+    // being set up by another JVM, not locked yet
+    File starting = jvmDirectory( root, "starting", System.currentTimeMillis() );
+    File unrelated = new File( root, "unrelated" );
+    assertTrue( unrelated.mkdirs() );
+    unrelated.setLastModified( old );
+    File besideRoot = new File( configured, ModelArtifactStore.JVM_DIRECTORY_PREFIX + "other-application" );
+    assertTrue( besideRoot.mkdirs() );
+    besideRoot.setLastModified( old );
+
+    System.setProperty( ModelArtifactStore.DIRECTORY_PROPERTY, configured.getPath() );
+    try {
+      String handle = store.put( XMI );
+      assertFalse( orphan.exists() );
+      assertFalse( unlocked.exists() );
+      assertTrue( starting.isDirectory() );
+      assertTrue( unrelated.isDirectory() );
+      assertTrue( besideRoot.isDirectory() );
+      File own = store.getDirectory();
+      assertEquals( root, own.getParentFile() );
+
+      // the directory of a running store is left alone
+      own.setLastModified( old );
+      ModelArtifactStore.sweep( root );
+      assertTrue( own.isDirectory() );
+      assertEquals( XMI, store.resolve( handle ) );
+      store.release( handle );
+    } finally {
+      System.clearProperty( ModelArtifactStore.DIRECTORY_PROPERTY );
+    }
+  }
+
+  private static File jvmDirectory( File root, String name, long lastModified ) {
+    File directory = new File( root, ModelArtifactStore.JVM_DIRECTORY_PREFIX + name );
+    assertTrue( directory.mkdirs() );
+    directory.setLastModified( lastModified );
+    return directory;
+  }
+}
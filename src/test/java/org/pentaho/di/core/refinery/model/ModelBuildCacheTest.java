@@ -0,0 +1,101 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.agilebi.modeler.ModelerWorkspace;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModelBuildCacheTest {
+
+  private static final String XMI = "<xmi:XMI name=\"münchen\"/>";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ModelBuildCache cache = new ModelBuildCache();
+
+  @Before
+  public void setUp() throws Exception {
+    System.setProperty( ModelBuildCache.DIRECTORY_PROPERTY,
+      new File( temporaryFolder.getRoot(), "model-cache" ).getAbsolutePath() );
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty( ModelBuildCache.DIRECTORY_PROPERTY );
+    System.clearProperty( ModelBuildCache.SIZE_PROPERTY );
+  }
+
+  @Test
+  public void testGetWhatWasPut() throws Exception {
+    String fingerprint = new ModelBuildCache.Fingerprint().add( "sales" ).toString();
+    assertNull( cache.get( fingerprint ) );
+    cache.put( fingerprint, XMI );
+    assertEquals( XMI, cache.get( fingerprint ) );
+    assertEquals( 1, cache.size() );
+
+    cache.clear();
+    assertNull( cache.get( fingerprint ) );
+  }
+
+  @Test
+  public void testOldestModelsAreEvicted() throws Exception {
+    System.setProperty( ModelBuildCache.SIZE_PROPERTY, "2" );
+    cache.put( "first", XMI );
+    new File( cache.getDirectory(), "first.xmi" ).setLastModified( 1000L );
+    cache.put( "second", XMI );
+    cache.put( "third", XMI );
+
+    assertEquals( 2, cache.size() );
+    assertNull( cache.get( "first" ) );
+    assertEquals( XMI, cache.get( "third" ) );
+  }
+
+  @Test
+  public void testDisabled() {
+    assertTrue( cache.isEnabled() );
+    System.setProperty( ModelBuildCache.SIZE_PROPERTY, "0" );
+    assertFalse( cache.isEnabled() );
+  }
+
+  @Test
+  public void testFingerprint() {
+    assertEquals( new ModelBuildCache.Fingerprint().add( "a", 1, null ).toString(),
+      new ModelBuildCache.Fingerprint().add( "a", 1, null ).toString() );
+    assertNotEquals( new ModelBuildCache.Fingerprint().add( "ab", "c" ).toString(),
+      new ModelBuildCache.Fingerprint().add( "a", "bc" ).toString() );
+    assertNotEquals( new ModelBuildCache.Fingerprint().add( (Object) null ).toString(),
+      new ModelBuildCache.Fingerprint().add( "" ).toString() );
+    assertEquals( 64, new ModelBuildCache.Fingerprint().toString().length() );
+  }
+
+  @Test
+  public void testFingerprintHasTheModelerVersion() {
+    String modelerVersion = ModelBuildCache.version( ModelerWorkspace.class );
+    assertNotEquals( ModelBuildCache.version( ModelBuildCache.class ), modelerVersion );
+    assertTrue( ModelBuildCache.LIBRARY_VERSIONS.contains( modelerVersion ) );
+  }
+}
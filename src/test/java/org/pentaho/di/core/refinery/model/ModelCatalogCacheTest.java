@@ -0,0 +1,124 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.refinery.model.ModelServerFetcher.DatasourceIds;
+import org.pentaho.di.core.refinery.publish.agilebi.BiServerConnection;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.same;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ModelCatalogCacheTest {
+
+  private final AtomicLong now = new AtomicLong( 1000L );
+  private final ModelCatalogCache cache = new ModelCatalogCache( now::get );
+
+  private BiServerConnection connection;
+  private ModelServerFetcher fetcher;
+  private DatasourceIds analysis;
+  private DatasourceIds dsw;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = new BiServerConnection();
+    connection.setUrl( "http://localhost:8080/pentaho/" );
+    connection.setUserId( "admin" );
+    fetcher = mock( ModelServerFetcher.class );
+    when( fetcher.getBiServerConnection() ).thenReturn( connection );
+    analysis = new DatasourceIds( asList( "SteelWheels" ), "\"a1\"", null );
+    dsw = new DatasourceIds( asList( "Sales.xmi" ), null, "Sat, 17 Oct 2026 10:00:00 GMT" );
+    when( fetcher.fetchAnalysisIds( isNull() ) ).thenReturn( analysis );
+    when( fetcher.fetchDswIds( isNull() ) ).thenReturn( dsw );
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty( ModelCatalogCache.TTL_PROPERTY );
+  }
+
+  @Test
+  public void testCatalogIsAskedOnceWithinTtl() throws Exception {
+    assertTrue( cache.contains( fetcher, "SteelWheels" ) );
+    assertTrue( cache.contains( fetcher, "Sales.xmi" ) );
+    assertFalse( cache.contains( fetcher, "Missing" ) );
+    verify( fetcher, times( 1 ) ).fetchAnalysisIds( isNull() );
+    verify( fetcher, times( 1 ) ).fetchDswIds( isNull() );
+    assertEquals( 1, cache.size() );
+  }
+
+  @Test
+  public void testExpiredCatalogIsRevalidated() throws Exception {
+    cache.contains( fetcher, "SteelWheels" );
+    when( fetcher.fetchAnalysisIds( same( analysis ) ) ).thenReturn( analysis );
+    when( fetcher.fetchDswIds( same( dsw ) ) ).thenReturn(
+      new DatasourceIds( asList( "Sales.xmi", "Orders.xmi" ), null, "Sun, 18 Oct 2026 10:00:00 GMT" ) );
+
+    now.addAndGet( ModelCatalogCache.DEFAULT_TTL );
+    assertTrue( cache.contains( fetcher, "Orders.xmi" ) );
+    assertTrue( cache.contains( fetcher, "SteelWheels" ) );
+    verify( fetcher ).fetchAnalysisIds( same( analysis ) );
+    verify( fetcher ).fetchDswIds( same( dsw ) );
+  }
+
+  @Test
+  public void testPublishInvalidatesTheServerForAllUsers() throws Exception {
+    cache.contains( fetcher, "SteelWheels" );
+    BiServerConnection other = new BiServerConnection();
+    other.setUrl( connection.getUrl() );
+    other.setUserId( "suzy" );
+    cache.invalidate( other );
+    assertEquals( 0, cache.size() );
+
+    cache.contains( fetcher, "SteelWheels" );
+    verify( fetcher, times( 2 ) ).fetchAnalysisIds( isNull() );
+  }
+
+  @Test
+  public void testOtherPasswordIsAskedAgain() throws Exception {
+    connection.setPassword( "password" );
+    cache.contains( fetcher, "SteelWheels" );
+    connection.setPassword( "wrong" );
+    cache.contains( fetcher, "SteelWheels" );
+    verify( fetcher, times( 2 ) ).fetchAnalysisIds( isNull() );
+    assertEquals( 2, cache.size() );
+    assertFalse( ModelCatalogCache.key( connection ).contains( "wrong" ) );
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    System.setProperty( ModelCatalogCache.TTL_PROPERTY, "0" );
+    when( fetcher.fetchAnalysisList() ).thenReturn( Collections.<String>emptyList() );
+    when( fetcher.fetchDswList() ).thenReturn( asList( "Sales.xmi" ) );
+    assertTrue( cache.contains( fetcher, "Sales.xmi" ) );
+    assertTrue( cache.contains( fetcher, "Sales.xmi" ) );
+    verify( fetcher, times( 2 ) ).fetchDswList();
+    verify( fetcher, never() ).fetchDswIds( isNull() );
+    assertEquals( 0, cache.size() );
+  }
+}
@@ -16,11 +16,13 @@ package org.pentaho.di.core.refinery.model;
 import static org.junit.Assert.*;
 
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -100,6 +102,31 @@ public class ModelServerFetcherTest {
     }
   }
 
+  @Test
+  public void testFetchDswIdsKeepsValidators() throws Exception {
+    Response response = mockResponse( 200, "<List><Item>One.xmi</Item></List>" );
+    when( response.getHeaderString( HttpHeaders.ETAG ) ).thenReturn( "\"v1\"" );
+    when( response.getHeaderString( HttpHeaders.LAST_MODIFIED ) ).thenReturn( "Sun, 18 Oct 2026 10:00:00 GMT" );
+    ModelServerFetcher fetcher = createModelServerFetcher();
+    ModelServerFetcher.DatasourceIds ids = fetcher.fetchDswIds( null );
+    assertEquals( Collections.singletonList( "One.xmi" ), ids.getIds() );
+    assertEquals( "\"v1\"", ids.getEntityTag() );
+    assertEquals( "Sun, 18 Oct 2026 10:00:00 GMT", ids.getLastModified() );
+    verify( builder, never() ).header( anyString(), any() );
+  }
+
+  @Test
+  public void testFetchDswIdsNotModified() throws Exception {
+    when( builder.header( anyString(), any() ) ).thenReturn( builder );
+    mockResponse( 304, "" );
+    ModelServerFetcher.DatasourceIds previous =
+      new ModelServerFetcher.DatasourceIds( Collections.singletonList( "One.xmi" ), "\"v1\"", "yesterday" );
+    ModelServerFetcher fetcher = createModelServerFetcher();
+    assertSame( previous, fetcher.fetchDswIds( previous ) );
+    verify( builder ).header( HttpHeaders.IF_NONE_MATCH, "\"v1\"" );
+    verify( builder ).header( HttpHeaders.IF_MODIFIED_SINCE, "yesterday" );
+  }
+
   @Test
   public void testFetchAnalysisList() throws Exception {
     final String okPayload =
@@ -142,6 +169,23 @@ public class ModelServerFetcherTest {
     }
   }
 
+  @Test
+  public void testOpenZippedAnalysisFile() throws Exception {
+    InputStream in = getClass().getResourceAsStream( "/sample.zip" );
+    try {
+      ModelServerFetcher fetcher = createModelServerFetcher();
+      mockResponse( 200, in, "zip" );
+      InputStream schema = fetcher.openAnalysisFile( "Steel Wheels" );
+      try {
+        assertTrue( IOUtils.toString( schema, "UTF-8" ).contains( "Cube name=\"SteelWheelsSales\"" ) );
+      } finally {
+        schema.close();
+      }
+    } finally {
+      IOUtils.closeQuietly( in );
+    }
+  }
+
   @Test
   public void testDownloadAnalysisFileNoAuth() throws Exception {
     ModelServerFetcher fetcher = createModelServerFetcher();
@@ -154,6 +198,18 @@ public class ModelServerFetcherTest {
     }
   }
 
+  @Test
+  public void testOpenAnalysisFileServerErrorClosesResponse() throws Exception {
+    ModelServerFetcher fetcher = createModelServerFetcher();
+    Response response = mockResponse( 500, "oops" );
+    try {
+      fetcher.openAnalysisFile( "SteelWheels" );
+      fail( "no exception" );
+    } catch ( ServerException e ) {
+      verify( response ).close();
+    }
+  }
+
   @Test
   public void testDownloadDswFile() throws Exception {
     InputStream in = getClass().getResourceAsStream( "/Dsw Test.zip" );
@@ -0,0 +1,97 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.model;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TableFieldsCacheTest {
+
+  private long now;
+  private TableFieldsCache cache;
+  private AtomicInteger loads;
+
+  @Before
+  public void setUp() throws Exception {
+    now = 1000L;
+    cache = new TableFieldsCache( () -> now );
+    loads = new AtomicInteger();
+  }
+
+  private TableFieldsCache.Loader loader( final String field ) {
+    return () -> {
+      loads.incrementAndGet();
+      RowMetaInterface rowMeta = new RowMeta();
+      rowMeta.addValueMeta( new ValueMetaString( field ) );
+      return rowMeta;
+    };
+  }
+
+  @Test
+  public void testFieldsAreLoadedOncePerTtl() throws Exception {
+    assertEquals( "a", cache.getTableFields( "k", loader( "a" ) ).getValueMeta( 0 ).getName() );
+    assertEquals( "a", cache.getTableFields( "k", loader( "b" ) ).getValueMeta( 0 ).getName() );
+    assertEquals( 1, loads.get() );
+
+    now += TableFieldsCache.DEFAULT_TTL;
+    assertEquals( "b", cache.getTableFields( "k", loader( "b" ) ).getValueMeta( 0 ).getName() );
+    assertEquals( 2, loads.get() );
+  }
+
+  @Test
+  public void testCallersGetCopies() throws Exception {
+    cache.getTableFields( "k", loader( "a" ) ).addValueMeta( new ValueMetaString( "x" ) );
+    assertEquals( 1, cache.getTableFields( "k", loader( "a" ) ).size() );
+  }
+
+  @Test
+  public void testInvalidate() throws Exception {
+    assertFalse( cache.invalidate( "k" ) );
+    cache.getTableFields( "k", loader( "a" ) );
+    cache.getTableFields( "other", loader( "a" ) );
+    assertTrue( cache.invalidate( "k" ) );
+    assertEquals( 1, cache.size() );
+    cache.getTableFields( "k", loader( "a" ) );
+    assertEquals( 3, loads.get() );
+  }
+
+  @Test
+  public void testExpiredEntriesAreEvicted() throws Exception {
+    cache.getTableFields( "k1", loader( "a" ) );
+    now += TableFieldsCache.DEFAULT_TTL;
+    cache.getTableFields( "k2", loader( "a" ) );
+    assertEquals( 1, cache.size() );
+  }
+
+  @Test( expected = KettleDatabaseException.class )
+  public void testFailedLoadIsNotCached() throws Exception {
+    try {
+      cache.getTableFields( "k", () -> {
+        throw new KettleDatabaseException( "down" );
+      } );
+    } finally {
+      assertEquals( 0, cache.size() );
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.profile;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FieldProfileTest {
+
+  @Test
+  public void testNumericStatistics() {
+    FieldProfile profile = new FieldProfile( "amount", true );
+    profile.add( 1.5 );
+    profile.add( null );
+    profile.add( -2.0 );
+    profile.add( 10.0 );
+
+    assertEquals( 4, profile.getCount() );
+    assertEquals( 1, profile.getNullCount() );
+    assertEquals( 3, profile.getCardinality() );
+    assertEquals( -2.0, profile.getMin(), 0 );
+    assertEquals( 10.0, profile.getMax(), 0 );
+    assertEquals( 9.5, profile.getSum(), 0 );
+    assertFalse( profile.isIntegral() );
+  }
+
+  @Test
+  public void testNonNumericHasNoNumbers() {
+    FieldProfile profile = FieldProfile.create( new ValueMetaString( "name" ) );
+    profile.add( "a" );
+    assertNull( profile.getMin() );
+    assertNull( profile.getSum() );
+    assertFalse( profile.isIdentifier() );
+  }
+
+  @Test
+  public void testTopValues() {
+    FieldProfile profile = new FieldProfile( "country", false, 2 );
+    for ( int i = 0; i < 5; i++ ) {
+      profile.add( "US" );
+    }
+    for ( int i = 0; i < 3; i++ ) {
+      profile.add( "DE" );
+    }
+    profile.add( "FR" );
+    profile.add( "US" );
+
+    Iterator<Map.Entry<Object, Long>> top = profile.getTopValues().entrySet().iterator();
+    Map.Entry<Object, Long> first = top.next();
+    assertEquals( "US", first.getKey() );
+    assertEquals( 6L, first.getValue().longValue() );
+    // FR replaced DE, inheriting its count
+    assertEquals( "FR", top.next().getKey() );
+    assertFalse( top.hasNext() );
+  }
+
+  @Test
+  public void testIdentifier() {
+    FieldProfile id = FieldProfile.create( new ValueMetaInteger( "id" ) );
+    FieldProfile quantity = FieldProfile.create( new ValueMetaInteger( "quantity" ) );
+    for ( long i = 0; i < 5000; i++ ) {
+      id.add( i );
+      quantity.add( i % 20 );
+    }
+    assertTrue( id.isIdentifier() );
+    assertFalse( quantity.isIdentifier() );
+
+    FieldProfile few = FieldProfile.create( new ValueMetaInteger( "few" ) );
+    few.add( 1L );
+    few.add( 2L );
+    assertFalse( few.isIdentifier() );
+  }
+
+  @Test
+  public void testMergeCopies() {
+    FieldProfile copy1 = new FieldProfile( "f", true );
+    FieldProfile copy2 = new FieldProfile( "f", true );
+    copy1.add( 1L );
+    copy1.add( 2L );
+    copy2.add( 2L );
+    copy2.add( null );
+    copy2.add( 7L );
+
+    FieldProfiles profiles = new FieldProfiles();
+    profiles.mergeAll( new FieldProfile[] { copy1 } );
+    profiles.mergeAll( new FieldProfile[] { copy2 } );
+
+    FieldProfile merged = profiles.get( "F" );
+    assertEquals( 5, merged.getCount() );
+    assertEquals( 1, merged.getNullCount() );
+    assertEquals( 3, merged.getCardinality() );
+    assertEquals( 1.0, merged.getMin(), 0 );
+    assertEquals( 7.0, merged.getMax(), 0 );
+    assertEquals( 12.0, merged.getSum(), 0 );
+    assertTrue( merged.isIntegral() );
+    assertEquals( 2L, merged.getTopValues().get( 2L ).longValue() );
+  }
+
+  @Test
+  public void testRegistry() {
+    Map<String, Object> map = new HashMap<>();
+    assertNull( FieldProfiles.get( map, "key" ) );
+    FieldProfiles profiles = FieldProfiles.getOrCreate( map, "key" );
+    assertSame( profiles, FieldProfiles.getOrCreate( map, "key" ) );
+    assertSame( profiles, FieldProfiles.get( map, "key" ) );
+    assertTrue( profiles.isEmpty() );
+  }
+}
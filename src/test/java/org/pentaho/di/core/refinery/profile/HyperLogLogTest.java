@@ -0,0 +1,63 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.profile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HyperLogLogTest {
+
+  @Test
+  public void testEmpty() {
+    assertEquals( 0, new HyperLogLog().estimate() );
+  }
+
+  @Test
+  public void testSmallCardinalityIsExact() {
+    HyperLogLog hll = new HyperLogLog();
+    for ( int i = 0; i < 1000; i++ ) {
+      hll.addHash( HyperLogLog.hash( "value" + ( i % 10 ) ) );
+    }
+    assertEquals( 10, hll.estimate(), 1 );
+  }
+
+  @Test
+  public void testLargeCardinalityWithinError() {
+    HyperLogLog hll = new HyperLogLog();
+    int n = 200000;
+    for ( long i = 0; i < n; i++ ) {
+      hll.addHash( HyperLogLog.mix( i ) );
+    }
+    // standard error at precision 12 is ~1.6%, allow for 3 sigma
+    assertEquals( n, hll.estimate(), n * 0.05 );
+  }
+
+  @Test
+  public void testMergeIsUnion() {
+    HyperLogLog one = new HyperLogLog();
+    HyperLogLog other = new HyperLogLog();
+    for ( long i = 0; i < 50000; i++ ) {
+      one.addHash( HyperLogLog.mix( i ) );
+      other.addHash( HyperLogLog.mix( i + 25000 ) );
+    }
+    one.merge( other );
+    assertEquals( 75000, one.estimate(), 75000 * 0.05 );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testMergeDifferentPrecision() {
+    new HyperLogLog( 10 ).merge( new HyperLogLog( 12 ) );
+  }
+}
@@ -42,8 +42,10 @@ import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.argThat;
 import static org.mockito.Mockito.any;
@@ -268,6 +270,17 @@ public class ModelServerPublishTest {
     assertEquals( client1, client2 ); // assert same instance
   }
 
+  @Test
+  public void testSessionClientIsNotSharedWithOtherPublishers() throws Exception {
+    ModelServerPublish first = new ModelServerPublish( logChannel );
+    first.setBiServerConnection( connection );
+    ModelServerPublish second = new ModelServerPublish( logChannel );
+    second.setBiServerConnection( connection );
+
+    assertSame( first.getClient(), first.getClient() );
+    assertNotSame( first.getClient(), second.getClient() );
+  }
+
   @Test
   public void testHttpPost() throws Exception {
     modelServerPublishSpy.httpPost( mock( Invocation.Builder.class ), mock( Entity.class ) );
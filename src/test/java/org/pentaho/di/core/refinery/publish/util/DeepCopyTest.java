@@ -0,0 +1,147 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.publish.util;
+
+import org.junit.Test;
+import org.pentaho.agilebi.modeler.models.annotations.AnnotationType;
+import org.pentaho.agilebi.modeler.models.annotations.CreateAttribute;
+import org.pentaho.agilebi.modeler.models.annotations.CreateMeasure;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotation;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroup;
+import org.pentaho.di.core.refinery.publish.agilebi.BiServerConnection;
+import org.pentaho.di.core.refinery.publish.model.DataSourcePublishModel;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DeepCopyTest {
+
+  public static class Node {
+    private String name;
+    private Node next;
+    private final List<Node> children = new ArrayList<>();
+    private int[] weights;
+    private transient Object cache = "cache";
+  }
+
+  public static class Wrapped implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String value;
+
+    public Wrapped( String value ) {
+      this.value = value;
+    }
+  }
+
+  @Test
+  public void testNull() {
+    assertNull( DeepCopy.copy( null ) );
+  }
+
+  @Test
+  public void testSharedReferencesAndCyclesArePreserved() {
+    Node root = new Node();
+    root.name = "root";
+    Node child = new Node();
+    child.name = "child";
+    child.next = root;
+    root.next = child;
+    root.children.add( child );
+    root.children.add( child );
+    root.weights = new int[] { 1, 2 };
+
+    Node copy = DeepCopy.copy( root );
+    assertNotSame( root, copy );
+    assertEquals( "root", copy.name );
+    assertNotSame( root.name, copy.name );
+    assertSame( copy, copy.next.next );
+    assertSame( copy.next, copy.children.get( 0 ) );
+    assertSame( copy.children.get( 0 ), copy.children.get( 1 ) );
+    assertNotSame( root.weights, copy.weights );
+    assertEquals( 2, copy.weights[ 1 ] );
+    assertEquals( "cache", copy.cache );
+  }
+
+  @Test
+  public void testMaps() {
+    Map<String, List<String>> map = new HashMap<>();
+    List<String> shared = new ArrayList<>();
+    shared.add( "a" );
+    map.put( "x", shared );
+    map.put( "y", shared );
+
+    Map<String, List<String>> copy = DeepCopy.copy( map );
+    assertEquals( map, copy );
+    assertNotSame( shared, copy.get( "x" ) );
+    assertSame( copy.get( "x" ), copy.get( "y" ) );
+  }
+
+  @Test
+  public void testPublishModel() {
+    BiServerConnection connection = new BiServerConnection();
+    connection.setName( "default" );
+    connection.setUrl( "http://localhost:8080/pentaho/" );
+    DataSourcePublishModel model = new DataSourcePublishModel();
+    model.setModelName( "sales" );
+    model.setBatch( true );
+    model.setBiServerConnection( connection );
+
+    DataSourcePublishModel copy = DeepCopy.copy( model );
+    assertEquals( "sales", copy.getModelName() );
+    assertTrue( copy.isBatch() );
+    assertNotSame( connection, copy.getBiServerConnection() );
+    assertEquals( connection.getUrl(), copy.getBiServerConnection().getUrl() );
+  }
+
+  @Test
+  public void testModelAnnotationGroup() {
+    CreateMeasure measure = new CreateMeasure();
+    measure.setName( "Revenue" );
+    CreateAttribute attribute = new CreateAttribute();
+    attribute.setName( "City" );
+    attribute.setGeoType( ModelAnnotation.GeoType.City );
+    ModelAnnotationGroup group = new ModelAnnotationGroup( new ModelAnnotation<AnnotationType>( "f1", measure ),
+      new ModelAnnotation<AnnotationType>( "f2", attribute ) );
+    group.setName( "group" );
+    group.setSharedDimension( true );
+
+    ModelAnnotationGroup copy = DeepCopy.copy( group );
+    assertEquals( "group", copy.getName() );
+    assertTrue( copy.isSharedDimension() );
+    assertEquals( 2, copy.size() );
+    assertNotSame( group.get( 1 ), copy.get( 1 ) );
+    assertEquals( "City", copy.get( 1 ).getName() );
+    assertSame( ModelAnnotation.GeoType.City, ( (CreateAttribute) copy.get( 1 ).getAnnotation() ).getGeoType() );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testClassWithoutDefaultConstructor() {
+    DeepCopy.copy( new Wrapped( "value" ) );
+  }
+
+  @Test
+  public void testObjectUtilsFallsBackToSerialization() {
+    Wrapped copy = ObjectUtils.deepClone( new Wrapped( "value" ) );
+    assertEquals( "value", copy.value );
+  }
+}
@@ -17,9 +17,18 @@ import org.junit.Before;
 import org.junit.Test;
 import org.pentaho.database.model.DatabaseConnection;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author Rowell Belen
@@ -56,4 +65,46 @@ public class JAXBUtilTest {
     assertNotNull( connection );
 
   }
+
+  @Test
+  public void testContextIsCreatedOnce() throws Exception {
+    assertSame( JAXBUtils.getContext( DatabaseConnection.class ), JAXBUtils.getContext( DatabaseConnection.class ) );
+  }
+
+  @Test
+  public void testStreamingRoundTrip() throws Exception {
+    DatabaseConnection connection = new DatabaseConnection();
+    connection.setId( UUID.randomUUID().toString() );
+    connection.setName( "sales münchen" );
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JAXBUtils.marshallToXml( connection, out );
+
+    DatabaseConnection read =
+      JAXBUtils.unmarshalFromXml( new ByteArrayInputStream( out.toByteArray() ), DatabaseConnection.class );
+    assertEquals( connection.getId(), read.getId() );
+    assertEquals( connection.getName(), read.getName() );
+  }
+
+  @Test
+  public void testConcurrentMarshalling() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool( 4 );
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for ( int i = 0; i < 50; i++ ) {
+        final String id = String.valueOf( i );
+        results.add( executor.submit( () -> {
+          DatabaseConnection connection = new DatabaseConnection();
+          connection.setId( id );
+          return JAXBUtils.unmarshalFromXml( JAXBUtils.marshallToXml( connection ), DatabaseConnection.class )
+            .getId();
+        } ) );
+      }
+      for ( int i = 0; i < results.size(); i++ ) {
+        assertEquals( String.valueOf( i ), results.get( i ).get() );
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
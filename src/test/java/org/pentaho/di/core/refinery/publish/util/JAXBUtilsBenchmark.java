@@ -0,0 +1,69 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.publish.util;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.Marshaller;
+import org.pentaho.database.model.DatabaseConnection;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a JAXB round trip of a connection payload with a new context per call, as it was done before, and with
+ * the cached contexts of {@link JAXBUtils}. Not a test, run the main method by hand.
+ */
+public class JAXBUtilsBenchmark {
+
+  private static final int WARMUP = 200;
+  private static final int ITERATIONS = 2000;
+
+  interface RoundTrip {
+    Object run( DatabaseConnection connection ) throws Exception;
+  }
+
+  public static void main( String[] args ) throws Exception {
+    DatabaseConnection connection = new DatabaseConnection();
+    connection.setId( "5c2b9d0e" );
+    connection.setName( "sales" );
+    connection.setHostname( "localhost" );
+    connection.setDatabaseName( "warehouse" );
+    connection.setUsername( "etl" );
+
+    report( "new context per call", connection, payload -> {
+      JAXBContext context = JAXBContext.newInstance( DatabaseConnection.class );
+      Marshaller marshaller = context.createMarshaller();
+      marshaller.setProperty( Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE );
+      StringWriter writer = new StringWriter();
+      marshaller.marshal( payload, writer );
+      return JAXBContext.newInstance( DatabaseConnection.class ).createUnmarshaller()
+        .unmarshal( new StringReader( writer.toString() ) );
+    } );
+    report( "cached context", connection,
+      payload -> JAXBUtils.unmarshalFromXml( JAXBUtils.marshallToXml( payload ), DatabaseConnection.class ) );
+  }
+
+  private static void report( String name, DatabaseConnection connection, RoundTrip roundTrip ) throws Exception {
+    for ( int i = 0; i < WARMUP; i++ ) {
+      roundTrip.run( connection );
+    }
+    long start = System.nanoTime();
+    for ( int i = 0; i < ITERATIONS; i++ ) {
+      roundTrip.run( connection );
+    }
+    long micros = TimeUnit.NANOSECONDS.toMicros( System.nanoTime() - start ) / ITERATIONS;
+    System.out.println( name + ": " + micros + " us per round trip" );
+  }
+}
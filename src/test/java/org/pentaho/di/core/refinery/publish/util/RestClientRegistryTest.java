@@ -0,0 +1,113 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.core.refinery.publish.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.refinery.publish.agilebi.BiServerConnection;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientResponseContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RestClientRegistryTest {
+
+  private long now;
+  private RestClientRegistry registry;
+
+  @Before
+  public void setUp() throws Exception {
+    now = 0L;
+    registry = new RestClientRegistry( () -> now );
+  }
+
+  private static BiServerConnection connection( String user ) {
+    BiServerConnection connection = new BiServerConnection();
+    connection.setUrl( "http://localhost:8080/pentaho/" );
+    connection.setUserId( user );
+    connection.setPassword( "password" );
+    return connection;
+  }
+
+  @Test
+  public void testClientsAreSharedPerServerAndCredentials() throws Exception {
+    Client admin = registry.getClient( "jersey", connection( "admin" ), () -> mock( Client.class ) );
+    assertSame( admin, registry.getClient( "jersey", connection( "admin" ), () -> mock( Client.class ) ) );
+    assertNotSame( admin, registry.getClient( "jersey", connection( "suzy" ), () -> mock( Client.class ) ) );
+    assertNotSame( admin, registry.getClient( "other", connection( "admin" ), () -> mock( Client.class ) ) );
+
+    assertEquals( 3, registry.getMetrics().getClientsCreated() );
+    assertEquals( 1, registry.getMetrics().getClientsReused() );
+    verify( admin ).register( any( RestClientRegistry.MetricsFilter.class ) );
+  }
+
+  @Test
+  public void testOtherPasswordGetsAnotherClient() throws Exception {
+    Client admin = registry.getClient( "jersey", connection( "admin" ), () -> mock( Client.class ) );
+    BiServerConnection changed = connection( "admin" );
+    changed.setPassword( "changed" );
+    assertNotSame( admin, registry.getClient( "jersey", changed, () -> mock( Client.class ) ) );
+  }
+
+  @Test
+  public void testIdleClientsAreDroppedThenClosed() throws Exception {
+    Client idle = registry.getClient( "jersey", connection( "admin" ), () -> mock( Client.class ) );
+    now += RestClientRegistry.DEFAULT_IDLE_TIMEOUT / 2;
+    Client active = registry.getClient( "jersey", connection( "suzy" ), () -> mock( Client.class ) );
+    now += RestClientRegistry.DEFAULT_IDLE_TIMEOUT / 2;
+    registry.getClient( "jersey", connection( "suzy" ), () -> mock( Client.class ) );
+
+    // a long upload may still be running on it
+    verify( idle, never() ).close();
+    verify( active, never() ).close();
+    assertEquals( 1, registry.size() );
+    assertEquals( 1, registry.retiredSize() );
+    assertEquals( 1, registry.getMetrics().getClientsEvicted() );
+    assertNotSame( idle, registry.getClient( "jersey", connection( "admin" ), () -> mock( Client.class ) ) );
+
+    now += RestClientRegistry.DEFAULT_IDLE_TIMEOUT;
+    registry.getClient( "jersey", connection( "suzy" ), () -> mock( Client.class ) );
+    verify( idle ).close();
+    // dropped just now
+    verify( active, never() ).close();
+  }
+
+  @Test
+  public void testMetricsFilter() throws Exception {
+    ClientRequestContext request = mock( ClientRequestContext.class );
+    ClientResponseContext response = mock( ClientResponseContext.class );
+    when( request.getProperty( any( String.class ) ) ).thenReturn( System.nanoTime() );
+    when( request.getHeaderString( "Content-Length" ) ).thenReturn( "10" );
+    when( response.getLength() ).thenReturn( 100 );
+
+    RestClientRegistry.MetricsFilter filter = new RestClientRegistry.MetricsFilter( registry.getMetrics() );
+    filter.filter( request );
+    filter.filter( request, response );
+    when( response.getLength() ).thenReturn( -1 );
+    filter.filter( request, response );
+
+    assertEquals( 2, registry.getMetrics().getRequests() );
+    assertEquals( 20, registry.getMetrics().getBytesSent() );
+    assertEquals( 100, registry.getMetrics().getBytesReceived() );
+  }
+}
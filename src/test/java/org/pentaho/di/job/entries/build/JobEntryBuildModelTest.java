@@ -35,10 +35,14 @@ import org.pentaho.di.core.plugins.PluginRegistry;
 import org.pentaho.di.core.plugins.StepPluginType;
 import org.pentaho.di.core.refinery.model.AnalysisModeler;
 import org.pentaho.di.core.refinery.model.DswModeler;
+import org.pentaho.di.core.refinery.model.ModelArtifactStore;
+import org.pentaho.di.core.refinery.model.ModelBuildCache;
 import org.pentaho.di.core.refinery.model.ModelServerFetcher;
+import org.pentaho.di.core.refinery.profile.FieldProfiles;
 import org.pentaho.di.core.refinery.publish.agilebi.BiServerConnection;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.variables.Variables;
@@ -72,16 +76,21 @@ import org.w3c.dom.Node;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -117,6 +126,8 @@ public class JobEntryBuildModelTest {
   @Before
   public void setUp() throws Exception {
 
+    System.setProperty( ModelBuildCache.DIRECTORY_PROPERTY, "./target/test-model-cache/JobEntryBuildModelTest" );
+
     // DB Setup
     String dbDir = "./target/test-db/JobEntryBuildModelTest-H2-DB";
     File file = new File( dbDir + ".h2.db" );
@@ -235,7 +246,45 @@ public class JobEntryBuildModelTest {
 
   @After
   public void tearDown() throws Exception {
+    ModelBuildCache.getInstance().clear();
+    System.clearProperty( ModelBuildCache.DIRECTORY_PROPERTY );
+  }
+
+  @Test
+  public void testOnlyProfilesOfTheOutputStepAreUsed() throws Exception {
+    assertNull( buildJobEntry.getFieldProfiles() );
+    FieldProfiles other = FieldProfiles.getOrCreate( job.getExtensionDataMap(),
+      JobEntryBuildModel.KEY_FIELD_PROFILES_PREFIX + "Other Output" );
+    assertNull( buildJobEntry.getFieldProfiles() );
+
+    FieldProfiles sales = FieldProfiles.getOrCreate( job.getExtensionDataMap(),
+      JobEntryBuildModel.KEY_FIELD_PROFILES_PREFIX + "Sales Fact" );
+    assertSame( sales, buildJobEntry.getFieldProfiles() );
+    assertNotSame( other, buildJobEntry.getFieldProfiles() );
+  }
 
+  @Test
+  public void testLargeArtifactIsKeptUntilTheRootJobFinishes() throws Exception {
+    Job root = new Job( null, new JobMeta() );
+    job.setParentJob( root );
+    System.setProperty( ModelArtifactStore.THRESHOLD_PROPERTY, "4" );
+    try {
+      String handle = buildJobEntry.toVariableValue( "sales", "<xmi/>" );
+      assertTrue( ModelArtifactStore.isHandle( handle ) );
+
+      job.fireJobFinishListeners();
+      assertEquals( "<xmi/>", ModelArtifactStore.getInstance().resolve( handle ) );
+
+      root.fireJobFinishListeners();
+      try {
+        ModelArtifactStore.getInstance().resolve( handle );
+        fail();
+      } catch ( KettleException e ) {
+        // released with the root job
+      }
+    } finally {
+      System.clearProperty( ModelArtifactStore.THRESHOLD_PROPERTY );
+    }
   }
 
   @Test
@@ -358,22 +407,19 @@ public class JobEntryBuildModelTest {
     buildJobEntry.setExistingModel( existingModelName );
     buildJobEntry.setSelectedModel( existingModelName );
     buildJobEntry.setUseExistingModel( true );
-    String existingSchema = IOUtils
-        .toString( getClass().getResourceAsStream( "/org/pentaho/di/core/refinery/model/resources/testAnalysisSchema.xml" ) );
-    when( modelServerFetcher.downloadAnalysisFile( someModelName ) )
-        .thenReturn( existingSchema );
-    String expectedSchema = IOUtils.toString(
+    final InputStream existingSchema =
+        getClass().getResourceAsStream( "/org/pentaho/di/core/refinery/model/resources/testAnalysisSchema.xml" );
+    when( modelServerFetcher.openAnalysisFile( someModelName ) ).thenReturn( existingSchema );
+    final String expectedSchema = IOUtils.toString(
         getClass().getResourceAsStream( "/org/pentaho/di/core/refinery/model/resources/salesTestAnalysisSchema.xml" ) );
-    when( modelServerFetcher.downloadAnalysisFile( someModelName ) )
-        .thenReturn( IOUtils
-            .toString(
-                getClass().getResourceAsStream( "/org/pentaho/di/core/refinery/model/resources/testAnalysisSchema.xml" ) ) );
 
     when( modelServerFetcher.fetchAnalysisList() ).thenReturn( asList( "someModelName" ) );
 
-    when( analysisModeler.replaceTableAndSchemaNames(
-        eq( existingSchema ), eq( "Car Sales Analysis" ) ) )
-        .thenReturn( expectedSchema );
+    doAnswer( invocation -> {
+      ( (OutputStream) invocation.getArguments()[ 1 ] ).write( expectedSchema.getBytes( "UTF-8" ) );
+      return null;
+    } ).when( analysisModeler ).replaceTableAndSchemaNames(
+        eq( existingSchema ), any( OutputStream.class ), eq( "Car Sales Analysis" ) );
     doNothing().when( connectionValidator ).validateConnectionInRuntime();
     job.run();
 
@@ -389,6 +435,7 @@ public class JobEntryBuildModelTest {
         job.getVariable( "JobEntryBuildModel.Mondrian.Schema.Car Sales Analysis" ) );
 
     assertEquals( "myh2", job.getVariable( "JobEntryBuildModel.Mondrian.Datasource.Car Sales Analysis" ) );
+    assertEquals( "[Car Sales Analysis]", JobEntryBuildModel.getBuiltModelNames( job ).toString() );
   }
 
   @Test
@@ -409,6 +456,64 @@ public class JobEntryBuildModelTest {
     verify( modeler, times( 1 ) ).updateModel( "modelName", null, null, schemaName, null );
   }
 
+  @Test
+  public void testUnchangedModelIsNotBuiltAgain() throws Exception {
+    DswModeler modeler = spy( new DswModeler() );
+    buildJobEntry.setModeler( modeler );
+
+    String xmi = buildJobEntry.buildXmi( null, "Sales Fact", "Car Sales Analysis" );
+    assertEquals( xmi, buildJobEntry.buildXmi( null, "Sales Fact", "Car Sales Analysis" ) );
+    verify( modeler, times( 1 ) ).createModel( anyString(), any(), any(), any(), any(), any(), any() );
+
+    // another model name, other annotations or another table is another model
+    buildJobEntry.buildXmi( null, "Sales Fact", "Other Analysis" );
+    verify( modeler, times( 2 ) ).createModel( anyString(), any(), any(), any(), any(), any(), any() );
+
+    CreateMeasure sumQuantity = new CreateMeasure();
+    sumQuantity.setAggregateType( AggregationType.SUM );
+    sumQuantity.setName( "Total Quantity" );
+    sumQuantity.setField( "QUANTITY" );
+    job.getExtensionDataMap().put( JobEntryBuildModel.KEY_MODEL_ANNOTATIONS,
+        new ModelAnnotationGroup( new ModelAnnotation<CreateMeasure>( sumQuantity ) ) );
+    buildJobEntry.buildXmi( null, "Sales Fact", "Car Sales Analysis" );
+    verify( modeler, times( 3 ) ).createModel( anyString(), any(), any(), any(), any(), any(), any() );
+
+    // the output step writes one more field
+    Database db = new Database( null, databaseMeta );
+    db.connect();
+    db.execStatement( "ALTER TABLE sales_test ADD COLUMN Discount DOUBLE;" );
+    db.disconnect();
+    StepMetaDataCombi outputStep = buildJobEntry.getStepMetaDataCombi();
+    ( (TableOutputData) outputStep.data ).insertRowMeta.addValueMeta( new ValueMetaNumber( "Discount" ) );
+    buildJobEntry.buildXmi( null, "Sales Fact", "Car Sales Analysis" );
+    verify( modeler, times( 4 ) ).createModel( anyString(), any(), any(), any(), any(), any(), any() );
+  }
+
+  @Test
+  public void testModelWithoutOutputStepFieldsIsNotCached() throws Exception {
+    DswModeler modeler = spy( new DswModeler() );
+    buildJobEntry.setModeler( modeler );
+    job.getExtensionDataMap().remove( JobEntryBuildModel.KEY_OUTPUT_STEP_PREFIX + "Build Model" );
+
+    buildJobEntry.buildXmi( null, "Sales Fact", "Car Sales Analysis" );
+    buildJobEntry.buildXmi( null, "Sales Fact", "Car Sales Analysis" );
+    verify( modeler, times( 2 ) ).createModel( anyString(), any(), any(), any(), any(), any(), any() );
+  }
+
+  @Test
+  public void testModelCacheDisabled() throws Exception {
+    DswModeler modeler = spy( new DswModeler() );
+    buildJobEntry.setModeler( modeler );
+    System.setProperty( ModelBuildCache.SIZE_PROPERTY, "0" );
+    try {
+      buildJobEntry.buildXmi( null, "Sales Fact", "Car Sales Analysis" );
+      buildJobEntry.buildXmi( null, "Sales Fact", "Car Sales Analysis" );
+    } finally {
+      System.clearProperty( ModelBuildCache.SIZE_PROPERTY );
+    }
+    verify( modeler, times( 2 ) ).createModel( anyString(), any(), any(), any(), any(), any(), any() );
+  }
+
   @Test
   public void testEmptyExistingModelThrowsException() throws Exception {
 
@@ -48,7 +48,9 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -68,6 +70,7 @@ import static org.mockito.Mockito.contains;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.isA;
 import static org.mockito.Mockito.matches;
 import static org.mockito.Mockito.mock;
@@ -175,6 +178,7 @@ public class JobEntryDatasourcePublishTest {
     assertTrue( StringUtils.contains( jobEntryDatasourcePublish.getXML(),
       "<logical_model>myLogicalModel</logical_model>" ) );
     assertTrue( StringUtils.contains( jobEntryDatasourcePublish.getXML(), "<override>Y</override>" ) );
+    assertTrue( StringUtils.contains( jobEntryDatasourcePublish.getXML(), "<batch_publish>N</batch_publish>" ) );
     assertTrue(
       StringUtils.contains( jobEntryDatasourcePublish.getXML(), "<ba_server_name>default</ba_server_name>" ) );
 
@@ -612,6 +616,168 @@ public class JobEntryDatasourcePublishTest {
       any() );
   }
 
+  @Test
+  public void testFailedXmiStopsTheSchemaOfTheSameModel() throws Exception {
+
+    DatasourcePublishService datasourcePublishServiceSpy = spy( publishService );
+    JobEntryDatasourcePublish datasourcePublishSpy =
+      spy( new JobEntryDatasourcePublish( datasourcePublishServiceSpy ) );
+
+    when( datasourcePublishSpy.getParentJob() ).thenReturn( parentJob );
+    when( parentJob.getJobMeta() ).thenReturn( jobMeta );
+    when( parentJob.getVariable( "JobEntryBuildModel.Mondrian.Schema.logicalModel" ) ).thenReturn( "<Schema/>" );
+    when( parentJob.getVariable( "JobEntryBuildModel.Mondrian.Datasource.logicalModel" ) ).thenReturn( "conn" );
+    doNothing().when( datasourcePublishSpy ).logBasic( anyString() );
+    when( datasourcePublishSpy.getModelServerPublish() ).thenReturn( modelServerPublish );
+    when( datasourcePublishSpy
+      .getConnectionValidator( any( BiServerConnection.class ) ) ).thenReturn( connectionValidator );
+    doReturn( databaseMeta ).when( datasourcePublishSpy ).discoverDatabaseMeta( any( JobMeta.class ) );
+
+    DataSourcePublishModel model = new DataSourcePublishModel();
+    model.setModelName( "logicalModel" );
+    model.setBiServerConnection( biServerConnection );
+    datasourcePublishSpy.setDataSourcePublishModel( model );
+
+    doNothing().when( datasourcePublishServiceSpy ).publishDatabaseMeta( any( ModelServerPublish.class ),
+      any( DatabaseMeta.class ), anyBoolean() );
+    doNothing().when( datasourcePublishServiceSpy ).deleteDatabaseMeta( any( ModelServerPublish.class ),
+      any( DatabaseMeta.class ) );
+    doThrow( new KettleException() ).when( datasourcePublishServiceSpy )
+      .publishMetadataXmi( anyString(), any(), any( ModelServerPublish.class ), anyBoolean() );
+    doNothing().when( datasourcePublishServiceSpy )
+      .publishMondrianSchema( anyString(), any(), any(), any( ModelServerPublish.class ), anyBoolean() );
+    when( modelServerPublish.deleteMondrianSchema( "logicalModel" ) ).thenReturn( true );
+
+    Result r = datasourcePublishSpy.execute( new Result( 0 ), 0 );
+    assertFalse( r.getResult() );
+    verify( datasourcePublishServiceSpy, times( 0 ) ).publishMondrianSchema( anyString(), any(), any(),
+      any( ModelServerPublish.class ), anyBoolean() );
+    verify( modelServerPublish, times( 0 ) ).deleteMondrianSchema( "logicalModel" );
+    verify( datasourcePublishServiceSpy, times( 0 ) ).deleteXMI( any( ModelServerPublish.class ), anyString(),
+      any() );
+    verify( datasourcePublishServiceSpy ).deleteDatabaseMeta( any( ModelServerPublish.class ),
+      any( DatabaseMeta.class ) );
+  }
+
+  @Test
+  public void testBatchPublishesSharedConnectionOnce() throws Exception {
+
+    DatasourcePublishService datasourcePublishServiceSpy = spy( publishService );
+    JobEntryDatasourcePublish datasourcePublishSpy = createBatchEntry( datasourcePublishServiceSpy );
+
+    Result r = datasourcePublishSpy.execute( new Result( 0 ), 0 );
+    assertTrue( r.getResult() );
+    assertEquals( 0, r.getNrErrors() );
+    verify( datasourcePublishServiceSpy ).publishDatabaseMeta( any( ModelServerPublish.class ),
+      any( DatabaseMeta.class ), anyBoolean() );
+    verify( datasourcePublishServiceSpy ).publishMetadataXmi( eq( "sales" ), eq( "<xmi/>" ),
+      any( ModelServerPublish.class ), anyBoolean() );
+    verify( datasourcePublishServiceSpy ).publishMondrianSchema( eq( "stock" ), eq( "<Schema/>" ), eq( "conn" ),
+      any( ModelServerPublish.class ), anyBoolean() );
+    verify( connectionValidator ).validateConnectionInRuntime();
+  }
+
+  @Test
+  public void testBatchFailedModelKeepsSharedConnection() throws Exception {
+
+    DatasourcePublishService datasourcePublishServiceSpy = spy( publishService );
+    JobEntryDatasourcePublish datasourcePublishSpy = createBatchEntry( datasourcePublishServiceSpy );
+    doThrow( new KettleException() ).when( datasourcePublishServiceSpy )
+      .publishMetadataXmi( eq( "sales" ), any(), any( ModelServerPublish.class ), anyBoolean() );
+
+    Result r = datasourcePublishSpy.execute( new Result( 0 ), 0 );
+    assertFalse( r.getResult() );
+    assertEquals( 1, r.getNrErrors() );
+    verify( datasourcePublishServiceSpy ).publishMondrianSchema( eq( "stock" ), any(), any(),
+      any( ModelServerPublish.class ), anyBoolean() );
+    verify( datasourcePublishServiceSpy, times( 0 ) ).deleteDatabaseMeta( any( ModelServerPublish.class ),
+      any( DatabaseMeta.class ) );
+  }
+
+  @Test
+  public void testBatchRemovesUnusedConnection() throws Exception {
+
+    DatasourcePublishService datasourcePublishServiceSpy = spy( publishService );
+    JobEntryDatasourcePublish datasourcePublishSpy = createBatchEntry( datasourcePublishServiceSpy );
+    doThrow( new KettleException() ).when( datasourcePublishServiceSpy )
+      .publishMetadataXmi( anyString(), any(), any( ModelServerPublish.class ), anyBoolean() );
+    doThrow( new KettleException() ).when( datasourcePublishServiceSpy )
+      .publishMondrianSchema( anyString(), any(), any(), any( ModelServerPublish.class ), anyBoolean() );
+
+    Result r = datasourcePublishSpy.execute( new Result( 0 ), 0 );
+    assertFalse( r.getResult() );
+    assertEquals( 2, r.getNrErrors() );
+    verify( datasourcePublishServiceSpy ).deleteDatabaseMeta( any( ModelServerPublish.class ),
+      any( DatabaseMeta.class ) );
+  }
+
+  @Test
+  public void testBatchWithoutModelsFails() throws Exception {
+
+    DatasourcePublishService datasourcePublishServiceSpy = spy( publishService );
+    JobEntryDatasourcePublish datasourcePublishSpy = createBatchEntry( datasourcePublishServiceSpy );
+    when( parentJob.getExtensionDataMap() ).thenReturn( new HashMap<String, Object>() );
+
+    Result r = datasourcePublishSpy.execute( new Result( 0 ), 0 );
+    assertFalse( r.getResult() );
+    verify( datasourcePublishServiceSpy, times( 0 ) ).publishDatabaseMeta( any( ModelServerPublish.class ),
+      any( DatabaseMeta.class ), anyBoolean() );
+  }
+
+  @Test
+  public void testFindBuiltModelNames() {
+    JobEntryDatasourcePublish datasourcePublishSpy = spy( jobEntryDatasourcePublish );
+    when( datasourcePublishSpy.getParentJob() ).thenReturn( parentJob );
+    when( parentJob.getExtensionDataMap() ).thenReturn( builtModels( "b", "a" ) );
+    // left over or copied from a parent job, not built by this one
+    when( parentJob.listVariables() ).thenReturn( new String[] { "JobEntryBuildModel.XMI.c",
+      "JobEntryBuildModel.Mondrian.Schema.d", "Internal.Job.Name" } );
+
+    assertEquals( "[a, b]", datasourcePublishSpy.findBuiltModelNames().toString() );
+  }
+
+  private static Map<String, Object> builtModels( String... modelNames ) {
+    Map<String, Object> extensionDataMap = new HashMap<String, Object>();
+    extensionDataMap.put( JobEntryBuildModel.KEY_BUILT_MODELS, new HashSet<String>( Arrays.asList( modelNames ) ) );
+    return extensionDataMap;
+  }
+
+  private JobEntryDatasourcePublish createBatchEntry( DatasourcePublishService datasourcePublishServiceSpy )
+    throws Exception {
+    JobEntryDatasourcePublish datasourcePublishSpy =
+      spy( new JobEntryDatasourcePublish( datasourcePublishServiceSpy ) );
+
+    when( datasourcePublishSpy.getParentJob() ).thenReturn( parentJob );
+    when( parentJob.getJobMeta() ).thenReturn( jobMeta );
+    when( parentJob.getExtensionDataMap() ).thenReturn( builtModels( "sales", "stock" ) );
+    when( parentJob.getVariable( "JobEntryBuildModel.XMI.sales" ) ).thenReturn( "<xmi/>" );
+    when( parentJob.getVariable( "JobEntryBuildModel.Mondrian.Schema.stock" ) ).thenReturn( "<Schema/>" );
+    when( parentJob.getVariable( "JobEntryBuildModel.Mondrian.Datasource.stock" ) ).thenReturn( "conn" );
+    doNothing().when( datasourcePublishSpy ).logBasic( anyString() );
+    when( datasourcePublishSpy.getModelServerPublish() ).thenReturn( modelServerPublish );
+    when( datasourcePublishSpy
+      .getConnectionValidator( any( BiServerConnection.class ) ) ).thenReturn( connectionValidator );
+    when( databaseMeta.getName() ).thenReturn( "conn" );
+    when( databaseMeta.getAccessType() ).thenReturn( DatabaseAccessType.NATIVE.ordinal() );
+    doReturn( databaseMeta ).when( datasourcePublishSpy ).discoverDatabaseMeta( any( JobMeta.class ), anyString() );
+
+    DataSourcePublishModel model = new DataSourcePublishModel();
+    model.setBatch( true );
+    model.setBiServerConnection( biServerConnection );
+    datasourcePublishSpy.setDataSourcePublishModel( model );
+
+    doNothing().when( datasourcePublishServiceSpy ).publishDatabaseMeta( any( ModelServerPublish.class ),
+      any( DatabaseMeta.class ), anyBoolean() );
+    doNothing().when( datasourcePublishServiceSpy ).deleteDatabaseMeta( any( ModelServerPublish.class ),
+      any( DatabaseMeta.class ) );
+    doNothing().when( datasourcePublishServiceSpy )
+      .publishMetadataXmi( anyString(), any(), any( ModelServerPublish.class ), anyBoolean() );
+    doNothing().when( datasourcePublishServiceSpy )
+      .publishMondrianSchema( anyString(), any(), any(), any( ModelServerPublish.class ), anyBoolean() );
+    doNothing().when( datasourcePublishServiceSpy ).deleteXMI( any( ModelServerPublish.class ), anyString(), any() );
+    return datasourcePublishSpy;
+  }
+
   @Test
   public void testExecuteDoubleSlash() throws Exception {
     DatasourcePublishService datasourcePublishServiceSpy = spy( publishService );
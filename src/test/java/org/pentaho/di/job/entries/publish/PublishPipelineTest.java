@@ -0,0 +1,90 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.job.entries.publish;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class PublishPipelineTest {
+
+  private final List<String> calls = new ArrayList<String>();
+
+  private PublishPipeline.Step step( final String name ) {
+    return new PublishPipeline.Step( () -> calls.add( name ), () -> calls.add( "undo " + name ) );
+  }
+
+  private PublishPipeline.Step failing( final KettleException failure ) {
+    return new PublishPipeline.Step( () -> {
+      throw failure;
+    }, () -> calls.add( "undo failed" ) );
+  }
+
+  @Test
+  public void testStepsRunInOrderUntilOneFails() throws Exception {
+    PublishPipeline pipeline = new PublishPipeline();
+    KettleException failure = new KettleException( "schema" );
+    try {
+      pipeline.publish( step( "xmi" ), failing( failure ), step( "never" ) );
+      fail();
+    } catch ( KettleException e ) {
+      assertSame( failure, e );
+    }
+    assertEquals( asList( "xmi" ), calls );
+    assertEquals( 1, pipeline.getPublishedCount() );
+  }
+
+  @Test
+  public void testRollbackUndoesPublishedStepsLatestFirst() throws Exception {
+    PublishPipeline pipeline = new PublishPipeline();
+    pipeline.publish( step( "connection" ) );
+    KettleException failure = new KettleException( "xmi" );
+    try {
+      pipeline.publish( step( "xmi" ), failing( failure ) );
+      fail();
+    } catch ( KettleException e ) {
+      assertSame( failure, e );
+    }
+    calls.clear();
+    pipeline.rollback( mock( LogChannelInterface.class ) );
+    assertEquals( asList( "undo xmi", "undo connection" ), calls );
+    assertEquals( 0, pipeline.getPublishedCount() );
+  }
+
+  @Test
+  public void testRollbackContinuesAfterFailedCompensation() throws Exception {
+    PublishPipeline pipeline = new PublishPipeline();
+    pipeline.publish( step( "connection" ) );
+    pipeline.publish( new PublishPipeline.Step( () -> calls.add( "xmi" ), () -> {
+      throw new KettleException( "cannot delete" );
+    } ) );
+    LogChannelInterface log = mock( LogChannelInterface.class );
+    calls.clear();
+    pipeline.rollback( log );
+    assertEquals( asList( "undo connection" ), calls );
+    verify( log ).logError( anyString(), any( Throwable.class ) );
+  }
+}
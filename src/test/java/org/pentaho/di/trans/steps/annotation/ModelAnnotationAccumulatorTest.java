@@ -0,0 +1,156 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.annotation;
+
+import org.junit.Test;
+import org.pentaho.agilebi.modeler.models.annotations.CreateAttribute;
+import org.pentaho.agilebi.modeler.models.annotations.CreateMeasure;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotation;
+import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ModelAnnotationAccumulatorTest {
+
+  private static final String KEY = "annotations";
+
+  private static ModelAnnotation<CreateAttribute> attribute( String name, String field ) {
+    CreateAttribute ca = new CreateAttribute();
+    ca.setName( name );
+    ca.setField( field );
+    ModelAnnotation<CreateAttribute> annotation = new ModelAnnotation<CreateAttribute>( ca );
+    annotation.setName( name );
+    return annotation;
+  }
+
+  private static ModelAnnotation<CreateMeasure> measure( String name, String field ) {
+    CreateMeasure cm = new CreateMeasure();
+    cm.setName( name );
+    cm.setField( field );
+    ModelAnnotation<CreateMeasure> annotation = new ModelAnnotation<CreateMeasure>( cm );
+    annotation.setName( name );
+    return annotation;
+  }
+
+  @Test
+  public void testDeduplicatesAndKeepsOrder() {
+    ModelAnnotationAccumulator accumulator = new ModelAnnotationAccumulator();
+    ModelAnnotation<CreateAttribute> a1 = attribute( "a1", "f1" );
+    ModelAnnotation<CreateMeasure> m1 = measure( "m1", "f2" );
+
+    assertTrue( accumulator.add( a1 ) );
+    assertTrue( accumulator.add( m1 ) );
+    assertFalse( accumulator.add( a1 ) );
+    assertTrue( accumulator.add( attribute( "a1", "f3" ) ) );
+
+    ModelAnnotationGroup group = accumulator.toModelAnnotationGroup();
+    assertEquals( 3, group.size() );
+    assertSame( a1, group.get( 0 ) );
+    assertSame( m1, group.get( 1 ) );
+    assertEquals( "f3", group.get( 2 ).getAnnotation().getField() );
+  }
+
+  @Test
+  public void testLaterStepReannotatesTheField() {
+    ModelAnnotationAccumulator accumulator = new ModelAnnotationAccumulator();
+    ModelAnnotation<CreateAttribute> first = attribute( "a1", "f1" );
+    ModelAnnotation<CreateMeasure> m1 = measure( "m1", "f2" );
+    ModelAnnotation<CreateAttribute> later = attribute( "a1", "f1" );
+
+    accumulator.add( first );
+    accumulator.add( m1 );
+    assertTrue( accumulator.add( later ) );
+
+    ModelAnnotationGroup group = accumulator.toModelAnnotationGroup();
+    assertEquals( 2, group.size() );
+    assertSame( m1, group.get( 0 ) );
+    assertSame( later, group.get( 1 ) );
+  }
+
+  @Test
+  public void testUnnamedAnnotationsAreKeptApart() {
+    ModelAnnotationAccumulator accumulator = new ModelAnnotationAccumulator();
+    List<ModelAnnotation<CreateAttribute>> unnamed = new ArrayList<>();
+    for ( int i = 0; i < 1000; i++ ) {
+      CreateAttribute ca = new CreateAttribute();
+      ca.setField( "f" );
+      unnamed.add( new ModelAnnotation<CreateAttribute>( ca ) );
+    }
+    for ( ModelAnnotation<CreateAttribute> annotation : unnamed ) {
+      annotation.setName( null );
+      assertTrue( accumulator.add( annotation ) );
+    }
+    assertFalse( accumulator.add( unnamed.get( 0 ) ) );
+    assertEquals( 1000, accumulator.size() );
+  }
+
+  @Test
+  public void testMigratesPlainGroup() {
+    Map<String, Object> map = new HashMap<>();
+    ModelAnnotation<CreateAttribute> a1 = attribute( "a1", "f1" );
+    map.put( KEY, new ModelAnnotationGroup( a1 ) );
+
+    ModelAnnotationAccumulator accumulator = ModelAnnotationAccumulator.getOrCreate( map, KEY );
+    assertSame( accumulator, map.get( KEY ) );
+    assertSame( accumulator, ModelAnnotationAccumulator.getOrCreate( map, KEY ) );
+    assertEquals( 1, accumulator.size() );
+    assertSame( a1, ModelAnnotationAccumulator.toModelAnnotationGroup( map, KEY ).get( 0 ) );
+  }
+
+  @Test
+  public void testNothingRegistered() {
+    assertNull( ModelAnnotationAccumulator.toModelAnnotationGroup( new HashMap<String, Object>(), KEY ) );
+  }
+
+  @Test
+  public void testConcurrentStepCopies() throws Exception {
+    final Map<String, Object> map = new HashMap<>();
+    final ModelAnnotationGroup stepAnnotations = new ModelAnnotationGroup();
+    for ( int i = 0; i < 100; i++ ) {
+      stepAnnotations.add( measure( "m" + i, "f" + i ) );
+    }
+    int copies = 8;
+    final CountDownLatch start = new CountDownLatch( 1 );
+    ExecutorService executor = Executors.newFixedThreadPool( copies );
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for ( int i = 0; i < copies; i++ ) {
+        futures.add( executor.submit( () -> {
+          start.await();
+          ModelAnnotationAccumulator.getOrCreate( map, KEY ).addAll( stepAnnotations );
+          return null;
+        } ) );
+      }
+      start.countDown();
+      for ( Future<?> future : futures ) {
+        future.get( 10, TimeUnit.SECONDS );
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    ModelAnnotationGroup group = ModelAnnotationAccumulator.toModelAnnotationGroup( map, KEY );
+    assertEquals( 100, group.size() );
+  }
+}
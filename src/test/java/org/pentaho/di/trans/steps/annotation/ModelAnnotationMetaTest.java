@@ -14,6 +14,7 @@
 package org.pentaho.di.trans.steps.annotation;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -21,6 +22,7 @@ import org.junit.Before;
 import org.junit.Test;
 import static org.mockito.Mockito.any;
 
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.pentaho.agilebi.modeler.models.annotations.CreateAttribute;
 import org.pentaho.agilebi.modeler.models.annotations.CreateDimensionKey;
@@ -112,6 +114,18 @@ public class ModelAnnotationMetaTest {
         + "<description/></annotations></step>" );
   }
 
+  @Test
+  public void testProfileFieldsXml() throws Exception {
+    modelAnnotationMeta.setDefault();
+    modelAnnotationMeta.setProfileFields( true );
+    String xml = XMLHandler.openTag( "step" ) + modelAnnotationMeta.getXML() + XMLHandler.closeTag( "step" );
+    assertTrue( xml.contains( "<profileFields>Y</profileFields>" ) );
+
+    ModelAnnotationMeta loaded = new ModelAnnotationMeta();
+    loaded.loadXML( asDOMNode( xml ), null, metaStore );
+    assertTrue( loaded.isProfileFields() );
+  }
+
   @Test
   public void testNotifications() throws Exception {
     DatabaseLookupMeta dlm = new DatabaseLookupMeta();
@@ -388,29 +402,22 @@ public class ModelAnnotationMetaTest {
     StringObjectId stepId = new StringObjectId( "stepId" );
     meta.saveRep( rep, metaStore, transId, stepId );
 
-    verify( rep ).saveStepAttribute( transId, stepId, "CATEGORY_NAME", null );
-    verify( rep ).saveStepAttribute( transId, stepId, "TARGET_OUTPUT_STEP", null );
-
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "ANNOTATION_NAME", "12345" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "ANNOTATION_FIELD_NAME", "GenderField" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "ANNOTATION_TYPE", CREATE_ATTRIBUTE.toString() );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "PROPERTY_VALUE_field", "GenderField" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "PROPERTY_VALUE_unique", "false" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "PROPERTY_VALUE_hierarchy", "Gender" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "PROPERTY_VALUE_name", "Gender" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "PROPERTY_VALUE_hidden", "false" );
-
-    verify( rep ).saveStepAttribute( transId, stepId, 1, "ANNOTATION_NAME", "54321" );
-    verify( rep ).saveStepAttribute( transId, stepId, 1, "ANNOTATION_FIELD_NAME", "sales" );
-    verify( rep ).saveStepAttribute( transId, stepId, 1, "ANNOTATION_TYPE", CREATE_MEASURE.toString() );
-    verify( rep ).saveStepAttribute( transId, stepId, 1, "PROPERTY_VALUE_field", "sales" );
-    verify( rep ).saveStepAttribute( transId, stepId, 1, "PROPERTY_VALUE_name", "Total Sales" );
-    verify( rep ).saveStepAttribute( transId, stepId, 1, "PROPERTY_VALUE_aggregateType", "SUM" );
-    verify( rep ).saveStepAttribute( transId, stepId, 1, "PROPERTY_VALUE_hidden", "false" );
-
-    verify( rep ).saveStepAttribute( transId, stepId, "SHARED_DIMENSION", false );
-    verify( rep ).saveStepAttribute( transId, stepId, "DESCRIPTION", "aDescription" );
+    ArgumentCaptor<String> xml = ArgumentCaptor.forClass( String.class );
+    verify( rep ).saveStepAttribute( eq( transId ), eq( stepId ), eq( BaseAnnotationMeta.REP_XML ), xml.capture() );
     verifyNoMoreInteractions( rep );
+
+    ModelAnnotationMeta loaded = new ModelAnnotationMeta();
+    loaded.readRep( repWithXml( stepId, xml.getValue() ), metaStore, stepId, Collections.<DatabaseMeta>emptyList() );
+    ModelAnnotationGroup loadedGroup = loaded.getModelAnnotations();
+    assertEquals( 2, loadedGroup.size() );
+    assertEquals( "12345", loadedGroup.get( 0 ).getName() );
+    assertEquals( CREATE_ATTRIBUTE, loadedGroup.get( 0 ).getType() );
+    assertEquals( "GenderField", loadedGroup.get( 0 ).getAnnotation().getField() );
+    assertEquals( "Gender", ( (CreateAttribute) loadedGroup.get( 0 ).getAnnotation() ).getHierarchy() );
+    assertEquals( "54321", loadedGroup.get( 1 ).getName() );
+    assertEquals( AggregationType.SUM, ( (CreateMeasure) loadedGroup.get( 1 ).getAnnotation() ).getAggregateType() );
+    assertEquals( "aDescription", loadedGroup.getDescription() );
+    assertFalse( loaded.isSharedDimension() );
   }
 
   @Test
@@ -445,31 +452,61 @@ public class ModelAnnotationMetaTest {
     StringObjectId stepId = new StringObjectId( "stepId" );
     meta.saveRep( rep, metaStore, transId, stepId );
 
-    verify( rep ).saveStepAttribute( transId, stepId, "CATEGORY_NAME", null );
-    verify( rep ).saveStepAttribute( transId, stepId, "TARGET_OUTPUT_STEP", null );
-
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "ANNOTATION_NAME", "12345" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "ANNOTATION_FIELD_NAME", "GenderField" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "ANNOTATION_TYPE", CREATE_ATTRIBUTE.toString() );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "PROPERTY_VALUE_field", "GenderField" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "PROPERTY_VALUE_unique", "false" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "PROPERTY_VALUE_hierarchy", "Gender" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "PROPERTY_VALUE_name", "Gender" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "PROPERTY_VALUE_hidden", "false" );
-
-    verify( rep ).saveStepAttribute( transId, stepId, "SHARED_DIMENSION", true );
-    verify( rep ).saveStepAttribute( transId, stepId, "DESCRIPTION", "aDescription" );
-
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "DP_NAME", "sample" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "DP_SCHEMA_NAME", "sampleSchema" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "DP_TABLE_NAME", "salesTable" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "DP_DATABASE_META_NAME_REF", "ref" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "CM_NAME_0", "Gender" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "CM_COLUMN_NAME_0", "sex" );
-    verify( rep ).saveStepAttribute( transId, stepId, 0, "CM_DATA_TYPE_0", "STRING" );
-    verify( rep ).saveStepAttribute( transId, stepId, "CM_COUNT_0", 1 );
+    ArgumentCaptor<String> xml = ArgumentCaptor.forClass( String.class );
+    verify( rep ).saveStepAttribute( eq( transId ), eq( stepId ), eq( BaseAnnotationMeta.REP_XML ), xml.capture() );
     verifyNoMoreInteractions( rep );
 
+    ModelAnnotationMeta loaded = new ModelAnnotationMeta();
+    loaded.readRep( repWithXml( stepId, xml.getValue() ), metaStore, stepId, Collections.<DatabaseMeta>emptyList() );
+    assertTrue( loaded.isSharedDimension() );
+    ModelAnnotationGroup loadedGroup = loaded.getModelAnnotations();
+    assertEquals( "12345", loadedGroup.get( 0 ).getName() );
+    DataProvider loadedProvider = loadedGroup.getDataProviders().get( 0 );
+    assertEquals( "sample", loadedProvider.getName() );
+    assertEquals( "sampleSchema", loadedProvider.getSchemaName() );
+    assertEquals( "salesTable", loadedProvider.getTableName() );
+    assertEquals( "ref", loadedProvider.getDatabaseMetaNameRef() );
+    assertEquals( 1, loadedProvider.getColumnMappings().size() );
+    assertEquals( "Gender", loadedProvider.getColumnMappings().get( 0 ).getName() );
+    assertEquals( "sex", loadedProvider.getColumnMappings().get( 0 ).getColumnName() );
+    assertEquals( DataType.STRING, loadedProvider.getColumnMappings().get( 0 ).getColumnDataType() );
+  }
+
+  @Test
+  public void testReadRepUsesSingleAttribute() throws Exception {
+    StringObjectId stepId = new StringObjectId( "stepId" );
+    ModelAnnotationMeta meta = new ModelAnnotationMeta();
+    meta.setModelAnnotations( new ModelAnnotationGroup() );
+    meta.setTargetOutputStep( "target" );
+    meta.setProfileFields( true );
+    Repository rep = mock( Repository.class );
+    meta.saveRep( rep, metaStore, new StringObjectId( "transId" ), stepId );
+    ArgumentCaptor<String> xml = ArgumentCaptor.forClass( String.class );
+    verify( rep ).saveStepAttribute( any( StringObjectId.class ), eq( stepId ), eq( BaseAnnotationMeta.REP_XML ),
+      xml.capture() );
+
+    Repository readRep = repWithXml( stepId, xml.getValue() );
+    ModelAnnotationMeta loaded = new ModelAnnotationMeta();
+    loaded.readRep( readRep, metaStore, stepId, Collections.<DatabaseMeta>emptyList() );
+    assertEquals( "target", loaded.getTargetOutputStep() );
+    assertTrue( loaded.isProfileFields() );
+    verify( readRep ).getStepAttributeString( stepId, BaseAnnotationMeta.REP_XML );
+    verifyNoMoreInteractions( readRep );
+  }
+
+  @Test( expected = KettleException.class )
+  public void testReadRepRejectsNewerFormat() throws Exception {
+    StringObjectId stepId = new StringObjectId( "stepId" );
+    String xml = "<" + BaseAnnotationMeta.REP_XML_TAG + " version=\"" + ( BaseAnnotationMeta.REP_XML_VERSION + 1 )
+      + "\"/>";
+    new ModelAnnotationMeta().readRep( repWithXml( stepId, xml ), metaStore, stepId,
+      Collections.<DatabaseMeta>emptyList() );
+  }
+
+  private Repository repWithXml( StringObjectId stepId, String xml ) throws KettleException {
+    Repository rep = mock( Repository.class );
+    when( rep.getStepAttributeString( stepId, BaseAnnotationMeta.REP_XML ) ).thenReturn( xml );
+    return rep;
   }
 
   @Test
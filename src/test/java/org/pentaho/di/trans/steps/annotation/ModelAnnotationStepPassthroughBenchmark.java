@@ -0,0 +1,104 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.annotation;
+
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the rows per second of {@link ModelAnnotationStep} passing rows straight to its output row set with the
+ * same rows going through putRow, as they do when the step profiles fields or has listeners. Not a test, run the main
+ * method by hand.
+ */
+public class ModelAnnotationStepPassthroughBenchmark {
+
+  private static final int ROWS = 1000000;
+  private static final int WARMUP = 3;
+  private static final int ITERATIONS = 10;
+
+  public static void main( String[] args ) throws Exception {
+    KettleEnvironment.init();
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    Object[][] rows = new Object[ ROWS ][];
+    for ( int i = 0; i < ROWS; i++ ) {
+      rows[ i ] = new Object[] { (long) i, "row " + i };
+    }
+
+    report( "putRow", rowMeta, rows, false );
+    report( "passthrough", rowMeta, rows, true );
+  }
+
+  private static void report( String name, RowMeta rowMeta, Object[][] rows, boolean passthrough ) throws Exception {
+    for ( int i = 0; i < WARMUP; i++ ) {
+      run( rowMeta, rows, passthrough );
+    }
+    long nanos = 0;
+    for ( int i = 0; i < ITERATIONS; i++ ) {
+      nanos += run( rowMeta, rows, passthrough );
+    }
+    long millis = TimeUnit.NANOSECONDS.toMillis( nanos / ITERATIONS );
+    long rowsPerSecond = ROWS * TimeUnit.SECONDS.toNanos( 1 ) / ( nanos / ITERATIONS );
+    System.out.println( name + ": " + millis + " ms per " + ROWS + " rows, " + rowsPerSecond + " rows/s" );
+  }
+
+  /**
+   * @return the nanoseconds the step took to move all rows from its input to its output row set
+   */
+  private static long run( RowMeta rowMeta, Object[][] rows, boolean passthrough ) throws Exception {
+    ModelAnnotationMeta meta = new ModelAnnotationMeta();
+    meta.setDefault();
+    TransMeta transMeta = new TransMeta();
+    StepMeta stepMeta = new StepMeta( "Annotate", meta );
+    transMeta.addStep( stepMeta );
+    Trans trans = new Trans( transMeta );
+    trans.setRunning( true );
+
+    ModelAnnotationData data = new ModelAnnotationData();
+    // the step decides on the first row, decide for it to take the putRow path
+    data.passthrough = passthrough ? null : Boolean.FALSE;
+    ModelAnnotationStep step = new ModelAnnotationStep( stepMeta, data, 0, transMeta, trans );
+    RowSet input = new BlockingRowSet( rows.length );
+    for ( Object[] row : rows ) {
+      input.putRow( rowMeta, row );
+    }
+    input.setDone();
+    RowSet output = new BlockingRowSet( rows.length );
+    step.setInputRowSets( new ArrayList<>( Collections.singletonList( input ) ) );
+    step.setOutputRowSets( new ArrayList<>( Collections.singletonList( output ) ) );
+
+    long start = System.nanoTime();
+    while ( step.processRow( meta, data ) ) {
+      // every call moves a row, or a batch of them when passing through
+    }
+    long nanos = System.nanoTime() - start;
+    if ( output.size() != rows.length || passthrough != Boolean.TRUE.equals( data.passthrough ) ) {
+      throw new IllegalStateException( "rows did not go through the " + ( passthrough ? "passthrough" : "putRow" )
+        + " path" );
+    }
+    return nanos;
+  }
+}
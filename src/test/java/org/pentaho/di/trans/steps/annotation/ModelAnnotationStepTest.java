@@ -21,15 +21,20 @@ import org.pentaho.agilebi.modeler.models.annotations.LinkDimension;
 import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotation;
 import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationGroup;
 import org.pentaho.agilebi.modeler.models.annotations.ModelAnnotationManager;
+import org.pentaho.di.core.BlockingRowSet;
+import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.logging.LogLevel;
+import org.pentaho.di.core.refinery.profile.FieldProfiles;
 import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
 import org.pentaho.di.core.row.value.ValueMetaNumber;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.job.Job;
 import org.pentaho.di.job.entries.build.JobEntryBuildModel;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.RowHandler;
 import org.pentaho.di.trans.step.StepDataInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaDataCombi;
@@ -41,10 +46,14 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.*;
+import static org.mockito.AdditionalMatchers.and;
 import static org.mockito.Mockito.*;
 
 public class ModelAnnotationStepTest extends InitializeLogging {
 
+  // fake row telling the one shot step to read its input row sets
+  private static final Object[] INPUT_ROWS = new Object[] {};
+
   @Test
   public void testPutsAnnotationGroupIntoTheExtensionMap() throws Exception {
     StepDataInterface stepDataInterface = new ModelAnnotationData();
@@ -62,7 +71,8 @@ public class ModelAnnotationStepTest extends InitializeLogging {
     assertTrue( "init fail", init );
     modelAnnotation.processRow( modelAnnotationMeta, stepDataInterface );
     ModelAnnotationGroup actualAnnotations =
-        (ModelAnnotationGroup) modelAnnotation.getExtensionDataMap().get( JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
+        ModelAnnotationAccumulator.toModelAnnotationGroup(
+          modelAnnotation.getExtensionDataMap(), JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
     assertEquals( 1, actualAnnotations.size() );
     assertSame( annotationMock1, actualAnnotations.get( 0 ) );
     CreateAttribute ca2 = new CreateAttribute();
@@ -75,11 +85,12 @@ public class ModelAnnotationStepTest extends InitializeLogging {
     assertTrue( "init fail", init );
     modelAnnotation.processRow( modelAnnotationMeta, stepDataInterface );
     actualAnnotations =
-        (ModelAnnotationGroup) modelAnnotation.getExtensionDataMap().get( JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
-    assertEquals( 3, actualAnnotations.size() );
+        ModelAnnotationAccumulator.toModelAnnotationGroup(
+          modelAnnotation.getExtensionDataMap(), JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
+    // annotations registered again by the same step are not duplicated
+    assertEquals( 2, actualAnnotations.size() );
     assertSame( annotationMock1, actualAnnotations.get( 0 ) );
-    assertSame( annotationMock1, actualAnnotations.get( 1 ) );
-    assertSame( annotationMock2, actualAnnotations.get( 2 ) );
+    assertSame( annotationMock2, actualAnnotations.get( 1 ) );
   }
 
   @Test
@@ -100,7 +111,8 @@ public class ModelAnnotationStepTest extends InitializeLogging {
     assertTrue( "init fail", init );
     modelAnnotation.processRow( modelAnnotationMeta, stepDataInterface );
     ModelAnnotationGroup actualAnnotations =
-        (ModelAnnotationGroup) modelAnnotation.getExtensionDataMap().get( JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
+        ModelAnnotationAccumulator.toModelAnnotationGroup(
+          modelAnnotation.getExtensionDataMap(), JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
     assertEquals( 1, actualAnnotations.size() );
     assertSame( annotationMock1, actualAnnotations.get( 0 ) );
     CreateAttribute ca2 = new CreateAttribute();
@@ -113,11 +125,12 @@ public class ModelAnnotationStepTest extends InitializeLogging {
     assertTrue( "init fail", init );
     modelAnnotation.processRow( modelAnnotationMeta, stepDataInterface );
     actualAnnotations =
-        (ModelAnnotationGroup) modelAnnotation.getExtensionDataMap().get( JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
-    assertEquals( 3, actualAnnotations.size() );
+        ModelAnnotationAccumulator.toModelAnnotationGroup(
+          modelAnnotation.getExtensionDataMap(), JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
+    // annotations registered again by the same step are not duplicated
+    assertEquals( 2, actualAnnotations.size() );
     assertSame( annotationMock1, actualAnnotations.get( 0 ) );
-    assertSame( annotationMock1, actualAnnotations.get( 1 ) );
-    assertSame( annotationMock2, actualAnnotations.get( 2 ) );
+    assertSame( annotationMock2, actualAnnotations.get( 1 ) );
   }
 
   @Test
@@ -159,7 +172,8 @@ public class ModelAnnotationStepTest extends InitializeLogging {
     boolean init = modelAnnotation.init( modelAnnotationMeta, stepDataInterface );
     assertTrue( "init fail", init );
     ModelAnnotationGroup actualAnnotations =
-        (ModelAnnotationGroup) modelAnnotation.getExtensionDataMap().get( JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
+        ModelAnnotationAccumulator.toModelAnnotationGroup(
+          modelAnnotation.getExtensionDataMap(), JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
 
     for ( int i = 0; i < modelAnnotations.size(); i++ ) {
       assertEquals( modelAnnotations.get( i ), actualAnnotations.get( i ) );
@@ -208,7 +222,8 @@ public class ModelAnnotationStepTest extends InitializeLogging {
     modelAnnotation.init( modelAnnotationMeta, stepDataInterface );
     modelAnnotation.processRow( modelAnnotationMeta, stepDataInterface );
     ModelAnnotationGroup actualAnnotations =
-        (ModelAnnotationGroup) modelAnnotation.getExtensionDataMap().get( JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
+        ModelAnnotationAccumulator.toModelAnnotationGroup(
+          modelAnnotation.getExtensionDataMap(), JobEntryBuildModel.KEY_MODEL_ANNOTATIONS );
 
     for ( int i = 0; i < modelAnnotations.size(); i++ ) {
       assertEquals( modelAnnotations.get( i ), actualAnnotations.get( i ) );
@@ -396,6 +411,50 @@ public class ModelAnnotationStepTest extends InitializeLogging {
     verify( mockLog ).logError( "Please select a valid data provider step." );
   }
 
+  @Test
+  public void testReportsAllNonNumericMeasures() throws Exception {
+    ModelAnnotationGroup group = new ModelAnnotationGroup();
+    for ( String field : new String[] { "f1", "f2", "f3" } ) {
+      CreateMeasure cm = new CreateMeasure();
+      cm.setName( "m_" + field );
+      cm.setField( field );
+      group.add( new ModelAnnotation<CreateMeasure>( cm ) );
+    }
+    ModelAnnotationMeta modelAnnotationMeta = new ModelAnnotationMeta();
+    modelAnnotationMeta.setDefault();
+    modelAnnotationMeta.setModelAnnotations( group );
+
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "f1" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "f2" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "f3" ) );
+    StepDataInterface stepDataInterface = new ModelAnnotationData();
+    ModelAnnotationStep modelAnnotation = spy( createOneShotStep( stepDataInterface, null, null ) );
+    when( modelAnnotation.getInputRowMeta() ).thenReturn( rowMeta );
+
+    assertFalse( modelAnnotation.init( modelAnnotationMeta, stepDataInterface ) );
+    verify( mockLog ).logError(
+        and( contains( "f1: Aggregation type SUM" ), contains( "f3: Aggregation type SUM" ) ),
+        any( KettleException.class ) );
+    verify( mockLog, never() ).logError( contains( "f2:" ), any( KettleException.class ) );
+  }
+
+  @Test
+  public void testPrevStepFieldsResolvedOncePerTrans() throws Exception {
+    StepDataInterface stepDataInterface = new ModelAnnotationData();
+    ModelAnnotationStep modelAnnotation =
+        createOneShotStep( stepDataInterface, null, null, false, new Object[] {} );
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "f1" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "f2" ) );
+    TransMeta transMeta = modelAnnotation.getTransMeta();
+    when( transMeta.getPrevStepFields( modelAnnotation.getStepMeta() ) ).thenReturn( rowMeta );
+
+    assertEquals( Collections.singleton( "f1" ), modelAnnotation.getNonNumericFields().keySet() );
+    assertEquals( Collections.singleton( "f1" ), modelAnnotation.getNonNumericFields().keySet() );
+    verify( transMeta, times( 1 ) ).getPrevStepFields( modelAnnotation.getStepMeta() );
+  }
+
   private ModelAnnotationStep createOneShotStep( StepDataInterface stepDataInterface, IMetaStore metaStore,
       final ModelAnnotationManager manager ) {
     return createOneShotStep( stepDataInterface, metaStore, manager, true, new Object[] {} );
@@ -420,7 +479,7 @@ public class ModelAnnotationStepTest extends InitializeLogging {
     when( trans.getSteps() ).thenReturn( Collections.singletonList( stepMetaDataCombi ) );
     ModelAnnotationStep modelAnnotation = new ModelAnnotationStep( stepMeta, stepDataInterface, 1, transMeta, trans ) {
       @Override public Object[] getRow() throws KettleException {
-        return fakeRow;
+        return fakeRow == INPUT_ROWS ? super.getRow() : fakeRow;
       }
 
       @Override public Trans getTrans() {
@@ -527,4 +586,128 @@ public class ModelAnnotationStepTest extends InitializeLogging {
     assertTrue( status );
     assertEquals( meta.sharedAnnotationGroup, meta.getModelAnnotationCategory() );
   }
+
+  @Test
+  public void testProfilesFieldsWhenEnabled() throws Exception {
+    StepDataInterface stepDataInterface = new ModelAnnotationData();
+    ModelAnnotationStep modelAnnotation =
+      spy( createOneShotStep( stepDataInterface, null, null, true, new Object[] { "a", 2L } ) );
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "f1" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "f2" ) );
+    when( modelAnnotation.getInputRowMeta() ).thenReturn( rowMeta );
+    doNothing().when( modelAnnotation ).putRow( any(), any() );
+    StepMeta select = mock( StepMeta.class );
+    when( select.getName() ).thenReturn( "select" );
+    StepMeta output = mock( StepMeta.class );
+    when( output.getName() ).thenReturn( "output" );
+    when( modelAnnotation.getTransMeta().findNextSteps( modelAnnotation.getStepMeta() ) )
+      .thenReturn( Collections.singletonList( select ) );
+    when( modelAnnotation.getTransMeta().findNextSteps( select ) ).thenReturn( Collections.singletonList( output ) );
+
+    ModelAnnotationMeta meta = new ModelAnnotationMeta();
+    meta.setDefault();
+    meta.setProfileFields( true );
+    assertTrue( modelAnnotation.init( meta, stepDataInterface ) );
+    modelAnnotation.processRow( meta, stepDataInterface );
+    modelAnnotation.processRow( meta, stepDataInterface );
+    modelAnnotation.dispose( meta, stepDataInterface );
+
+    FieldProfiles profiles = FieldProfiles.get( modelAnnotation.getExtensionDataMap(),
+      JobEntryBuildModel.KEY_FIELD_PROFILES_PREFIX + "output" );
+    assertEquals( 2, profiles.get( "f1" ).getCount() );
+    assertEquals( 1, profiles.get( "f1" ).getCardinality() );
+    assertEquals( 4.0, profiles.get( "f2" ).getSum(), 0 );
+    assertNotNull( FieldProfiles.get( modelAnnotation.getExtensionDataMap(),
+      JobEntryBuildModel.KEY_FIELD_PROFILES_PREFIX + "select" ) );
+  }
+
+  @Test
+  public void testProfilesGoToTheTargetOutputStep() throws Exception {
+    ModelAnnotationStep modelAnnotation = createOneShotStep( new ModelAnnotationData(), null, null );
+    StepMeta next = mock( StepMeta.class );
+    when( next.getName() ).thenReturn( "next" );
+    when( modelAnnotation.getTransMeta().findNextSteps( modelAnnotation.getStepMeta() ) )
+      .thenReturn( Collections.singletonList( next ) );
+
+    ModelAnnotationMeta meta = new ModelAnnotationMeta();
+    assertEquals( Collections.singleton( "next" ), modelAnnotation.getProfiledOutputSteps( meta ) );
+    meta.setTargetOutputStep( "output" );
+    assertEquals( Collections.singleton( "output" ), modelAnnotation.getProfiledOutputSteps( meta ) );
+  }
+
+  @Test
+  public void testNoProfilesByDefault() throws Exception {
+    StepDataInterface stepDataInterface = new ModelAnnotationData();
+    ModelAnnotationStep modelAnnotation = spy( createOneShotStep( stepDataInterface, null, null ) );
+    doNothing().when( modelAnnotation ).putRow( null, new Object[]{} );
+
+    ModelAnnotationMeta meta = new ModelAnnotationMeta();
+    meta.setDefault();
+    assertTrue( modelAnnotation.init( meta, stepDataInterface ) );
+    modelAnnotation.processRow( meta, stepDataInterface );
+    modelAnnotation.dispose( meta, stepDataInterface );
+
+    assertTrue( modelAnnotation.getExtensionDataMap().keySet().stream()
+      .noneMatch( key -> key.startsWith( JobEntryBuildModel.KEY_FIELD_PROFILES_PREFIX ) ) );
+  }
+
+  @Test
+  public void testPassesRowsStraightThrough() throws Exception {
+    StepDataInterface stepDataInterface = new ModelAnnotationData();
+    ModelAnnotationStep modelAnnotation = createOneShotStep( stepDataInterface, null, null, true, INPUT_ROWS );
+    when( modelAnnotation.getTrans().isRunning() ).thenReturn( true );
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "f1" ) );
+    int rowCount = ModelAnnotationStep.PASSTHROUGH_BATCH_SIZE + 5;
+    RowSet input = new BlockingRowSet( rowCount );
+    for ( long i = 0; i < rowCount; i++ ) {
+      input.putRow( rowMeta, new Object[] { i } );
+    }
+    input.setDone();
+    RowSet output = new BlockingRowSet( rowCount );
+    modelAnnotation.setInputRowSets( new ArrayList<>( Collections.singletonList( input ) ) );
+    modelAnnotation.setOutputRowSets( new ArrayList<>( Collections.singletonList( output ) ) );
+
+    ModelAnnotationMeta meta = new ModelAnnotationMeta();
+    meta.setDefault();
+    assertTrue( modelAnnotation.init( meta, stepDataInterface ) );
+    int calls = 0;
+    while ( modelAnnotation.processRow( meta, stepDataInterface ) ) {
+      calls++;
+    }
+
+    assertEquals( 1, calls );
+    assertTrue( ( (ModelAnnotationData) stepDataInterface ).passthrough );
+    assertEquals( rowCount, modelAnnotation.getLinesRead() );
+    assertEquals( rowCount, modelAnnotation.getLinesWritten() );
+    assertEquals( rowCount, output.size() );
+    assertEquals( 0L, output.getRowImmediate()[ 0 ] );
+    assertTrue( output.isDone() );
+  }
+
+  @Test
+  public void testNoPassthroughWhenProfiling() throws Exception {
+    StepDataInterface stepDataInterface = new ModelAnnotationData();
+    ModelAnnotationStep modelAnnotation = createOneShotStep( stepDataInterface, null, null );
+    modelAnnotation.setInputRowSets( new ArrayList<>( Collections.singletonList( new BlockingRowSet( 1 ) ) ) );
+    modelAnnotation.setOutputRowSets( new ArrayList<>( Collections.singletonList( new BlockingRowSet( 1 ) ) ) );
+
+    ModelAnnotationMeta meta = new ModelAnnotationMeta();
+    assertTrue( modelAnnotation.isPassthroughPossible( meta ) );
+    meta.setProfileFields( true );
+    assertFalse( modelAnnotation.isPassthroughPossible( meta ) );
+  }
+
+  @Test
+  public void testNoPassthroughWithCustomRowHandler() throws Exception {
+    StepDataInterface stepDataInterface = new ModelAnnotationData();
+    ModelAnnotationStep modelAnnotation = createOneShotStep( stepDataInterface, null, null );
+    modelAnnotation.setInputRowSets( new ArrayList<>( Collections.singletonList( new BlockingRowSet( 1 ) ) ) );
+    modelAnnotation.setOutputRowSets( new ArrayList<>( Collections.singletonList( new BlockingRowSet( 1 ) ) ) );
+
+    ModelAnnotationMeta meta = new ModelAnnotationMeta();
+    modelAnnotation.setRowHandler( mock( RowHandler.class ) );
+    assertFalse( modelAnnotation.isPassthroughPossible( meta ) );
+  }
 }
@@ -0,0 +1,188 @@
+/*! ******************************************************************************
+ *
+ * Pentaho
+ *
+ * Copyright (C) 2024 by Hitachi Vantara, LLC : http://www.pentaho.com
+ *
+ * Use of this software is governed by the Business Source License included
+ * in the LICENSE.TXT file.
+ *
+ * Change Date: 2029-07-20
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.ObjectLocationSpecificationMethod;
+import org.pentaho.di.core.variables.Variables;
+import org.pentaho.di.job.entries.trans.JobEntryTrans;
+import org.pentaho.di.repository.Repository;
+import org.pentaho.di.repository.RepositoryDirectoryInterface;
+import org.pentaho.di.repository.RepositoryObject;
+import org.pentaho.di.repository.RepositoryObjectType;
+import org.pentaho.di.repository.StringObjectId;
+import org.pentaho.di.trans.StepWithMappingMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.metastore.api.IMetaStore;
+
+import java.io.File;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.same;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TransMetaCacheTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final TransMetaCache cache = new TransMetaCache();
+  private final Variables space = new Variables();
+  private final IMetaStore metaStore = mock( IMetaStore.class );
+
+  private File ktr;
+  private JobEntryTrans entry;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    if ( !KettleClientEnvironment.isInitialized() ) {
+      KettleClientEnvironment.init();
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    ktr = temporaryFolder.newFile( "sales.ktr" );
+    ktr.setLastModified( 10000L );
+    space.setVariable( "dir", temporaryFolder.getRoot().getAbsolutePath() );
+    entry = mock( JobEntryTrans.class );
+    when( entry.getSpecificationMethod() ).thenReturn( ObjectLocationSpecificationMethod.FILENAME );
+    when( entry.getFilename() ).thenReturn( "${dir}/sales.ktr" );
+    when( entry.getTransMeta( null, metaStore, space ) ).thenReturn( new TransMeta(), new TransMeta() );
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty( TransMetaCache.SIZE_PROPERTY );
+  }
+
+  @Test
+  public void testFileIsLoadedAgainOnlyWhenChanged() throws Exception {
+    TransMeta transMeta = cache.getTransMeta( entry, null, metaStore, space );
+    assertSame( transMeta, cache.getTransMeta( entry, null, metaStore, space ) );
+    verify( entry, times( 1 ) ).getTransMeta( null, metaStore, space );
+
+    ktr.setLastModified( 20000L );
+    TransMeta saved = cache.getTransMeta( entry, null, metaStore, space );
+    assertSame( saved, cache.getTransMeta( entry, null, metaStore, space ) );
+    verify( entry, times( 2 ) ).getTransMeta( null, metaStore, space );
+    assertEquals( 1, cache.size() );
+  }
+
+  @Test
+  public void testMissingFileIsNotCached() throws Exception {
+    when( entry.getFilename() ).thenReturn( "${dir}/missing.ktr" );
+    cache.getTransMeta( entry, null, metaStore, space );
+    cache.getTransMeta( entry, null, metaStore, space );
+    verify( entry, times( 2 ) ).getTransMeta( null, metaStore, space );
+    assertEquals( 0, cache.size() );
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    System.setProperty( TransMetaCache.SIZE_PROPERTY, "0" );
+    cache.getTransMeta( entry, null, metaStore, space );
+    cache.getTransMeta( entry, null, metaStore, space );
+    verify( entry, times( 2 ) ).getTransMeta( null, metaStore, space );
+  }
+
+  @Test
+  public void testParentWithOtherVariablesLoadsAgain() throws Exception {
+    Variables other = new Variables();
+    other.setVariable( "dir", space.getVariable( "dir" ) );
+    other.setVariable( "region", "EMEA" );
+    when( entry.getTransMeta( null, metaStore, other ) ).thenReturn( new TransMeta() );
+
+    TransMeta transMeta = cache.getTransMeta( entry, null, metaStore, space );
+    assertNotSame( transMeta, cache.getTransMeta( entry, null, metaStore, other ) );
+    verify( entry, times( 1 ) ).getTransMeta( null, metaStore, other );
+  }
+
+  @Test
+  public void testMappingFromRepositoryByName() throws Exception {
+    Repository repository = mockRepository();
+    StepWithMappingMeta mapping = mockMapping();
+    TransMeta parent = new TransMeta();
+    when( mapping.fetchTransMeta( mapping, repository, metaStore, parent ) ).thenReturn( new TransMeta() );
+
+    TransMeta transMeta = cache.fetchTransMeta( mapping, repository, metaStore, parent );
+    assertSame( transMeta, cache.fetchTransMeta( mapping, repository, metaStore, parent ) );
+    verify( mapping, times( 1 ) ).fetchTransMeta( mapping, repository, metaStore, parent );
+    verify( repository, times( 1 ) ).findDirectory( "/public/mappings" );
+    verify( repository, times( 1 ) ).getTransformationID( eq( "lookup" ), any( RepositoryDirectoryInterface.class ) );
+    verify( repository, times( 2 ) ).getObjectInformation( new StringObjectId( "42" ),
+      RepositoryObjectType.TRANSFORMATION );
+  }
+
+  @Test
+  public void testReconnectedRepositoryLoadsAgain() throws Exception {
+    Repository repository = mockRepository();
+    Repository reconnected = mockRepository();
+    StepWithMappingMeta mapping = mockMapping();
+    TransMeta parent = new TransMeta();
+    when( mapping.fetchTransMeta( mapping, repository, metaStore, parent ) ).thenReturn( new TransMeta() );
+    when( mapping.fetchTransMeta( mapping, reconnected, metaStore, parent ) ).thenReturn( new TransMeta() );
+
+    TransMeta transMeta = cache.fetchTransMeta( mapping, repository, metaStore, parent );
+    assertNotSame( transMeta, cache.fetchTransMeta( mapping, reconnected, metaStore, parent ) );
+    verify( mapping, times( 1 ) ).fetchTransMeta( mapping, reconnected, metaStore, parent );
+    verify( reconnected, times( 1 ) ).findDirectory( "/public/mappings" );
+  }
+
+  @Test
+  public void testOtherStepsAreNotCached() throws Exception {
+    StepMetaInterface step = mock( StepMetaInterface.class );
+    TransMeta parent = new TransMeta();
+    cache.fetchTransMeta( step, null, metaStore, parent );
+    cache.fetchTransMeta( step, null, metaStore, parent );
+    verify( step, times( 2 ) ).fetchTransMeta( same( step ), any(), same( metaStore ), same( parent ) );
+    assertEquals( 0, cache.size() );
+  }
+
+  private Repository mockRepository() throws Exception {
+    Repository repository = mock( Repository.class );
+    when( repository.getName() ).thenReturn( "pdi" );
+    RepositoryDirectoryInterface directory = mock( RepositoryDirectoryInterface.class );
+    when( repository.findDirectory( "/public/mappings" ) ).thenReturn( directory );
+    StringObjectId objectId = new StringObjectId( "42" );
+    when( repository.getTransformationID( "lookup", directory ) ).thenReturn( objectId );
+    RepositoryObject information = mock( RepositoryObject.class );
+    when( information.getModifiedDate() ).thenReturn( new Date( 10000L ) );
+    when( repository.getObjectInformation( objectId, RepositoryObjectType.TRANSFORMATION ) ).thenReturn( information );
+    return repository;
+  }
+
+  private StepWithMappingMeta mockMapping() {
+    StepWithMappingMeta mapping = mock( StepWithMappingMeta.class );
+    when( mapping.getSpecificationMethod() ).thenReturn( ObjectLocationSpecificationMethod.REPOSITORY_BY_NAME );
+    when( mapping.getDirectoryPath() ).thenReturn( "/public/mappings" );
+    when( mapping.getTransName() ).thenReturn( "lookup" );
+    return mapping;
+  }
+}
@@ -16,23 +16,36 @@ package org.pentaho.di.trans.util;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.ObjectLocationSpecificationMethod;
 import org.pentaho.di.core.Props;
 import org.pentaho.di.core.ProvidesDatabaseConnectionInformation;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.plugins.PluginRegistry;
 import org.pentaho.di.core.plugins.StepPluginType;
 import org.pentaho.di.repository.Repository;
+import org.pentaho.di.repository.StringObjectId;
+import org.pentaho.di.trans.StepWithMappingMeta;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 import org.pentaho.di.trans.steps.tableoutput.TableOutputMeta;
 import org.pentaho.metastore.api.IMetaStore;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.same;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class TransUtilTest {
@@ -62,6 +75,165 @@ public class TransUtilTest {
     assertNull( stepMap.get( "notOutputStep" ) );
   }
 
+  @Test
+  public void testSharedSubTransformationIsCollectedOnce() throws Exception {
+    final Repository repository = mock( Repository.class );
+    final IMetaStore metastore = mock( IMetaStore.class );
+    final TransMeta shared = mock( TransMeta.class );
+    when( shared.getObjectId() ).thenReturn( new StringObjectId( "shared" ) );
+    final StepMeta output = mock( StepMeta.class );
+    when( output.getName() ).thenReturn( "output" );
+    when( output.getStepMetaInterface() ).thenReturn( mock( TableOutputMeta.class ) );
+    when( shared.getSteps() ).thenReturn( Arrays.asList( output ) );
+
+    final TransMeta transMeta = mock( TransMeta.class );
+    final StepMeta mapping1 = mappingStep( "mapping1", shared );
+    final StepMeta mapping2 = mappingStep( "mapping2", shared );
+    when( transMeta.getSteps() ).thenReturn( Arrays.asList( mapping1, mapping2 ) );
+
+    Map<String, ProvidesDatabaseConnectionInformation> stepMap =
+        TransUtil.collectOutputStepInTrans( transMeta, repository, metastore );
+    assertEquals( 1, stepMap.size() );
+    assertNotNull( stepMap.get( "output" ) );
+    // once to load its sub-transformations, once to collect its steps
+    verify( shared, times( 2 ) ).getSteps();
+  }
+
+  @Test
+  public void testTransformationRunningItsParentIsNotCollectedAgain() throws Exception {
+    final Repository repository = mock( Repository.class );
+    final IMetaStore metastore = mock( IMetaStore.class );
+    final TransMeta transMeta = mock( TransMeta.class );
+    when( transMeta.getFilename() ).thenReturn( "/etl/parent.ktr" );
+    final TransMeta child = mock( TransMeta.class );
+    when( child.getFilename() ).thenReturn( "/etl/child.ktr" );
+    final StepMeta output = mock( StepMeta.class );
+    when( output.getName() ).thenReturn( "output" );
+    when( output.getStepMetaInterface() ).thenReturn( mock( TableOutputMeta.class ) );
+    when( transMeta.getSteps() ).thenReturn( Arrays.asList( mappingStep( "child", child ), output ) );
+    when( child.getSteps() ).thenReturn( Arrays.asList( mappingStep( "parent", transMeta ) ) );
+
+    Map<String, ProvidesDatabaseConnectionInformation> stepMap =
+        TransUtil.collectOutputStepInTrans( transMeta, repository, metastore );
+    assertEquals( 1, stepMap.size() );
+    assertNotNull( stepMap.get( "output" ) );
+    verify( transMeta, times( 2 ) ).getSteps();
+  }
+
+  @Test
+  public void testSiblingSubTransformationsAreLoadedTogether() throws Exception {
+    final TransMeta transMeta = mock( TransMeta.class );
+    final CountDownLatch loading = new CountDownLatch( 2 );
+    final List<StepMeta> steps = new ArrayList<>();
+    for ( String name : asList( "first", "second" ) ) {
+      final TransMeta subTransMeta = transWithOutputStep( name + " output", mock( TableOutputMeta.class ) );
+      final StepMeta stepMeta = mappingStep( name, null );
+      when( stepMeta.getStepMetaInterface().fetchTransMeta( any(), any(), any(), any() ) ).thenAnswer( invocation -> {
+        loading.countDown();
+        // each load waits for the other, one after the other they would time out
+        return loading.await( 10, TimeUnit.SECONDS ) ? subTransMeta : null;
+      } );
+      steps.add( stepMeta );
+    }
+    when( transMeta.getSteps() ).thenReturn( steps );
+
+    Map<String, ProvidesDatabaseConnectionInformation> stepMap =
+        TransUtil.collectOutputStepInTrans( transMeta, null, mock( IMetaStore.class ) );
+    assertEquals( 2, stepMap.size() );
+    assertNotNull( stepMap.get( "first output" ) );
+    assertNotNull( stepMap.get( "second output" ) );
+  }
+
+  @Test
+  public void testRepositoryLoadsRunOnTheCallingThread() throws Exception {
+    final TransMeta transMeta = mock( TransMeta.class );
+    final Thread caller = Thread.currentThread();
+    final List<StepMeta> steps = new ArrayList<>();
+    for ( String name : asList( "first", "second" ) ) {
+      final TransMeta subTransMeta = transWithOutputStep( name + " output", mock( TableOutputMeta.class ) );
+      final StepMeta stepMeta = mappingStep( name, null );
+      when( stepMeta.getStepMetaInterface().fetchTransMeta( any(), any(), any(), any() ) ).thenAnswer(
+        invocation -> Thread.currentThread() == caller ? subTransMeta : null );
+      steps.add( stepMeta );
+    }
+    when( transMeta.getSteps() ).thenReturn( steps );
+
+    Map<String, ProvidesDatabaseConnectionInformation> stepMap =
+        TransUtil.collectOutputStepInTrans( transMeta, mock( Repository.class ), mock( IMetaStore.class ) );
+    assertEquals( 2, stepMap.size() );
+  }
+
+  @Test
+  public void testLaterStepWinsWhateverLoadsFirst() throws Exception {
+    final TransMeta transMeta = mock( TransMeta.class );
+    final TableOutputMeta first = mock( TableOutputMeta.class );
+    final TableOutputMeta second = mock( TableOutputMeta.class );
+    final CountDownLatch secondLoaded = new CountDownLatch( 1 );
+    final StepMeta slow = mappingStep( "slow", null );
+    final TransMeta slowTransMeta = transWithOutputStep( "output", first );
+    when( slow.getStepMetaInterface().fetchTransMeta( any(), any(), any(), any() ) ).thenAnswer( invocation -> {
+      secondLoaded.await( 10, TimeUnit.SECONDS );
+      return slowTransMeta;
+    } );
+    final StepMeta fast = mappingStep( "fast", null );
+    final TransMeta fastTransMeta = transWithOutputStep( "output", second );
+    when( fast.getStepMetaInterface().fetchTransMeta( any(), any(), any(), any() ) ).thenAnswer( invocation -> {
+      secondLoaded.countDown();
+      return fastTransMeta;
+    } );
+    when( transMeta.getSteps() ).thenReturn( asList( slow, fast ) );
+
+    Map<String, ProvidesDatabaseConnectionInformation> stepMap =
+        TransUtil.collectOutputStepInTrans( transMeta, null, mock( IMetaStore.class ) );
+    assertSame( second, stepMap.get( "output" ) );
+  }
+
+  @Test
+  public void testMappingsOfTheSameFileShareOneLoad() throws Exception {
+    final TransMeta transMeta = mock( TransMeta.class );
+    when( transMeta.environmentSubstitute( any( String.class ) ) )
+      .thenAnswer( invocation -> invocation.getArgument( 0 ) );
+    final TransMeta subTransMeta = transWithOutputStep( "output", mock( TableOutputMeta.class ) );
+    final List<StepMeta> steps = new ArrayList<>();
+    final List<StepWithMappingMeta> mappings = new ArrayList<>();
+    for ( String name : asList( "mapping1", "mapping2" ) ) {
+      final StepWithMappingMeta mapping = mock( StepWithMappingMeta.class );
+      when( mapping.getSpecificationMethod() ).thenReturn( ObjectLocationSpecificationMethod.FILENAME );
+      when( mapping.getFileName() ).thenReturn( "/etl/missing/lookup.ktr" );
+      when( mapping.fetchTransMeta( same( mapping ), any(), any(), any() ) ).thenReturn( subTransMeta );
+      final StepMeta stepMeta = mock( StepMeta.class );
+      when( stepMeta.getName() ).thenReturn( name );
+      when( stepMeta.getStepMetaInterface() ).thenReturn( mapping );
+      steps.add( stepMeta );
+      mappings.add( mapping );
+    }
+    when( transMeta.getSteps() ).thenReturn( steps );
+
+    Map<String, ProvidesDatabaseConnectionInformation> stepMap =
+        TransUtil.collectOutputStepInTrans( transMeta, mock( Repository.class ), mock( IMetaStore.class ) );
+    assertEquals( 1, stepMap.size() );
+    verify( mappings.get( 0 ), times( 1 ) ).fetchTransMeta( any(), any(), any(), any() );
+    verify( mappings.get( 1 ), never() ).fetchTransMeta( any(), any(), any(), any() );
+  }
+
+  private TransMeta transWithOutputStep( String name, StepMetaInterface output ) {
+    final TransMeta transMeta = mock( TransMeta.class );
+    final StepMeta stepMeta = mock( StepMeta.class );
+    when( stepMeta.getName() ).thenReturn( name );
+    when( stepMeta.getStepMetaInterface() ).thenReturn( output );
+    when( transMeta.getSteps() ).thenReturn( asList( stepMeta ) );
+    return transMeta;
+  }
+
+  private StepMeta mappingStep( String name, TransMeta subTransMeta ) throws Exception {
+    final StepMeta stepMeta = mock( StepMeta.class );
+    when( stepMeta.getName() ).thenReturn( name );
+    final StepMetaInterface mapping = mock( StepMetaInterface.class );
+    when( stepMeta.getStepMetaInterface() ).thenReturn( mapping );
+    when( mapping.fetchTransMeta( same( mapping ), any(), any(), any() ) ).thenReturn( subTransMeta );
+    return stepMeta;
+  }
+
   @BeforeClass
   public static void setUpBeforeClass() throws Exception {
     if ( !KettleClientEnvironment.isInitialized() ) {
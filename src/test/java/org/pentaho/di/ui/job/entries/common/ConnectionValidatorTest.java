@@ -18,12 +18,15 @@ import org.junit.Test;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.gui.SpoonInterface;
+import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.refinery.publish.agilebi.BiServerConnection;
 import org.pentaho.di.core.refinery.publish.model.DataSourcePublishModel;
 import org.pentaho.di.core.refinery.publish.util.PublishRestUtil;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 /**
@@ -44,6 +47,7 @@ public class ConnectionValidatorTest {
     model = new DataSourcePublishModel();
     model.setBiServerConnection( mock( BiServerConnection.class ) );
 
+    ConnectionValidator.clearValidationCache();
     connectionValidator = new ConnectionValidator();
     connectionValidator.setPublishRestUtil( publishRestUtil );
     connectionValidator.setConnection( model.getBiServerConnection() );
@@ -159,7 +163,7 @@ public class ConnectionValidatorTest {
     doReturn( true ).when( spy ).isPentahoServer();
     doReturn( true ).when( spy ).isUserInfoProvided();
     doReturn( false ).when( spy ).canConnect();
-    when( publishRestUtil.getLastHTTPStatus() ).thenReturn( 404 );
+    doReturn( 404 ).when( spy ).getLastHTTPStatus();
 
     spy.validateConnectionInDesignTime();
     verify( spy ).getMsg( "JobEntryDatasourcePublish.Test.BadURL" );
@@ -219,4 +223,95 @@ public class ConnectionValidatorTest {
 
     spy.validateConnectionInRuntime();
   }
+
+  private BiServerConnection serverConnection( String password ) {
+    BiServerConnection connection = new BiServerConnection();
+    connection.setUrl( "http://localhost:8080/pentaho/" );
+    connection.setUserId( "admin" );
+    connection.setPassword( password );
+    when( publishRestUtil.isUserInfoProvided( connection ) ).thenReturn( true );
+    when( publishRestUtil.isPentahoServer( connection ) ).thenReturn( true );
+    when( publishRestUtil.canPublish( connection ) ).thenReturn( true );
+    when( publishRestUtil.canManageDatasources( connection ) ).thenReturn( true );
+    return connection;
+  }
+
+  @Test
+  public void testRuntimeValidationIsCached() throws KettleException {
+    BiServerConnection connection = serverConnection( "password" );
+    LogChannelInterface log = mock( LogChannelInterface.class );
+    connectionValidator.setConnection( connection );
+    connectionValidator.setLog( log );
+
+    connectionValidator.validateConnectionInRuntime();
+    // the server check is not repeated by the permission checks
+    verify( publishRestUtil, times( 1 ) ).isPentahoServer( connection );
+    verify( publishRestUtil ).isUnauthenticatedUser( connection );
+    verify( publishRestUtil ).canPublish( connection );
+    verify( publishRestUtil ).canManageDatasources( connection );
+
+    ConnectionValidator other = new ConnectionValidator();
+    other.setPublishRestUtil( publishRestUtil );
+    other.setConnection( connection );
+    other.validateConnectionInRuntime();
+    verify( publishRestUtil, times( 1 ) ).isPentahoServer( connection );
+    verify( log, times( 1 ) ).logBasic( anyString() );
+  }
+
+  @Test
+  public void testFailedValidationIsNotCached() throws KettleException {
+    BiServerConnection connection = serverConnection( "password" );
+    connectionValidator.setConnection( connection );
+    when( publishRestUtil.canManageDatasources( connection ) ).thenReturn( false );
+    for ( int i = 0; i < 2; i++ ) {
+      try {
+        connectionValidator.validateConnectionInRuntime();
+        fail();
+      } catch ( KettleException e ) {
+        // permissions error
+      }
+    }
+    verify( publishRestUtil, times( 2 ) ).canManageDatasources( connection );
+  }
+
+  @Test
+  public void testOtherCredentialsAreValidatedAgain() throws KettleException {
+    BiServerConnection connection = serverConnection( "password" );
+    connectionValidator.setConnection( connection );
+    connectionValidator.validateConnectionInRuntime();
+
+    BiServerConnection wrongPassword = serverConnection( "wrong" );
+    when( publishRestUtil.isUnauthenticatedUser( wrongPassword ) ).thenReturn( true );
+    connectionValidator.setConnection( wrongPassword );
+    try {
+      connectionValidator.validateConnectionInRuntime();
+      fail();
+    } catch ( KettleException e ) {
+      verify( publishRestUtil ).isUnauthenticatedUser( wrongPassword );
+    }
+  }
+
+  @Test
+  public void testStatusOfDeniedCheckIsReported() {
+    BiServerConnection connection = serverConnection( "password" );
+    when( publishRestUtil.canPublish( connection ) ).thenReturn( false );
+    when( publishRestUtil.getLastHTTPStatus() ).thenReturn( 403 );
+    connectionValidator.setConnection( connection );
+
+    assertFalse( connectionValidator.canConnect() );
+    assertEquals( 403, connectionValidator.getLastHTTPStatus() );
+
+    when( publishRestUtil.canPublish( connection ) ).thenReturn( true );
+    assertTrue( connectionValidator.canConnect() );
+  }
+
+  @Test
+  public void testValidationCacheIsBounded() throws KettleException {
+    for ( int i = 0; i <= ConnectionValidator.MAX_VALIDATED; i++ ) {
+      BiServerConnection connection = serverConnection( "password" + i );
+      connectionValidator.setConnection( connection );
+      connectionValidator.validateConnectionInRuntime();
+    }
+    assertEquals( ConnectionValidator.MAX_VALIDATED, ConnectionValidator.getValidationCacheSize() );
+  }
 }